@@ -0,0 +1,104 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.client;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * A {@link org.jtestplatform.client.TestListCache} storing the lists in a directory, one line per item.
+ * The lists are keyed by the checksum of the tests (typically the one of the test jar) so that they are
+ * automatically invalidated when the tests change.
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+public class FileTestListCache implements TestListCache {
+    private static final String FRAMEWORKS_EXTENSION = ".frameworks";
+    private static final String TESTS_EXTENSION = ".tests";
+
+    private final File directory;
+    private final String testsChecksum;
+
+    /**
+     * @param directory The directory containing the cached lists.
+     * @param testsChecksum The checksum of the tests (see {@link #checksum(java.io.File)}).
+     */
+    public FileTestListCache(File directory, String testsChecksum) {
+        this.directory = directory;
+        this.testsChecksum = testsChecksum;
+    }
+
+    /**
+     * @param testJar A jar containing tests.
+     * @return The checksum of the jar.
+     * @throws IOException
+     */
+    public static String checksum(File testJar) throws IOException {
+        return Files.hash(testJar, Hashing.sha1()).toString();
+    }
+
+    @Override
+    public synchronized Collection<String> getFrameworks() throws IOException {
+        return read(getFile(testsChecksum + FRAMEWORKS_EXTENSION));
+    }
+
+    @Override
+    public synchronized void putFrameworks(Collection<String> frameworks) throws IOException {
+        write(getFile(testsChecksum + FRAMEWORKS_EXTENSION), frameworks);
+    }
+
+    @Override
+    public synchronized Collection<String> getTests(String framework) throws IOException {
+        return read(getFile(testsChecksum + '-' + framework + TESTS_EXTENSION));
+    }
+
+    @Override
+    public synchronized void putTests(String framework, Collection<String> tests) throws IOException {
+        write(getFile(testsChecksum + '-' + framework + TESTS_EXTENSION), tests);
+    }
+
+    private File getFile(String name) {
+        return new File(directory, name);
+    }
+
+    private static Collection<String> read(File file) throws IOException {
+        return file.exists() ? Files.readLines(file, Charsets.UTF_8) : null;
+    }
+
+    private static void write(File file, Collection<String> items) throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (String item : items) {
+            content.append(item).append('\n');
+        }
+
+        // write to a temporary file first, so that a reader never sees a partial list
+        File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        Files.createParentDirs(tmpFile);
+        Files.write(content, tmpFile, Charsets.UTF_8);
+        Files.move(tmpFile, file);
+    }
+}
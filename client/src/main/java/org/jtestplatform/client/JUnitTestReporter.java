@@ -31,9 +31,15 @@ import org.jtestplatform.junitxmlreport.Properties;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static com.google.code.tempusfugit.temporal.Duration.millis;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 /**
@@ -46,12 +52,12 @@ public class JUnitTestReporter implements TestReporter {
     static final String PLATFORM_PROPERTY_PREFIX = "platform.";
     private static final PlatformKeyBuilder PLATFORM_KEY_BUILDER = new PlatformKeyBuilder();
 
-    private final Object reportLock = new Object();
+    private final Object suitesLock = new Object();
     final NumberFormat format = NumberFormat.getNumberInstance(Locale.ENGLISH);
 
     private final File reportDirectory;
-    private final Map<Testsuite, Stats> testSuiteStats = new HashMap<Testsuite, Stats>();
-    private Testsuites suites;
+    private final ConcurrentMap<String, Stats> suiteStats = new ConcurrentHashMap<String, Stats>();
+    private volatile Testsuites suites;
 
     public JUnitTestReporter(File reportDirectory) {
         this.reportDirectory = reportDirectory;
@@ -59,82 +65,128 @@ public class JUnitTestReporter implements TestReporter {
 
     @Override
     public void report(Platform platform, TestResult testResult, Duration testDuration) throws Exception {
-        synchronized (reportLock) {
-            ensureTestSuitesCreated();
-
-            String suitePackageName = PLATFORM_KEY_BUILDER.buildKey(platform);
-            String suiteName = suitePackageName + '.' + testResult.getFramework();
-            Testsuite suite = findTestSuite(suites, suiteName);
-            Stats stats;
-            if (suite == null) {
-                suite = new Testsuite();
+        String suitePackageName = PLATFORM_KEY_BUILDER.buildKey(platform);
+        String suiteName = suitePackageName + '.' + testResult.getFramework();
+        Stats stats = suiteStats.get(suiteName);
+        if (stats == null) {
+            stats = createTestSuite(platform, suitePackageName, suiteName);
+        }
+        stats.addDuration(testDuration);
+
+        Testcase testCase = new Testcase();
+        TestName testName = TestName.parse(testResult.getTest());
+        testCase.setClassname(testName.getTestClass());
+        testCase.setName(testName.getMethodName());
+        testCase.setTime(durationToString(testDuration));
+        stats.nbTests.incrementAndGet();
+        if (testResult.isIgnored()) {
+            testCase.setSkipped("");
+            stats.nbSkipped.incrementAndGet();
+        } else if (!testResult.isSuccess()) {
+            testCase.getSystemOut().add(testResult.getSystemOut());
+            testCase.getSystemErr().add(testResult.getSystemErr());
+            if (testResult.isError()) {
+                Error error = new Error();
+                error.setType(testResult.getFailureType());
+                error.setContent(testResult.getFailureContent());
+                error.setMessage(testResult.getFailureMessage());
+                testCase.getError().add(error);
+                stats.nbErrors.incrementAndGet();
+            } else {
+                Failure failure = new Failure();
+                failure.setType(testResult.getFailureType());
+                failure.setContent(testResult.getFailureContent());
+                failure.setMessage(testResult.getFailureMessage());
+                testCase.getFailure().add(failure);
+                stats.nbFailures.incrementAndGet();
+            }
+        }
+        addTestcase(stats.suite, testCase);
+    }
+
+    /**
+     * Creates the suite of a platform and a framework, unless another thread has just done it.
+     *
+     * @return The statistics of the suite.
+     */
+    private Stats createTestSuite(Platform platform, String suitePackageName, String suiteName) {
+        synchronized (suitesLock) {
+            Testsuites testSuites = ensureTestSuitesCreated();
+            Stats stats = suiteStats.get(suiteName);
+            if (stats == null) {
+                Testsuite suite = new Testsuite();
                 suite.setPackage(suitePackageName);
                 suite.setName(suiteName);
                 final Properties properties = new Properties();
                 properties.getProperty().addAll(getPlatformProperties(platform));
                 suite.setProperties(properties);
-                suites.getTestsuite().add(suite);
+                testSuites.getTestsuite().add(suite);
 
-                stats = new Stats(testDuration);
-                testSuiteStats.put(suite, stats);
-            } else {
-                stats = testSuiteStats.get(suite);
-                stats.addDuration(testDuration);
+                stats = new Stats(suite);
+                suiteStats.put(suiteName, stats);
             }
+            return stats;
+        }
+    }
 
-            Testcase testCase = new Testcase();
-            TestName testName = TestName.parse(testResult.getTest());
-            testCase.setClassname(testName.getTestClass());
-            testCase.setName(testName.getMethodName());
-            testCase.setTime(durationToString(testDuration));
-            stats.nbTests++;
-            if (testResult.isIgnored()) {
-                testCase.setSkipped("");
-                stats.nbSkipped++;
-            } else if (!testResult.isSuccess()) {
-                testCase.getSystemOut().add(testResult.getSystemOut());
-                testCase.getSystemErr().add(testResult.getSystemErr());
-                if (testResult.isError()) {
-                    Error error = new Error();
-                    error.setType(testResult.getFailureType());
-                    error.setContent(testResult.getFailureContent());
-                    error.setMessage(testResult.getFailureMessage());
-                    testCase.getError().add(error);
-                    stats.nbErrors++;
-                } else {
-                    Failure failure = new Failure();
-                    failure.setType(testResult.getFailureType());
-                    failure.setContent(testResult.getFailureContent());
-                    failure.setMessage(testResult.getFailureMessage());
-                    testCase.getFailure().add(failure);
-                    stats.nbFailures++;
-                }
-            }
+    /**
+     * Adds a test case to its suite.
+     *
+     * @param suite
+     * @param testCase
+     * @throws Exception
+     */
+    void addTestcase(Testsuite suite, Testcase testCase) throws Exception {
+        synchronized (suite) {
             suite.getTestcase().add(testCase);
         }
     }
 
-    private void ensureTestSuitesCreated() {
-        if (suites == null) {
-            suites = createTestSuites();
+    private Testsuites ensureTestSuitesCreated() {
+        Testsuites testSuites = suites;
+        if (testSuites == null) {
+            synchronized (suitesLock) {
+                testSuites = suites;
+                if (testSuites == null) {
+                    testSuites = createTestSuites();
+                    suites = testSuites;
+                }
+            }
         }
+        return testSuites;
     }
 
     @Override
     public void saveReport() throws Exception {
-        ensureTestSuitesCreated();
+        Testsuites testSuites = ensureTestSuitesCreated();
+
+        for (Testsuite suite : testSuites.getTestsuite()) {
+            Stats stats = suiteStats.get(suite.getName());
+            suite.setTime(durationToString(millis(stats.durationInMillis.get())));
+            suite.setTests(Integer.toString(stats.nbTests.get()));
+            suite.setSkipped(Integer.toString(stats.nbSkipped.get()));
+            suite.setErrors(Integer.toString(stats.nbErrors.get()));
+            suite.setFailures(Integer.toString(stats.nbFailures.get()));
+        }
 
-        for (Testsuite suite : suites.getTestsuite()) {
-            Stats stats = testSuiteStats.get(suite);
-            suite.setTime(durationToString(stats.duration));
-            suite.setTests(Integer.toString(stats.nbTests));
-            suite.setSkipped(Integer.toString(stats.nbSkipped));
-            suite.setErrors(Integer.toString(stats.nbErrors));
-            suite.setFailures(Integer.toString(stats.nbFailures));
+        OutputStream output = new FileOutputStream(new File(reportDirectory, "tests.xml"));
+        try {
+            writeReport(output, testSuites);
+        } finally {
+            output.close();
         }
+    }
 
+    /**
+     * Writes the report once the counters of the suites are final.
+     *
+     * @param output
+     * @param suites
+     * @throws Exception
+     */
+    void writeReport(OutputStream output, Testsuites suites) throws Exception {
         JUnitXMLReportWriter writer = createJUnitXMLReportWriter();
-        writer.write(new FileOutputStream(new File(reportDirectory, "tests.xml")), suites);
+        writer.write(output, suites);
     }
 
     Testsuites createTestSuites() {
@@ -168,7 +220,10 @@ public class JUnitTestReporter implements TestReporter {
     }
 
     private String durationToString(Duration testDuration) {
-        return format.format(((double) testDuration.inMillis()) / SECONDS.toMillis(1));
+        double seconds = ((double) testDuration.inMillis()) / SECONDS.toMillis(1);
+        synchronized (format) { // a NumberFormat is not thread safe
+            return format.format(seconds);
+        }
     }
 
     private static Property createProperty(String propertyName, Object propertyValue) {
@@ -178,19 +233,23 @@ public class JUnitTestReporter implements TestReporter {
         return property;
     }
 
+    /**
+     * The statistics of a suite, updated concurrently by the threads reporting its tests.
+     */
     private static class Stats {
-        private Duration duration;
-        private int nbTests = 0;
-        private int nbErrors = 0;
-        private int nbSkipped = 0;
-        private int nbFailures = 0;
-
-        private Stats(Duration duration) {
-            this.duration = duration;
+        private final Testsuite suite;
+        private final AtomicLong durationInMillis = new AtomicLong();
+        private final AtomicInteger nbTests = new AtomicInteger();
+        private final AtomicInteger nbErrors = new AtomicInteger();
+        private final AtomicInteger nbSkipped = new AtomicInteger();
+        private final AtomicInteger nbFailures = new AtomicInteger();
+
+        private Stats(Testsuite suite) {
+            this.suite = suite;
         }
 
         public void addDuration(Duration testDuration) {
-            duration = duration.plus(testDuration);
+            durationInMillis.addAndGet(testDuration.inMillis());
         }
     }
 }
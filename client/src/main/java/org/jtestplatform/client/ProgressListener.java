@@ -0,0 +1,48 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.client;
+
+import org.jtestplatform.cloud.configuration.Platform;
+import org.jtestplatform.common.message.TestResult;
+
+/**
+ * Listener notified of the progress of a test run.
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+public interface ProgressListener {
+    /**
+     * Called when all the requests have been produced.
+     *
+     * @param nbRequests The total number of requests.
+     */
+    void productionFinished(int nbRequests);
+
+    /**
+     * Called each time the result of a test has been reported.
+     *
+     * @param platform The platform on which the test was run.
+     * @param testResult The result of the test.
+     * @param nbReportedTests The number of tests reported so far, including this one.
+     */
+    void testReported(Platform platform, TestResult testResult, int nbReportedTests);
+}
@@ -25,71 +25,358 @@ import com.google.code.tempusfugit.temporal.Clock;
 import com.google.code.tempusfugit.temporal.Duration;
 import com.google.code.tempusfugit.temporal.StopWatch;
 import com.google.code.tempusfugit.temporal.Timer;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.jtestplatform.cloud.TransportProvider;
 import org.jtestplatform.cloud.configuration.Platform;
+import org.jtestplatform.common.message.Message;
 import org.jtestplatform.common.message.RunTest;
+import org.jtestplatform.common.message.RunTests;
 import org.jtestplatform.common.message.TestResult;
+import org.jtestplatform.common.message.TestResults;
 import org.jtestplatform.common.transport.Transport;
 import org.jtestplatform.common.transport.TransportException;
 import org.jtestplatform.common.transport.TransportHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.BlockingQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
 
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 /**
  * Consumer of {@link org.jtestplatform.client.Request}s provided by a {@link java.util.concurrent.BlockingQueue}.
  * Each consumed request is sent for execution through a {@link org.jtestplatform.common.transport.Transport} provided by a
  * {@link org.jtestplatform.cloud.TransportProvider}. The result is sent to a {@link org.jtestplatform.client.TestReporter}.
+ * <p>
+ * The requests are consumed by <code>nbWorkers</code> workers pulling from the same queue (typically one worker per
+ * domain). Up to <code>nbWorkers * maxInFlightRequests</code> tests can be waiting for their result at the same
+ * time. Since the duration of a test is measured on client side, it also includes the time spent by the request in
+ * the queue of the server when the server doesn't run tests concurrently.
+ * <p>
+ * When <code>batchSize</code> is greater than 1, the requests of a worker for the same platform and framework are
+ * grouped and sent in a single {@link RunTests} message. A batch is sent when it's full, when its first request has
+ * been waiting for <code>batchLatency</code> milliseconds or when there are no more requests. The durations of the
+ * tests of a batch are measured on server side.
  *
  * @author Fabien DUMINY (fduminy at jnode dot org)
  *
  */
 public class RequestConsumer {
     private static final Logger LOGGER = LoggerFactory.getLogger(RequestConsumer.class);
+    private static final long POLL_TIMEOUT = SECONDS.toNanos(1);
 
     private final BlockingQueue<Request> requests;
     private final Clock clock;
+    private final int maxInFlightRequests;
+    private final int nbWorkers;
+    private final int batchSize;
+    private final long batchLatencyNanos;
 
     public RequestConsumer(BlockingQueue<Request> requests, Clock clock) {
+        this(requests, clock, 1);
+    }
+
+    public RequestConsumer(BlockingQueue<Request> requests, Clock clock, int maxInFlightRequests) {
+        this(requests, clock, maxInFlightRequests, 1);
+    }
+
+    public RequestConsumer(BlockingQueue<Request> requests, Clock clock, int maxInFlightRequests, int nbWorkers) {
+        this(requests, clock, maxInFlightRequests, nbWorkers, 1, 0);
+    }
+
+    /**
+     * @param requests The queue of requests.
+     * @param clock The clock used to measure the durations of the tests that are not run in a batch.
+     * @param maxInFlightRequests The maximum number of requests of a worker waiting for their result.
+     * @param nbWorkers The number of workers consuming the requests.
+     * @param batchSize The maximum number of tests sent in a single request.
+     * @param batchLatency The maximum time, in milliseconds, a test can wait for its batch to be full.
+     */
+    public RequestConsumer(BlockingQueue<Request> requests, Clock clock, int maxInFlightRequests, int nbWorkers,
+                           int batchSize, int batchLatency) {
+        if (maxInFlightRequests < 1) {
+            throw new IllegalArgumentException("maxInFlightRequests must be > 0");
+        }
+        if (nbWorkers < 1) {
+            throw new IllegalArgumentException("nbWorkers must be > 0");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be > 0");
+        }
+        if (batchLatency < 0) {
+            throw new IllegalArgumentException("batchLatency must be >= 0");
+        }
+
         this.requests = requests;
         this.clock = clock;
+        this.maxInFlightRequests = maxInFlightRequests;
+        this.nbWorkers = nbWorkers;
+        this.batchSize = batchSize;
+        this.batchLatencyNanos = MILLISECONDS.toNanos(batchLatency);
     }
 
     public void consume(TransportProvider transportProvider, TestReporter reporter) throws Exception {
         LOGGER.info("STARTED");
         TransportHelper transportHelper = createTransportHelper();
-        Request request = null;
-        while (request != Request.END) {
-            while ((request = requests.poll(1, SECONDS)) != null) {
-                LOGGER.info("consuming {}", request);
-
-                if (request == Request.END) {
-                    break;
-                }
-                Platform platform = request.getPlatform();
-                Transport transport = transportProvider.get(platform);
+        int maxPermits = maxInFlightRequests * nbWorkers;
+        Semaphore inFlightRequests = new Semaphore(maxPermits);
+        AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        try {
+            if (nbWorkers == 1) {
+                new Worker(transportProvider, reporter, transportHelper, inFlightRequests, failure).call();
+            } else {
+                runWorkers(new Worker(transportProvider, reporter, transportHelper, inFlightRequests, failure),
+                           failure);
+            }
+        } finally {
+            // the END request is put back by the workers for the other workers
+            requests.remove(Request.END);
 
-                StopWatch stopWatch = new Timer(clock);
-                TestResult testResult = runTest(transportHelper, request, transport);
-                stopWatch.lap();
-                Duration testDuration = stopWatch.elapsedTime();
+            // wait for the results of the tests in flight
+            inFlightRequests.acquireUninterruptibly(maxPermits);
+        }
+        checkFailure(failure);
+        LOGGER.info("FINISHED");
+    }
 
-                reporter.report(platform, testResult, testDuration);
+    private void runWorkers(Worker worker, AtomicReference<Throwable> failure) throws InterruptedException {
+        ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("client-consumer-worker-%d")
+                                                                .setDaemon(true).build();
+        ExecutorService executor = Executors.newFixedThreadPool(nbWorkers, threadFactory);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>(nbWorkers);
+            for (int i = 0; i < nbWorkers; i++) {
+                results.add(executor.submit(worker));
             }
+            for (Future<Void> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    failure.compareAndSet(null, e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
         }
-        LOGGER.info("FINISHED");
     }
 
-    protected TestResult runTest(TransportHelper transportHelper, Request request, Transport transport)
+    private static void checkFailure(AtomicReference<Throwable> failure) throws Exception {
+        Throwable t = failure.get();
+        if (t instanceof Exception) {
+            throw (Exception) t;
+        } else if (t != null) {
+            throw (Error) t;
+        }
+    }
+
+    protected ListenableFuture<Message> runTest(TransportHelper transportHelper, Request request, Transport transport)
         throws TransportException {
         RunTest requestMessage = new RunTest(request.getTestFramework(), request.getTestName());
-        return (TestResult) transportHelper.sendRequest(transport, requestMessage);
+        return transportHelper.sendRequestAsync(transport, requestMessage);
+    }
+
+    protected ListenableFuture<Message> runTests(TransportHelper transportHelper, List<Request> requests,
+                                                 Transport transport) throws TransportException {
+        List<String> tests = new ArrayList<String>(requests.size());
+        for (Request request : requests) {
+            tests.add(request.getTestName());
+        }
+        RunTests requestMessage = new RunTests(requests.get(0).getTestFramework(), tests);
+        return transportHelper.sendRequestAsync(transport, requestMessage);
     }
 
     TransportHelper createTransportHelper() {
         return new TransportHelper();
     }
+
+    /**
+     * Consumes the requests until {@link Request#END} is received, which is then put back in the queue for the other
+     * workers. A worker doesn't keep a transport : each request (or batch) is sent through the transport of the next
+     * domain supporting its platform, which spreads the requests over the running domains.
+     */
+    private class Worker implements Callable<Void> {
+        private final TransportProvider transportProvider;
+        private final TestReporter reporter;
+        private final TransportHelper transportHelper;
+        private final Semaphore inFlightRequests;
+        private final AtomicReference<Throwable> failure;
+
+        Worker(TransportProvider transportProvider, TestReporter reporter, TransportHelper transportHelper,
+               Semaphore inFlightRequests, AtomicReference<Throwable> failure) {
+            this.transportProvider = transportProvider;
+            this.reporter = reporter;
+            this.transportHelper = transportHelper;
+            this.inFlightRequests = inFlightRequests;
+            this.failure = failure;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            // a worker is called by each thread of the pool : the pending batches are local to the thread
+            List<Batch> batches = new ArrayList<Batch>();
+            Request request = null;
+            while (request != Request.END) {
+                request = requests.poll(pollTimeout(batches), NANOSECONDS);
+                if (request == Request.END) {
+                    requests.put(request);
+                } else if (request != null) {
+                    LOGGER.info("consuming {}", request);
+                    checkFailure(failure);
+
+                    Batch batch = getBatch(batches, request);
+                    batch.requests.add(request);
+                    if (batch.requests.size() >= batchSize) {
+                        batches.remove(batch);
+                        send(batch);
+                    }
+                }
+                sendBatches(batches, request == Request.END);
+            }
+            return null;
+        }
+
+        private long pollTimeout(List<Batch> batches) {
+            if (batches.isEmpty()) {
+                return POLL_TIMEOUT;
+            }
+            return Math.max(0L, batches.get(0).deadline - System.nanoTime());
+        }
+
+        private Batch getBatch(List<Batch> batches, Request request) {
+            for (Batch batch : batches) {
+                if (batch.accepts(request)) {
+                    return batch;
+                }
+            }
+            Batch batch = new Batch(request.getPlatform(), request.getTestFramework(),
+                                    System.nanoTime() + batchLatencyNanos);
+            batches.add(batch);
+            return batch;
+        }
+
+        /**
+         * Sends the batches whose latency has expired (they are sorted by deadline), or all of them.
+         */
+        private void sendBatches(List<Batch> batches, boolean all) throws Exception {
+            long now = System.nanoTime();
+            while (!batches.isEmpty() && (all || (batches.get(0).deadline - now <= 0))) {
+                send(batches.remove(0));
+            }
+        }
+
+        private void send(Batch batch) throws Exception {
+            checkFailure(failure);
+            inFlightRequests.acquire();
+            Transport transport = null;
+            try {
+                transport = transportProvider.get(batch.platform);
+
+                StopWatch stopWatch = new Timer(clock);
+                ListenableFuture<Message> testResult;
+                if (batch.requests.size() == 1) {
+                    testResult = runTest(transportHelper, batch.requests.get(0), transport);
+                } else {
+                    testResult = runTests(transportHelper, batch.requests, transport);
+                }
+                Futures.addCallback(testResult, new ReportCallback(batch.platform, stopWatch, reporter,
+                                                                   inFlightRequests, failure, transportProvider,
+                                                                   transport),
+                                    directExecutor());
+            } catch (Exception e) {
+                if (transport != null) {
+                    transportProvider.release(transport);
+                }
+                inFlightRequests.release();
+                throw e;
+            }
+            checkFailure(failure);
+        }
+    }
+
+    /**
+     * Requests of a platform and a framework waiting to be sent together.
+     */
+    private static class Batch {
+        private final Platform platform;
+        private final String framework;
+        private final long deadline;
+        private final List<Request> requests = new ArrayList<Request>();
+
+        Batch(Platform platform, String framework, long deadline) {
+            this.platform = platform;
+            this.framework = framework;
+            this.deadline = deadline;
+        }
+
+        boolean accepts(Request request) {
+            return platform.equals(request.getPlatform()) && framework.equals(request.getTestFramework());
+        }
+    }
+
+    /**
+     * Reports the result of a test and releases its in flight permit and its transport.
+     */
+    private static class ReportCallback implements FutureCallback<Message> {
+        private final Platform platform;
+        private final StopWatch stopWatch;
+        private final TestReporter reporter;
+        private final Semaphore inFlightRequests;
+        private final AtomicReference<Throwable> failure;
+        private final TransportProvider transportProvider;
+        private final Transport transport;
+
+        ReportCallback(Platform platform, StopWatch stopWatch, TestReporter reporter, Semaphore inFlightRequests,
+                       AtomicReference<Throwable> failure, TransportProvider transportProvider, Transport transport) {
+            this.platform = platform;
+            this.stopWatch = stopWatch;
+            this.reporter = reporter;
+            this.inFlightRequests = inFlightRequests;
+            this.failure = failure;
+            this.transportProvider = transportProvider;
+            this.transport = transport;
+        }
+
+        @Override
+        public void onSuccess(Message result) {
+            transportProvider.release(transport);
+            try {
+                if (result instanceof TestResults) {
+                    TestResults testResults = (TestResults) result;
+                    for (int i = 0; i < testResults.getResults().size(); i++) {
+                        Duration testDuration = Duration.millis(testResults.getDurations().get(i));
+                        reporter.report(platform, testResults.getResults().get(i), testDuration);
+                    }
+                } else {
+                    stopWatch.lap();
+                    Duration testDuration = stopWatch.elapsedTime();
+                    reporter.report(platform, (TestResult) result, testDuration);
+                }
+            } catch (Exception e) {
+                setFailure(e);
+            } finally {
+                inFlightRequests.release();
+            }
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+            transportProvider.release(transport);
+            setFailure(t);
+            inFlightRequests.release();
+        }
+
+        private void setFailure(Throwable t) {
+            LOGGER.error("error while running test", t);
+            failure.compareAndSet(null, t);
+        }
+    }
 }
@@ -21,11 +21,15 @@
  */
 package org.jtestplatform.client;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.jtestplatform.cloud.TransportProvider;
 import org.jtestplatform.cloud.configuration.Platform;
 import org.jtestplatform.cloud.domain.DomainManager;
+import org.jtestplatform.common.message.ErrorMessage;
 import org.jtestplatform.common.message.FrameworkTests;
+import org.jtestplatform.common.message.FrameworkTestsPage;
 import org.jtestplatform.common.message.GetFrameworkTests;
+import org.jtestplatform.common.message.GetFrameworkTestsPage;
 import org.jtestplatform.common.message.GetTestFrameworks;
 import org.jtestplatform.common.message.TestFrameworks;
 import org.jtestplatform.common.transport.Transport;
@@ -34,12 +38,16 @@ import org.jtestplatform.common.transport.TransportHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Producer of {@link org.jtestplatform.client.Request}s from a {@link org.jtestplatform.cloud.domain.DomainManager}.
  * Each produced request is added to a {@link java.util.concurrent.BlockingQueue}, which could be used by consumers.
+ * The tests can be taken from a {@link org.jtestplatform.client.TestListCache} instead of being asked to the servers.
  *
  * @author Fabien DUMINY (fduminy at jnode dot org)
  *
@@ -47,52 +55,218 @@ import java.util.concurrent.BlockingQueue;
 public class RequestProducer {
     private static final Logger LOGGER = LoggerFactory.getLogger(RequestProducer.class);
 
+    private static final TestListCache NO_CACHE = new TestListCache() {
+        @Override
+        public Collection<String> getFrameworks() {
+            return null;
+        }
+
+        @Override
+        public void putFrameworks(Collection<String> frameworks) {
+        }
+
+        @Override
+        public Collection<String> getTests(String framework) {
+            return null;
+        }
+
+        @Override
+        public void putTests(String framework, Collection<String> tests) {
+        }
+    };
+
+    static final int DEFAULT_PAGE_SIZE = 256;
+
     private final BlockingQueue<Request> requests;
+    private final TestListCache testListCache;
+    private final int pageSize;
 
     public RequestProducer(BlockingQueue<Request> requests) {
+        this(requests, null);
+    }
+
+    public RequestProducer(BlockingQueue<Request> requests, TestListCache testListCache) {
+        this(requests, testListCache, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * @param requests The queue where to put the requests.
+     * @param testListCache The cache of the tests, or null to always ask them to the servers.
+     * @param pageSize The maximum number of tests received at once from a server.
+     */
+    public RequestProducer(BlockingQueue<Request> requests, TestListCache testListCache, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be > 0");
+        }
+
         this.requests = requests;
+        this.testListCache = (testListCache == null) ? NO_CACHE : testListCache;
+        this.pageSize = pageSize;
     }
 
-    public void produce(DomainManager domainManager) throws Exception {
+    /**
+     * Produces the requests for all the tests of all the platforms, followed by {@link Request#END}.
+     * The platforms are discovered concurrently and the requests of a framework are put in the queue as soon as its
+     * tests are known.
+     *
+     * @param domainManager The provider of the platforms and of the transports used to find the tests.
+     * @return The number of produced requests, excluding {@link Request#END}.
+     * @throws Exception
+     */
+    public int produce(DomainManager domainManager) throws Exception {
         LOGGER.info("STARTED");
+        AtomicInteger nbRequests = new AtomicInteger(0);
+        List<Platform> platforms = domainManager.getPlatforms();
+        ExecutorService executor = null;
         try {
-            TransportProvider transportProvider = domainManager;
             TransportHelper transportHelper = createTransportHelper();
 
-            List<Platform> platforms = domainManager.getPlatforms();
-
+            ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("client-discovery-%d")
+                                                                    .setDaemon(true).build();
+            executor = Executors.newFixedThreadPool(Math.max(1, platforms.size()), threadFactory);
+            CompletionService<Void> discoveries = new ExecutorCompletionService<Void>(executor);
             for (Platform platform : platforms) {
-                Transport transport = transportProvider.get(platform);
+                discoveries.submit(new Discovery(platform, domainManager, transportHelper, nbRequests));
+            }
 
-                //TODO we assume that all frameworks are available on each server. check it ?
-                TestFrameworks testFrameworks = (TestFrameworks) transportHelper
-                    .sendRequest(transport, GetTestFrameworks.INSTANCE);
-
-                for (String testFramework : testFrameworks.getFrameworks()) {
-                    FrameworkTests tests = getFrameworkTests(transportHelper, transport, testFramework);
-                    for (String test : tests.getTests()) {
-                        final Request request = new Request(platform, testFramework, test);
-                        LOGGER.info("producing {}", request);
-                        requests.put(request);
+            for (int i = 0; i < platforms.size(); i++) {
+                try {
+                    discoveries.take().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
                     }
+                    throw (Error) cause;
                 }
             }
+            return nbRequests.get();
         } catch (Exception e) {
             LOGGER.error(e.getMessage(), e);
             throw e;
         } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
             requests.put(Request.END);
             LOGGER.info("FINISHED");
         }
     }
 
-    private FrameworkTests getFrameworkTests(TransportHelper transportHelper, Transport transport, String testFramework)
-        throws TransportException {
-        final GetFrameworkTests requestMessage = new GetFrameworkTests(testFramework);
-        return (FrameworkTests) transportHelper.sendRequest(transport, requestMessage);
-    }
-
     TransportHelper createTransportHelper() {
         return new TransportHelper();
     }
+
+    /**
+     * Puts the requests for the tests of a platform. The servers are only asked for what is not in the cache, which
+     * means that the domain of the platform isn't even started when all the tests are cached.
+     */
+    private class Discovery implements Callable<Void> {
+        private final Platform platform;
+        private final TransportProvider transportProvider;
+        private final TransportHelper transportHelper;
+        private final AtomicInteger nbRequests;
+        private Transport transport;
+        private boolean pagesUnsupported;
+
+        Discovery(Platform platform, TransportProvider transportProvider, TransportHelper transportHelper,
+                  AtomicInteger nbRequests) {
+            this.platform = platform;
+            this.transportProvider = transportProvider;
+            this.transportHelper = transportHelper;
+            this.nbRequests = nbRequests;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            try {
+                //TODO we assume that all frameworks are available on each server. check it ?
+                Collection<String> testFrameworks = testListCache.getFrameworks();
+                if (testFrameworks == null) {
+                    TestFrameworks frameworks = (TestFrameworks) transportHelper
+                        .sendRequest(getTransport(), GetTestFrameworks.INSTANCE);
+                    testFrameworks = frameworks.getFrameworks();
+                    testListCache.putFrameworks(testFrameworks);
+                }
+
+                for (String testFramework : testFrameworks) {
+                    Collection<String> tests = testListCache.getTests(testFramework);
+                    if (tests == null) {
+                        tests = produceFrameworkTests(testFramework);
+                        if (tests != null) {
+                            testListCache.putTests(testFramework, tests);
+                        }
+                    } else {
+                        produce(testFramework, tests);
+                    }
+                }
+                return null;
+            } finally {
+                if (transport != null) {
+                    transportProvider.release(transport);
+                }
+            }
+        }
+
+        /**
+         * Asks the tests of a framework page by page and produces the requests of each page as soon as it is received.
+         * Servers that don't know about pages are asked all the tests at once.
+         * @return All the tests of the framework, or null if there is no cache to store them : the pages are then not
+         * kept in memory.
+         */
+        private Collection<String> produceFrameworkTests(String testFramework) throws Exception {
+            if (pagesUnsupported) {
+                return produceAllFrameworkTests(testFramework);
+            }
+
+            List<String> allTests = (testListCache == NO_CACHE) ? null : new ArrayList<String>();
+            int cursor = 0;
+            FrameworkTestsPage page;
+            do {
+                GetFrameworkTestsPage requestMessage = new GetFrameworkTestsPage(testFramework, cursor, pageSize);
+                try {
+                    page = (FrameworkTestsPage) transportHelper.sendRequest(getTransport(), requestMessage);
+                } catch (TransportException e) {
+                    ErrorMessage error = e.getErrorMessage();
+                    if ((cursor != 0) || (error == null) || !error.isNoCommandFor(GetFrameworkTestsPage.class)) {
+                        throw e;
+                    }
+
+                    LOGGER.info("the server of {} doesn't support pages : asking all the tests at once", platform);
+                    pagesUnsupported = true;
+                    return produceAllFrameworkTests(testFramework);
+                }
+                produce(testFramework, page.getTests());
+                if (allTests != null) {
+                    allTests.addAll(page.getTests());
+                }
+                cursor = page.getNextCursor();
+            } while (!page.isLastPage());
+            return allTests;
+        }
+
+        private Collection<String> produceAllFrameworkTests(String testFramework) throws Exception {
+            GetFrameworkTests requestMessage = new GetFrameworkTests(testFramework);
+            FrameworkTests frameworkTests = (FrameworkTests) transportHelper.sendRequest(getTransport(),
+                                                                                         requestMessage);
+            produce(testFramework, frameworkTests.getTests());
+            return frameworkTests.getTests();
+        }
+
+        private void produce(String testFramework, Collection<String> tests) throws InterruptedException {
+            for (String test : tests) {
+                final Request request = new Request(platform, testFramework, test);
+                LOGGER.info("producing {}", request);
+                requests.put(request);
+                nbRequests.incrementAndGet();
+            }
+        }
+
+        private Transport getTransport() throws TransportException {
+            if (transport == null) {
+                transport = transportProvider.get(platform);
+            }
+            return transport;
+        }
+    }
 }
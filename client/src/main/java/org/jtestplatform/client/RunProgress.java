@@ -0,0 +1,113 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.client;
+
+import com.google.code.tempusfugit.temporal.Duration;
+import org.jtestplatform.cloud.configuration.Platform;
+import org.jtestplatform.common.message.TestResult;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link org.jtestplatform.client.TestReporter} tracking the completion of a test run : the run is complete when
+ * each produced request has been reported or when the consumer has finished (for example after a failure).
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+class RunProgress implements TestReporter {
+    private static final int UNKNOWN = -1;
+
+    private final TestReporter reporter;
+    private final ProgressListener listener;
+    private final Object lock = new Object();
+
+    private int nbRequests = UNKNOWN;
+    private int nbReportedTests = 0;
+    private boolean consumptionFinished = false;
+
+    RunProgress(TestReporter reporter, ProgressListener listener) {
+        this.reporter = reporter;
+        this.listener = listener;
+    }
+
+    @Override
+    public void report(Platform platform, TestResult testResult, Duration testDuration) throws Exception {
+        reporter.report(platform, testResult, testDuration);
+
+        int reported;
+        synchronized (lock) {
+            reported = ++nbReportedTests;
+            lock.notifyAll();
+        }
+        listener.testReported(platform, testResult, reported);
+    }
+
+    @Override
+    public void saveReport() throws Exception {
+        reporter.saveReport();
+    }
+
+    void productionFinished(int nbRequests) {
+        synchronized (lock) {
+            this.nbRequests = nbRequests;
+            lock.notifyAll();
+        }
+        listener.productionFinished(nbRequests);
+    }
+
+    void consumptionFinished() {
+        synchronized (lock) {
+            consumptionFinished = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits for the completion of the run.
+     *
+     * @param timeout The maximum time to wait, 0 meaning no limit.
+     * @param unit The unit of <code>timeout</code>.
+     * @return true if the run is complete, false if the timeout has elapsed.
+     * @throws InterruptedException
+     */
+    boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (lock) {
+            while (!isComplete()) {
+                if (timeout <= 0) {
+                    lock.wait();
+                } else {
+                    long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remainingMillis <= 0) {
+                        return false;
+                    }
+                    lock.wait(remainingMillis);
+                }
+            }
+            return true;
+        }
+    }
+
+    private boolean isComplete() {
+        return consumptionFinished || ((nbRequests != UNKNOWN) && (nbReportedTests >= nbRequests));
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.client;
+
+import org.jtestplatform.junitxmlreport.StreamingJUnitXMLReportWriter;
+import org.jtestplatform.junitxmlreport.Testcase;
+import org.jtestplatform.junitxmlreport.Testsuite;
+import org.jtestplatform.junitxmlreport.Testsuites;
+
+import java.io.File;
+import java.io.OutputStream;
+
+/**
+ * A {@link JUnitTestReporter} streaming the test cases to temporary files instead of keeping them in memory, which
+ * matters for runs of many tests with large outputs.
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ *
+ */
+public class StreamingJUnitTestReporter extends JUnitTestReporter {
+    private final StreamingJUnitXMLReportWriter writer;
+
+    public StreamingJUnitTestReporter(File reportDirectory) {
+        this(reportDirectory, null);
+    }
+
+    /**
+     * @param reportDirectory The directory of the report.
+     * @param tempDirectory The directory of the temporary files. If null, the default temporary directory is used.
+     */
+    StreamingJUnitTestReporter(File reportDirectory, File tempDirectory) {
+        super(reportDirectory);
+        writer = new StreamingJUnitXMLReportWriter(tempDirectory);
+    }
+
+    @Override
+    void addTestcase(Testsuite suite, Testcase testCase) throws Exception {
+        writer.write(suite, testCase);
+    }
+
+    @Override
+    void writeReport(OutputStream output, Testsuites suites) throws Exception {
+        try {
+            writer.write(output, suites);
+        } finally {
+            writer.close();
+        }
+    }
+}
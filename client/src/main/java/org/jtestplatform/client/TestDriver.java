@@ -25,15 +25,18 @@ import com.google.code.tempusfugit.temporal.Clock;
 import com.google.code.tempusfugit.temporal.RealClock;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.jtestplatform.cloud.TransportProvider;
+import org.jtestplatform.cloud.configuration.Platform;
 import org.jtestplatform.cloud.domain.DefaultDomainManager;
 import org.jtestplatform.cloud.domain.DomainException;
 import org.jtestplatform.cloud.domain.DomainManager;
+import org.jtestplatform.common.message.TestResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.util.concurrent.*;
 
 import static com.google.common.util.concurrent.MoreExecutors.shutdownAndAwaitTermination;
@@ -43,6 +46,8 @@ import static com.google.common.util.concurrent.MoreExecutors.shutdownAndAwaitTe
  */
 public class TestDriver {
     private static final Logger LOGGER = LoggerFactory.getLogger(TestDriver.class);
+    private static final long SHUTDOWN_TIMEOUT = 5;
+    static final String TEST_LIST_CACHE_DIRECTORY = "testListCache";
     protected final Clock clock;
 
     public TestDriver() {
@@ -54,11 +59,54 @@ public class TestDriver {
     }
 
     public final void runTests(File cloudConfigFile, File reportDirectory) throws Exception {
+        runTests(cloudConfigFile, reportDirectory, new LoggingProgressListener());
+    }
+
+    /**
+     * Runs the tests and saves the report once each produced test has been reported or when the run timeout defined
+     * in the configuration has elapsed. The domain manager is started before the run and stopped after the report
+     * has been saved.
+     *
+     * @param cloudConfigFile The configuration of the cloud.
+     * @param reportDirectory The directory where to save the report.
+     * @param listener The listener notified of the progress of the run.
+     * @throws Exception
+     */
+    public final void runTests(File cloudConfigFile, File reportDirectory, ProgressListener listener)
+        throws Exception {
+        runTests(cloudConfigFile, reportDirectory, null, listener);
+    }
+
+    /**
+     * Same as {@link #runTests(File, File, ProgressListener)} but the lists of tests are cached in the report
+     * directory, so that the servers are only asked for them when the tests have changed.
+     *
+     * @param cloudConfigFile The configuration of the cloud.
+     * @param reportDirectory The directory where to save the report.
+     * @param testJar The jar containing the tests run by the servers (its checksum is the key of the cached lists),
+     *                or null to always ask the tests to the servers.
+     * @param listener The listener notified of the progress of the run.
+     * @throws Exception
+     */
+    public final void runTests(File cloudConfigFile, File reportDirectory, File testJar, ProgressListener listener)
+        throws Exception {
+        TestListCache testListCache = createTestListCache(reportDirectory, testJar);
         BlockingQueue<Request> requests = createRequestQueue();
-        RequestConsumer requestConsumer = createRequestConsumer(requests);
-        RequestProducer requestProducer = createRequestProducer(requests);
         DomainManager domainManager = createDomainManager(cloudConfigFile);
+        domainManager.start();
+        try {
+            runTests(requests, testListCache, domainManager, reportDirectory, listener);
+        } finally {
+            domainManager.stop();
+        }
+    }
+
+    private void runTests(BlockingQueue<Request> requests, TestListCache testListCache, DomainManager domainManager,
+                          File reportDirectory, ProgressListener listener) throws Exception {
+        RequestConsumer requestConsumer = createRequestConsumer(requests, domainManager);
+        RequestProducer requestProducer = createRequestProducer(requests, testListCache);
         TestReporter reporter = createTestReporter(reportDirectory);
+        RunProgress progress = new RunProgress(reporter, listener);
 
         Thread.UncaughtExceptionHandler handler = new Thread.UncaughtExceptionHandler() {
             @Override
@@ -68,14 +116,32 @@ public class TestDriver {
         };
 
         ExecutorService consumerExecutor = newExecutor("client-consumer-%d", handler);
-        consumerExecutor.submit(new ConsumerTask(requestConsumer, domainManager, reporter));
+        Future<Void> consumed = consumerExecutor.submit(new ConsumerTask(requestConsumer, domainManager, progress));
 
         ExecutorService producerExecutor = newExecutor("client-producer-%d", handler);
-        producerExecutor.submit(new ProducerTask(requestProducer, domainManager));
+        Future<Void> produced = producerExecutor.submit(new ProducerTask(requestProducer, domainManager, progress));
 
-        shutdown(4, TimeUnit.MINUTES, consumerExecutor, producerExecutor);
+        try {
+            if (!progress.awaitCompletion(domainManager.getRunTimeout(), TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("run timeout ({} ms) elapsed : saving a partial report", domainManager.getRunTimeout());
+            }
+        } finally {
+            shutdown(consumerExecutor, producerExecutor);
+        }
+        logFailure("producer", produced);
+        logFailure("consumer", consumed);
 
-        reporter.saveReport();
+        progress.saveReport();
+    }
+
+    private static void logFailure(String taskName, Future<Void> task) throws InterruptedException {
+        if (task.isDone() && !task.isCancelled()) {
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                LOGGER.error("error in " + taskName, e.getCause());
+            }
+        }
     }
 
     private ExecutorService newExecutor(String nameFormat, Thread.UncaughtExceptionHandler handler) {
@@ -85,7 +151,7 @@ public class TestDriver {
     }
 
     TestReporter createTestReporter(File reportDirectory) {
-        return new JUnitTestReporter(reportDirectory);
+        return new StreamingJUnitTestReporter(reportDirectory);
     }
 
     protected DomainManager createDomainManager(File cloudConfigFile) throws FileNotFoundException, DomainException {
@@ -96,35 +162,65 @@ public class TestDriver {
         return new LinkedBlockingQueue<Request>();
     }
 
-    RequestProducer createRequestProducer(BlockingQueue<Request> requests) {
-        return new RequestProducer(requests);
+    /**
+     * @param reportDirectory The directory where the report is saved.
+     * @param testJar The jar containing the tests, or null.
+     * @return A cache of the lists of tests, or null when there is no test jar.
+     * @throws IOException
+     */
+    TestListCache createTestListCache(File reportDirectory, File testJar) throws IOException {
+        if (testJar == null) {
+            return null;
+        }
+        return new FileTestListCache(new File(reportDirectory, TEST_LIST_CACHE_DIRECTORY),
+                                     FileTestListCache.checksum(testJar));
+    }
+
+    RequestProducer createRequestProducer(BlockingQueue<Request> requests, TestListCache testListCache) {
+        return new RequestProducer(requests, testListCache);
     }
 
-    protected RequestConsumer createRequestConsumer(BlockingQueue<Request> requests) {
-        return new RequestConsumer(requests, clock);
+    /**
+     * @param requests The queue of requests.
+     * @param domainManager The domain manager, which gives the number of workers (one per domain that can be running),
+     *                      the number of requests in flight per worker and the batching parameters.
+     * @return A consumer of the requests.
+     */
+    protected RequestConsumer createRequestConsumer(BlockingQueue<Request> requests, DomainManager domainManager) {
+        return new RequestConsumer(requests, clock, domainManager.getMaxInFlightRequests(),
+                                   domainManager.getMaxNumberOfDomains(),
+                                   domainManager.getBatchSize(), domainManager.getBatchLatency());
     }
 
-    private void shutdown(long timeout, TimeUnit unit, ExecutorService... executors) {
+    /**
+     * Stops the tasks of a run. When the run is complete, they are only waiting for {@link Request#END}
+     * (which is polled every second), otherwise they are interrupted after that delay.
+     */
+    private void shutdown(ExecutorService... executors) {
         for (ExecutorService executor : executors) {
-            shutdownAndAwaitTermination(executor, timeout, unit);
+            shutdownAndAwaitTermination(executor, SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
         }
     }
 
     private static class ConsumerTask implements Callable<Void> {
         private final RequestConsumer requestConsumer;
         private final TransportProvider transportProvider;
-        private final TestReporter reporter;
+        private final RunProgress progress;
 
         private ConsumerTask(RequestConsumer requestConsumer, TransportProvider transportProvider,
-                             TestReporter reporter) {
+                             RunProgress progress) {
             this.requestConsumer = requestConsumer;
             this.transportProvider = transportProvider;
-            this.reporter = reporter;
+            this.progress = progress;
         }
 
         @Override
         public Void call() throws Exception {
-            requestConsumer.consume(transportProvider, reporter);
+            try {
+                requestConsumer.consume(transportProvider, progress);
+            } finally {
+                progress.consumptionFinished();
+            }
             return null;
         }
     }
@@ -132,16 +228,38 @@ public class TestDriver {
     private static class ProducerTask implements Callable<Void> {
         private final RequestProducer requestProducer;
         private final DomainManager domainManager;
+        private final RunProgress progress;
 
-        private ProducerTask(RequestProducer requestProducer, DomainManager domainManager) {
+        private ProducerTask(RequestProducer requestProducer, DomainManager domainManager, RunProgress progress) {
             this.requestProducer = requestProducer;
             this.domainManager = domainManager;
+            this.progress = progress;
         }
 
         @Override
         public Void call() throws Exception {
-            requestProducer.produce(domainManager);
+            int nbRequests = requestProducer.produce(domainManager);
+            progress.productionFinished(nbRequests);
             return null;
         }
     }
+
+    private static class LoggingProgressListener implements ProgressListener {
+        private volatile int nbRequests = -1;
+
+        @Override
+        public void productionFinished(int nbRequests) {
+            this.nbRequests = nbRequests;
+            LOGGER.info("{} tests to run", nbRequests);
+        }
+
+        @Override
+        public void testReported(Platform platform, TestResult testResult, int nbReportedTests) {
+            if (nbRequests < 0) {
+                LOGGER.info("{} tests run", nbReportedTests);
+            } else {
+                LOGGER.info("{}/{} tests run", nbReportedTests, nbRequests);
+            }
+        }
+    }
 }
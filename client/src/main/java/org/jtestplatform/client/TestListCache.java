@@ -0,0 +1,50 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.client;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Cache of the test frameworks and of their tests, which avoids asking them to a server.
+ * Implementations must be thread safe since the platforms are discovered concurrently.
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+public interface TestListCache {
+    /**
+     * @return The cached test frameworks, or null if they are unknown.
+     * @throws IOException
+     */
+    Collection<String> getFrameworks() throws IOException;
+
+    void putFrameworks(Collection<String> frameworks) throws IOException;
+
+    /**
+     * @param framework The name of a test framework.
+     * @return The cached tests of the framework, or null if they are unknown.
+     * @throws IOException
+     */
+    Collection<String> getTests(String framework) throws IOException;
+
+    void putTests(String framework, Collection<String> tests) throws IOException;
+}
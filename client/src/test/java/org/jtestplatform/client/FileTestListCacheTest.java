@@ -0,0 +1,97 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.client;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+public class FileTestListCacheTest {
+    private static final List<String> FRAMEWORKS = Arrays.asList("framework1", "framework2");
+    private static final List<String> TESTS = Arrays.asList("test1", "test2", "test3");
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testGet_empty() throws Exception {
+        FileTestListCache cache = new FileTestListCache(folder.getRoot(), "checksum");
+
+        assertThat(cache.getFrameworks()).as("frameworks").isNull();
+        assertThat(cache.getTests("framework1")).as("tests").isNull();
+    }
+
+    @Test
+    public void testPutAndGet() throws Exception {
+        // prepare
+        FileTestListCache cache = new FileTestListCache(folder.getRoot(), "checksum");
+
+        // test
+        cache.putFrameworks(FRAMEWORKS);
+        cache.putTests("framework1", TESTS);
+
+        // verify
+        FileTestListCache otherCache = new FileTestListCache(folder.getRoot(), "checksum");
+        assertThat(otherCache.getFrameworks()).as("frameworks").containsExactlyElementsOf(FRAMEWORKS);
+        assertThat(otherCache.getTests("framework1")).as("tests").containsExactlyElementsOf(TESTS);
+        assertThat(otherCache.getTests("framework2")).as("tests of framework2").isNull();
+    }
+
+    @Test
+    public void testGet_otherChecksum() throws Exception {
+        // prepare
+        FileTestListCache cache = new FileTestListCache(folder.getRoot(), "checksum");
+        cache.putFrameworks(FRAMEWORKS);
+        cache.putTests("framework1", TESTS);
+
+        // test
+        FileTestListCache otherCache = new FileTestListCache(folder.getRoot(), "otherChecksum");
+
+        // verify
+        assertThat(otherCache.getFrameworks()).as("frameworks").isNull();
+        assertThat(otherCache.getTests("framework1")).as("tests").isNull();
+    }
+
+    @Test
+    public void testChecksum() throws Exception {
+        File jar1 = folder.newFile("tests1.jar");
+        Files.write("content1", jar1, Charsets.UTF_8);
+        File jar2 = folder.newFile("tests2.jar");
+        Files.write("content2", jar2, Charsets.UTF_8);
+
+        String checksum1 = FileTestListCache.checksum(jar1);
+        String checksum2 = FileTestListCache.checksum(jar2);
+
+        assertThat(checksum1).isNotEmpty().isNotEqualTo(checksum2).isEqualTo(FileTestListCache.checksum(jar1));
+    }
+}
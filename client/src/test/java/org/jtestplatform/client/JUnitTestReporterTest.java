@@ -43,6 +43,7 @@ import java.io.FileOutputStream;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.*;
 
 import static com.google.code.tempusfugit.temporal.Duration.millis;
 import static java.util.concurrent.TimeUnit.SECONDS;
@@ -161,14 +162,59 @@ public class JUnitTestReporterTest {
                         new TestReport(testResult2, DURATION2));
     }
 
+    @Test
+    public void testReport_concurrently() throws Exception {
+        // prepare
+        final int nbThreads = 4;
+        final int nbTestsPerThread = 500;
+        JUnitXMLReportWriter writer = mock(JUnitXMLReportWriter.class);
+        final MockTestReporter reporter = new MockTestReporter(folder.getRoot(), writer);
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (int thread = 0; thread < nbThreads; thread++) {
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    for (int i = 0; i < nbTestsPerThread; i++) {
+                        Platform platform = (i % 2 == 0) ? Utils.PLATFORM1 : Utils.PLATFORM2;
+                        ResultType resultType = ResultType.values()[i % ResultType.values().length];
+                        reporter.report(platform, resultType.createTestResult("framework", method1), DURATION1);
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        // test
+        start.countDown();
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        reporter.saveReport();
+
+        // verify
+        Testsuites suites = reporter.suites;
+        assertThat(suites.getTestsuite()).as("number of suites").hasSize(2);
+        int expectedNbTests = nbThreads * nbTestsPerThread / 2;
+        for (Testsuite suite : suites.getTestsuite()) {
+            assertThat(suite.getTestcase()).as("test cases of " + suite.getName()).hasSize(expectedNbTests);
+            assertThat(stringToInteger(suite.getTests())).as("number of tests").isEqualTo(expectedNbTests);
+            assertThat(stringToDuration(reporter, suite.getTime())).as("total duration")
+                                                                   .isEqualTo(millis(expectedNbTests));
+        }
+    }
+
     private void assertProperty(List<Property> actualProperties, int index, String propertyName, Object propertyValue) {
         Property property = actualProperties.get(index);
         assertThat(property.getName()).isEqualTo(PLATFORM_PROPERTY_PREFIX + propertyName);
         assertThat(property.getValue()).isEqualTo(String.valueOf(propertyValue));
     }
 
-    private void assertTestSuite(JUnitTestReporter reporter, Testsuites suites, Platform platform, String framework,
-                                 TestReport... expectedTestReports) throws Exception {
+    static void assertTestSuite(JUnitTestReporter reporter, Testsuites suites, Platform platform, String framework,
+                                TestReport... expectedTestReports) throws Exception {
         String suitePackageName = new PlatformKeyBuilder().buildKey(platform);
         String suiteName = suitePackageName + '.' + framework;
         Testsuite testSuite = findTestSuite(suites, suiteName);
@@ -225,7 +271,7 @@ public class JUnitTestReporterTest {
         return duration;
     }
 
-    private Testsuite findTestSuite(Testsuites suites, String suiteName) {
+    private static Testsuite findTestSuite(Testsuites suites, String suiteName) {
         Testsuite testSuite = JUnitTestReporter.findTestSuite(suites, suiteName);
         if (testSuite == null) {
             throw new IllegalArgumentException("can't find testSuite '" + suiteName + "'");
@@ -258,7 +304,7 @@ public class JUnitTestReporterTest {
         }
     }
 
-    private static class TestReport {
+    static class TestReport {
         private final String test;
         private final Duration testDuration;
 
@@ -305,7 +351,7 @@ public class JUnitTestReporterTest {
             }
         }
 
-        private TestReport(TestResult testResult, Duration testDuration) {
+        TestReport(TestResult testResult, Duration testDuration) {
             this.test = testResult.getTest();
             this.testDuration = testDuration;
 
@@ -22,15 +22,25 @@
 package org.jtestplatform.client;
 
 import com.google.code.tempusfugit.temporal.Clock;
+import com.google.code.tempusfugit.temporal.Duration;
 import com.google.code.tempusfugit.temporal.MovableClock;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
 import org.jtestplatform.cloud.TransportProvider;
+import org.jtestplatform.cloud.configuration.Platform;
+import org.jtestplatform.common.message.Message;
 import org.jtestplatform.common.message.RunTest;
+import org.jtestplatform.common.message.RunTests;
 import org.jtestplatform.common.message.TestResult;
+import org.jtestplatform.common.message.TestResults;
 import org.jtestplatform.common.transport.Transport;
 import org.jtestplatform.common.transport.TransportHelper;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.util.Arrays;
 import java.util.Comparator;
@@ -133,6 +143,8 @@ public class RequestConsumerTest {
         assertThat(requests).as("requests").isEmpty();
         verify(transportProvider, times(1)).get(refEq(PLATFORM1));
         verify(transportProvider, times(1)).get(refEq(PLATFORM2));
+        verify(transportProvider, times(1)).release(refEq(transport1));
+        verify(transportProvider, times(1)).release(refEq(transport2));
 /*
         verify(transportHelper, times(1)).send(refEq(transport1), eqMessage(runTest(request1)));
         verify(transportHelper, times(1)).send(refEq(transport2), eqMessage(runTest(request2)));
@@ -145,6 +157,140 @@ public class RequestConsumerTest {
         verifyNoMoreInteractions(transportProvider, transport1, transport2, /*transportHelper,*/ reporter);
     }
 
+    @Test
+    public void testConsume_severalRequestsInFlight() throws Exception {
+        // preparation
+        BlockingQueue<Request> requests = new ArrayBlockingQueue<Request>(3);
+        Request request1 = new Request(PLATFORM1, "framework1", "test1");
+        requests.put(request1);
+        Request request2 = new Request(PLATFORM1, "framework2", "test5");
+        requests.put(request2);
+        requests.put(Request.END);
+        final TestReporter reporter = mock(TestReporter.class);
+        final TransportProvider transportProvider = mock(TransportProvider.class);
+        Transport transport = mock(Transport.class);
+        when(transportProvider.get(refEq(PLATFORM1))).thenReturn(transport);
+        SettableFuture<Message> result1 = SettableFuture.create();
+        SettableFuture<Message> result2 = SettableFuture.create();
+        final TransportHelper transportHelper = mock(TransportHelper.class);
+        when(transportHelper.sendRequestAsync(refEq(transport), any(RunTest.class))).thenReturn(result1, result2);
+        final RequestConsumer consumer = new RequestConsumer(requests, new MovableClock(), 2) {
+            @Override
+            TransportHelper createTransportHelper() {
+                return transportHelper;
+            }
+        };
+
+        // test
+        ExecutorService executorService = Executors.newFixedThreadPool(1);
+        Future<Object> consumed = executorService.submit(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                consumer.consume(transportProvider, reporter);
+                return null;
+            }
+        });
+
+        // verifications
+        verify(transportHelper, timeout(1000).times(2)).sendRequestAsync(refEq(transport), any(RunTest.class));
+        assertThat(consumed.isDone()).as("consume done before the end of the tests in flight").isFalse();
+        result2.set(testResult(request2));
+        result1.set(testResult(request1));
+        consumed.get(1, SECONDS);
+        executorService.shutdown();
+        verify(reporter, times(1)).report(refEq(PLATFORM1), eqTestResult(testResult(request1)), any(Duration.class));
+        verify(reporter, times(1)).report(refEq(PLATFORM1), eqTestResult(testResult(request2)), any(Duration.class));
+        verifyNoMoreInteractions(reporter);
+    }
+
+    @Test(timeout = 10000)
+    public void testConsume_severalWorkers() throws Exception {
+        // preparation
+        BlockingQueue<Request> requests = new LinkedBlockingQueue<Request>();
+        Request request1 = new Request(PLATFORM1, "framework1", "test1");
+        Request request2 = new Request(PLATFORM1, "framework2", "test5");
+        Request request3 = new Request(PLATFORM2, "framework1", "test2");
+        requests.put(request1);
+        requests.put(request2);
+        requests.put(request3);
+        requests.put(Request.END);
+        TestReporter reporter = mock(TestReporter.class);
+        TransportProvider transportProvider = mock(TransportProvider.class);
+        Transport transport = mock(Transport.class);
+        when(transportProvider.get(any(Platform.class))).thenReturn(transport);
+        final TransportHelper transportHelper = mock(TransportHelper.class);
+        when(transportHelper.sendRequestAsync(refEq(transport), any(RunTest.class))).thenAnswer(
+            new Answer<ListenableFuture<Message>>() {
+                @Override
+                public ListenableFuture<Message> answer(InvocationOnMock invocation) throws Throwable {
+                    RunTest runTest = (RunTest) invocation.getArguments()[1];
+                    return Futures.<Message>immediateFuture(new TestResult(runTest.getFramework(),
+                                                                           runTest.getTest()));
+                }
+            });
+        RequestConsumer consumer = new RequestConsumer(requests, new MovableClock(), 1, 2) {
+            @Override
+            TransportHelper createTransportHelper() {
+                return transportHelper;
+            }
+        };
+
+        // test
+        consumer.consume(transportProvider, reporter);
+
+        // verifications
+        assertThat(requests).as("requests").isEmpty();
+        verify(reporter, times(1)).report(refEq(PLATFORM1), eqTestResult(testResult(request1)), any(Duration.class));
+        verify(reporter, times(1)).report(refEq(PLATFORM1), eqTestResult(testResult(request2)), any(Duration.class));
+        verify(reporter, times(1)).report(refEq(PLATFORM2), eqTestResult(testResult(request3)), any(Duration.class));
+        verifyNoMoreInteractions(reporter);
+    }
+
+    @Test(timeout = 10000)
+    public void testConsume_batches() throws Exception {
+        // preparation
+        BlockingQueue<Request> requests = new LinkedBlockingQueue<Request>();
+        Request request1 = new Request(PLATFORM1, "framework1", "test1");
+        Request request2 = new Request(PLATFORM1, "framework2", "test5");
+        Request request3 = new Request(PLATFORM1, "framework1", "test2");
+        requests.put(request1);
+        requests.put(request2);
+        requests.put(request3);
+        requests.put(Request.END);
+        TestReporter reporter = mock(TestReporter.class);
+        TransportProvider transportProvider = mock(TransportProvider.class);
+        Transport transport = mock(Transport.class);
+        when(transportProvider.get(refEq(PLATFORM1))).thenReturn(transport);
+        final TransportHelper transportHelper = mock(TransportHelper.class);
+        TestResults batchResults = new TestResults(Arrays.asList(testResult(request1), testResult(request3)),
+                                                   Arrays.asList(5, 7));
+        when(transportHelper.sendRequestAsync(refEq(transport), isA(RunTests.class)))
+            .thenReturn(Futures.<Message>immediateFuture(batchResults));
+        when(transportHelper.sendRequestAsync(refEq(transport), isA(RunTest.class)))
+            .thenReturn(Futures.<Message>immediateFuture(testResult(request2)));
+        RequestConsumer consumer = new RequestConsumer(requests, new MovableClock(), 1, 1, 2, 60000) {
+            @Override
+            TransportHelper createTransportHelper() {
+                return transportHelper;
+            }
+        };
+
+        // test
+        consumer.consume(transportProvider, reporter);
+
+        // verifications
+        assertThat(requests).as("requests").isEmpty();
+        verify(transportHelper, times(1)).sendRequestAsync(refEq(transport), isA(RunTests.class));
+        verify(transportHelper, times(1)).sendRequestAsync(refEq(transport), isA(RunTest.class));
+        verify(reporter, times(1)).report(refEq(PLATFORM1), eqTestResult(testResult(request1)),
+                                          eq(Duration.millis(5)));
+        verify(reporter, times(1)).report(refEq(PLATFORM1), eqTestResult(testResult(request3)),
+                                          eq(Duration.millis(7)));
+        verify(reporter, times(1)).report(refEq(PLATFORM1), eqTestResult(testResult(request2)),
+                                          any(Duration.class));
+        verifyNoMoreInteractions(reporter);
+    }
+
     private static RunTest runTest(Request request) {
         return new RunTest(request.getTestFramework(), request.getTestName());
     }
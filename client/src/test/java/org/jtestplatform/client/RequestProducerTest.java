@@ -26,7 +26,9 @@ import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
 import org.jtestplatform.cloud.configuration.Platform;
 import org.jtestplatform.cloud.domain.DomainManager;
+import org.jtestplatform.common.message.ErrorMessage;
 import org.jtestplatform.common.message.GetFrameworkTests;
+import org.jtestplatform.common.message.GetFrameworkTestsPage;
 import org.jtestplatform.common.transport.Transport;
 import org.jtestplatform.common.transport.TransportException;
 import org.jtestplatform.common.transport.TransportHelper;
@@ -42,6 +44,7 @@ import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.jtestplatform.client.Utils.*;
@@ -81,13 +84,14 @@ public class RequestProducerTest {
         };
 
         // test
-        producer.produce(domainManager);
+        int nbRequests = producer.produce(domainManager);
 
         // verifications
         verify(domainManager, times(1)).getPlatforms();
         for (Platform platform : PLATFORMS) {
             verify(domainManager, times(1)).get(refEq(platform));
         }
+        verify(domainManager, times(PLATFORMS.size())).release(refEq(transport));
 /*
         final int nbFrameworks = FRAMEWORKS.size();
         final int nbPlatforms = PLATFORMS.size();
@@ -109,6 +113,7 @@ public class RequestProducerTest {
         for (String test : FRAMEWORK2_TESTS) {
             expectedRequests.add(new Request(PLATFORM1, FRAMEWORK2, test));
         }
+        assertThat(nbRequests).as("nbRequests").isEqualTo(expectedRequests.size());
         expectedRequests.add(Request.END);
         ArgumentCaptor<Request> actualRequests = ArgumentCaptor.forClass(Request.class);
         verify(requests, times(expectedRequests.size())).put(actualRequests.capture());
@@ -117,6 +122,113 @@ public class RequestProducerTest {
         verifyNoMoreInteractions(requests, domainManager, transport/*, transportHelper*/);
     }
 
+    @Test
+    public void testProduce_cachedTests() throws Exception {
+        // preparation
+        BlockingQueue<Request> requests = new LinkedBlockingQueue<Request>();
+        DomainManager domainManager = mock(DomainManager.class);
+        when(domainManager.getPlatforms()).thenReturn(Arrays.asList(PLATFORM1, PLATFORM2));
+        TestListCache cache = mock(TestListCache.class);
+        when(cache.getFrameworks()).thenReturn(Arrays.asList(FRAMEWORK1));
+        when(cache.getTests(FRAMEWORK1)).thenReturn(FRAMEWORK1_TESTS);
+        RequestProducer producer = new RequestProducer(requests, cache);
+
+        // test
+        int nbRequests = producer.produce(domainManager);
+
+        // verifications
+        assertThat(nbRequests).as("nbRequests").isEqualTo(2 * FRAMEWORK1_TESTS.size());
+        assertThat(requests).hasSize(nbRequests + 1).endsWith(Request.END);
+        verify(domainManager, never()).get(any(Platform.class));
+        verify(cache, never()).putFrameworks(anyCollectionOf(String.class));
+        verify(cache, never()).putTests(anyString(), anyCollectionOf(String.class));
+    }
+
+    @Test
+    public void testProduce_fillsCache() throws Exception {
+        // preparation
+        BlockingQueue<Request> requests = new LinkedBlockingQueue<Request>();
+        Transport transport = mock(Transport.class);
+        DomainManager domainManager = mock(DomainManager.class);
+        when(domainManager.getPlatforms()).thenReturn(Arrays.asList(PLATFORM1));
+        when(domainManager.get(refEq(PLATFORM1))).thenReturn(transport);
+        final TransportHelper transportHelper = new Utils.MockTransportHelper(transport);
+        TestListCache cache = mock(TestListCache.class);
+        RequestProducer producer = new RequestProducer(requests, cache) {
+            @Override
+            TransportHelper createTransportHelper() {
+                return transportHelper;
+            }
+        };
+
+        // test
+        int nbRequests = producer.produce(domainManager);
+
+        // verifications
+        assertThat(nbRequests).as("nbRequests").isEqualTo(FRAMEWORK1_TESTS.size() + FRAMEWORK2_TESTS.size());
+        verify(cache, times(1)).putFrameworks(FRAMEWORKS);
+        verify(cache, times(1)).putTests(FRAMEWORK1, new ArrayList<String>(FRAMEWORK1_TESTS));
+        verify(cache, times(1)).putTests(FRAMEWORK2, new ArrayList<String>(FRAMEWORK2_TESTS));
+    }
+
+    @Test
+    public void testProduce_severalPages() throws Exception {
+        // preparation
+        BlockingQueue<Request> requests = new LinkedBlockingQueue<Request>();
+        Transport transport = mock(Transport.class);
+        DomainManager domainManager = mock(DomainManager.class);
+        when(domainManager.getPlatforms()).thenReturn(Arrays.asList(PLATFORM1));
+        when(domainManager.get(refEq(PLATFORM1))).thenReturn(transport);
+        final TransportHelper transportHelper = spy(new Utils.MockTransportHelper(transport));
+        RequestProducer producer = new RequestProducer(requests, null, 2) {
+            @Override
+            TransportHelper createTransportHelper() {
+                return transportHelper;
+            }
+        };
+
+        // test
+        int nbRequests = producer.produce(domainManager);
+
+        // verifications
+        assertThat(nbRequests).as("nbRequests").isEqualTo(FRAMEWORK1_TESTS.size() + FRAMEWORK2_TESTS.size());
+        assertThat(requests).hasSize(nbRequests + 1).endsWith(Request.END);
+        // framework1 has 2 tests (1 page) and framework2 has 3 tests (2 pages)
+        verify(transportHelper, times(3)).sendRequest(refEq(transport), isA(GetFrameworkTestsPage.class));
+    }
+
+    @Test
+    public void testProduce_pagesUnsupported() throws Exception {
+        // preparation
+        BlockingQueue<Request> requests = new LinkedBlockingQueue<Request>();
+        Transport transport = mock(Transport.class);
+        DomainManager domainManager = mock(DomainManager.class);
+        when(domainManager.getPlatforms()).thenReturn(Arrays.asList(PLATFORM1));
+        when(domainManager.get(refEq(PLATFORM1))).thenReturn(transport);
+        final TransportHelper transportHelper = spy(new Utils.MockTransportHelper(transport));
+        ErrorMessage error = new ErrorMessage(
+            ErrorMessage.NO_COMMAND_FOR_MESSAGE + GetFrameworkTestsPage.class.getName());
+        doThrow(new TransportException(error)).when(transportHelper)
+                                              .sendRequest(refEq(transport), isA(GetFrameworkTestsPage.class));
+        RequestProducer producer = new RequestProducer(requests) {
+            @Override
+            TransportHelper createTransportHelper() {
+                return transportHelper;
+            }
+        };
+
+        // test
+        int nbRequests = producer.produce(domainManager);
+
+        // verifications
+        assertThat(nbRequests).as("nbRequests").isEqualTo(FRAMEWORK1_TESTS.size() + FRAMEWORK2_TESTS.size());
+        assertThat(requests).hasSize(nbRequests + 1).endsWith(Request.END);
+        // pages are asked only once, then the tests of each framework are asked at once
+        verify(transportHelper, times(1)).sendRequest(refEq(transport), isA(GetFrameworkTestsPage.class));
+        verify(transportHelper, times(1)).sendRequest(refEq(transport), eqMessage(new GetFrameworkTests(FRAMEWORK1)));
+        verify(transportHelper, times(1)).sendRequest(refEq(transport), eqMessage(new GetFrameworkTests(FRAMEWORK2)));
+    }
+
     @Theory
     public void testProduce_failure(FailureType failure) throws Exception {
         // preparation
@@ -0,0 +1,122 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.client;
+
+import org.jtestplatform.common.message.TestResult;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import java.util.concurrent.*;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.jtestplatform.client.JUnitTestReporterTest.DURATION1;
+import static org.jtestplatform.client.Utils.PLATFORM1;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+public class RunProgressTest {
+    private static final TestResult RESULT1 = new TestResult("framework1", "test1");
+    private static final TestResult RESULT2 = new TestResult("framework1", "test2");
+
+    @Test
+    public void testReport() throws Exception {
+        // prepare
+        TestReporter reporter = mock(TestReporter.class);
+        ProgressListener listener = mock(ProgressListener.class);
+        RunProgress progress = new RunProgress(reporter, listener);
+
+        // test
+        progress.report(PLATFORM1, RESULT1, DURATION1);
+        progress.report(PLATFORM1, RESULT2, DURATION1);
+        progress.saveReport();
+
+        // verify
+        InOrder inOrder = inOrder(reporter, listener);
+        inOrder.verify(reporter).report(PLATFORM1, RESULT1, DURATION1);
+        inOrder.verify(listener).testReported(PLATFORM1, RESULT1, 1);
+        inOrder.verify(reporter).report(PLATFORM1, RESULT2, DURATION1);
+        inOrder.verify(listener).testReported(PLATFORM1, RESULT2, 2);
+        inOrder.verify(reporter).saveReport();
+        inOrder.verifyNoMoreInteractions();
+    }
+
+    @Test(timeout = 10000)
+    public void testAwaitCompletion_allTestsReported() throws Exception {
+        // prepare
+        ProgressListener listener = mock(ProgressListener.class);
+        final RunProgress progress = new RunProgress(mock(TestReporter.class), listener);
+        progress.report(PLATFORM1, RESULT1, DURATION1);
+        Future<Boolean> completed = awaitCompletion(progress, 0);
+
+        // test
+        progress.productionFinished(2);
+        Thread.sleep(100);
+        assertThat(completed.isDone()).as("completed before the last report").isFalse();
+        progress.report(PLATFORM1, RESULT2, DURATION1);
+
+        // verify
+        assertThat(completed.get(1, SECONDS)).as("completed").isTrue();
+        verify(listener).productionFinished(2);
+    }
+
+    @Test(timeout = 10000)
+    public void testAwaitCompletion_consumptionFinished() throws Exception {
+        // prepare
+        RunProgress progress = new RunProgress(mock(TestReporter.class), mock(ProgressListener.class));
+        Future<Boolean> completed = awaitCompletion(progress, 0);
+
+        // test
+        progress.consumptionFinished();
+
+        // verify
+        assertThat(completed.get(1, SECONDS)).as("completed").isTrue();
+    }
+
+    @Test(timeout = 10000)
+    public void testAwaitCompletion_timeout() throws Exception {
+        // prepare
+        RunProgress progress = new RunProgress(mock(TestReporter.class), mock(ProgressListener.class));
+        progress.productionFinished(1);
+
+        // test
+        boolean completed = progress.awaitCompletion(100, MILLISECONDS);
+
+        // verify
+        assertThat(completed).as("completed").isFalse();
+    }
+
+    private static Future<Boolean> awaitCompletion(final RunProgress progress, final long timeout) {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Boolean> result = executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return progress.awaitCompletion(timeout, MILLISECONDS);
+            }
+        });
+        executor.shutdown();
+        return result;
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.client;
+
+import org.jtestplatform.client.JUnitTestReporterTest.ResultType;
+import org.jtestplatform.client.JUnitTestReporterTest.TestReport;
+import org.jtestplatform.common.message.TestResult;
+import org.jtestplatform.junitxmlreport.ObjectFactory;
+import org.jtestplatform.junitxmlreport.Testsuites;
+import org.junit.Rule;
+import org.junit.experimental.theories.Theories;
+import org.junit.experimental.theories.Theory;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import javax.xml.bind.JAXBContext;
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.jtestplatform.client.JUnitTestReporterTest.DURATION1;
+import static org.jtestplatform.client.JUnitTestReporterTest.DURATION2;
+import static org.jtestplatform.client.JUnitTestReporterTest.TestedClass.Method.method1;
+import static org.jtestplatform.client.JUnitTestReporterTest.TestedClass.Method.method2;
+import static org.jtestplatform.client.JUnitTestReporterTest.assertTestSuite;
+
+/**
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+@RunWith(Theories.class)
+public class StreamingJUnitTestReporterTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Theory
+    public void testReport_twoPlatforms(ResultType resultType) throws Exception {
+        // prepare
+        File reportDir = folder.newFolder("report");
+        File tempDir = folder.newFolder("temp");
+        StreamingJUnitTestReporter reporter = new StreamingJUnitTestReporter(reportDir, tempDir);
+        TestResult testResult1 = resultType.createTestResult("framework", method1);
+        TestResult testResult2 = resultType.createTestResult("framework", method2);
+        TestResult testResult3 = resultType.createTestResult("framework2", method2);
+
+        // test
+        reporter.report(Utils.PLATFORM1, testResult1, DURATION1);
+        reporter.report(Utils.PLATFORM2, testResult3, DURATION2);
+        reporter.report(Utils.PLATFORM1, testResult2, DURATION2);
+        reporter.saveReport();
+
+        // verify
+        assertThat(reportDir.list()).as("report files").containsExactly("tests.xml");
+        assertThat(tempDir.list()).as("temporary files").isEmpty();
+        JAXBContext context = JAXBContext.newInstance(ObjectFactory.class.getPackage().getName());
+        Testsuites suites = (Testsuites) context.createUnmarshaller().unmarshal(new File(reportDir, "tests.xml"));
+        assertThat(suites.getTestsuite()).as("number of suites").hasSize(2);
+        assertTestSuite(reporter, suites, Utils.PLATFORM1, testResult1.getFramework(),
+                        new TestReport(testResult1, DURATION1),
+                        new TestReport(testResult2, DURATION2));
+        assertTestSuite(reporter, suites, Utils.PLATFORM2, testResult3.getFramework(),
+                        new TestReport(testResult3, DURATION2));
+    }
+}
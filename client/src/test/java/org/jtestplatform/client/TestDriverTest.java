@@ -39,10 +39,12 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
 
 /**
@@ -76,19 +78,66 @@ public class TestDriverTest {
         BlockingQueue<Request> requests = mock(BlockingQueue.class);
         TestDriver testDriver = new TestDriver();
 
-        RequestProducer requestProducer = testDriver.createRequestProducer(requests);
+        RequestProducer requestProducer = testDriver.createRequestProducer(requests, null);
 
         assertThat(requestProducer).isExactlyInstanceOf(RequestProducer.class);
     }
 
+    @Test
+    public void testCreateTestListCache() throws Exception {
+        File testJar = folder.newFile("tests.jar");
+        File reportDirectory = folder.newFolder();
+        TestDriver testDriver = new TestDriver();
+
+        TestListCache testListCache = testDriver.createTestListCache(reportDirectory, testJar);
+
+        assertThat(testListCache).isExactlyInstanceOf(FileTestListCache.class);
+    }
+
+    @Test
+    public void testCreateTestListCache_noTestJar() throws Exception {
+        File reportDirectory = folder.newFolder();
+        TestDriver testDriver = new TestDriver();
+
+        TestListCache testListCache = testDriver.createTestListCache(reportDirectory, null);
+
+        assertThat(testListCache).isNull();
+    }
+
+    @Test(timeout = 60000)
+    public void testRunTests_testJar() throws Exception {
+        // preparation
+        File testJar = folder.newFile("tests.jar");
+        File reportDirectory = folder.newFolder();
+        MockTestDriver testDriver = new MockTestDriver(mock(BlockingQueue.class), mock(RequestProducer.class),
+                                                       mock(RequestConsumer.class), mock(TestReporter.class),
+                                                       mock(DomainManager.class));
+
+        // test
+        testDriver.runTests(getCloudConfigFile(), reportDirectory, testJar, mock(ProgressListener.class));
+
+        // verifications
+        TestListCache testListCache = testDriver.getActualTestListCache();
+        assertThat(testListCache).as("testListCache").isExactlyInstanceOf(FileTestListCache.class);
+        testListCache.putFrameworks(Arrays.asList("junit"));
+        File cacheDirectory = new File(reportDirectory, TestDriver.TEST_LIST_CACHE_DIRECTORY);
+        assertThat(cacheDirectory.list()).as("cached lists")
+                                         .containsOnly(FileTestListCache.checksum(testJar) + ".frameworks");
+    }
+
     @Test
     public void testCreateRequestConsumer() throws Exception {
         BlockingQueue<Request> requests = mock(BlockingQueue.class);
+        DomainManager domainManager = mock(DomainManager.class);
+        when(domainManager.getMaxNumberOfDomains()).thenReturn(2);
+        when(domainManager.getBatchSize()).thenReturn(1);
+        when(domainManager.getMaxInFlightRequests()).thenReturn(4);
         TestDriver testDriver = new TestDriver();
 
-        RequestConsumer requestConsumer = testDriver.createRequestConsumer(requests);
+        RequestConsumer requestConsumer = testDriver.createRequestConsumer(requests, domainManager);
 
         assertThat(requestConsumer).isExactlyInstanceOf(RequestConsumer.class);
+        verify(domainManager).getMaxInFlightRequests();
     }
 
     @Test
@@ -98,7 +147,7 @@ public class TestDriverTest {
 
         TestReporter reporter = testDriver.createTestReporter(reportDirectory);
 
-        assertThat(reporter).isExactlyInstanceOf(JUnitTestReporter.class);
+        assertThat(reporter).isExactlyInstanceOf(StreamingJUnitTestReporter.class);
     }
 
     @Test(timeout = 60000)
@@ -109,11 +158,11 @@ public class TestDriverTest {
         final BlockingQueue<Request> requests = mock(BlockingQueue.class);
         final RequestProducer requestProducer = mock(RequestProducer.class);
         final MutableObject<Thread> requestProducerThread = new MutableObject<Thread>();
-        doAnswer(new Answer<Void>() {
+        doAnswer(new Answer<Integer>() {
             @Override
-            public Void answer(InvocationOnMock invocationOnMock) throws Throwable {
+            public Integer answer(InvocationOnMock invocationOnMock) throws Throwable {
                 requestProducerThread.setValue(Thread.currentThread());
-                return null;
+                return 0;
             }
         }).when(requestProducer).produce(any(DomainManager.class));
         final RequestConsumer requestConsumer = mock(RequestConsumer.class);
@@ -147,6 +196,49 @@ public class TestDriverTest {
                                                     .isNotEqualTo(requestConsumerThread);
     }
 
+    @Test(timeout = 60000)
+    public void testRunTests_startAndStopTheDomainManager() throws Exception {
+        // preparation
+        RequestProducer requestProducer = mock(RequestProducer.class);
+        TestReporter testReporter = mock(TestReporter.class);
+        DomainManager domainManager = mock(DomainManager.class);
+        MockTestDriver testDriver = new MockTestDriver(mock(BlockingQueue.class), requestProducer,
+                                                       mock(RequestConsumer.class), testReporter, domainManager);
+
+        // test
+        testDriver.runTests(getCloudConfigFile(), folder.getRoot());
+
+        // verifications
+        InOrder inOrder = inOrder(domainManager, requestProducer, testReporter);
+        inOrder.verify(domainManager, times(1)).start();
+        inOrder.verify(requestProducer, times(1)).produce(domainManager);
+        inOrder.verify(testReporter, times(1)).saveReport();
+        inOrder.verify(domainManager, times(1)).stop();
+    }
+
+    @Test(timeout = 60000)
+    public void testRunTests_stopTheDomainManagerOnError() throws Exception {
+        // preparation
+        TestReporter testReporter = mock(TestReporter.class);
+        IOException error = new IOException("can't save the report");
+        doThrow(error).when(testReporter).saveReport();
+        DomainManager domainManager = mock(DomainManager.class);
+        MockTestDriver testDriver = new MockTestDriver(mock(BlockingQueue.class), mock(RequestProducer.class),
+                                                       mock(RequestConsumer.class), testReporter, domainManager);
+
+        // test
+        try {
+            testDriver.runTests(getCloudConfigFile(), folder.getRoot());
+            fail("an IOException was expected");
+        } catch (IOException e) {
+            assertThat(e).isSameAs(error);
+        }
+
+        // verifications
+        verify(domainManager, times(1)).start();
+        verify(domainManager, times(1)).stop();
+    }
+
     public static File copyStreamToFile(TemporaryFolder folder, String name) throws IOException {
         File outputFile = folder.newFile(name);
         final InputStream inputStream = TestDriverTest.class.getResourceAsStream(name);
@@ -163,14 +255,26 @@ public class TestDriverTest {
         private final RequestProducer requestProducer;
         private final RequestConsumer requestConsumer;
         private final TestReporter testReporter;
+        private final DomainManager domainManager;
         private File actualCloudConfigFile;
+        private TestListCache actualTestListCache;
 
         public MockTestDriver(BlockingQueue<Request> requests, RequestProducer requestProducer,
                               RequestConsumer requestConsumer, TestReporter testReporter) {
+            this(requests, requestProducer, requestConsumer, testReporter, null);
+        }
+
+        /**
+         * @param domainManager The domain manager to use, or null to create it from the configuration file.
+         */
+        public MockTestDriver(BlockingQueue<Request> requests, RequestProducer requestProducer,
+                              RequestConsumer requestConsumer, TestReporter testReporter,
+                              DomainManager domainManager) {
             this.requests = requests;
             this.requestProducer = requestProducer;
             this.requestConsumer = requestConsumer;
             this.testReporter = testReporter;
+            this.domainManager = domainManager;
         }
 
         @Override
@@ -179,12 +283,13 @@ public class TestDriverTest {
         }
 
         @Override
-        RequestProducer createRequestProducer(BlockingQueue<Request> requests) {
+        RequestProducer createRequestProducer(BlockingQueue<Request> requests, TestListCache testListCache) {
+            this.actualTestListCache = testListCache;
             return requestProducer;
         }
 
         @Override
-        protected RequestConsumer createRequestConsumer(BlockingQueue<Request> requests) {
+        protected RequestConsumer createRequestConsumer(BlockingQueue<Request> requests, DomainManager domainManager) {
             return requestConsumer;
         }
 
@@ -197,11 +302,15 @@ public class TestDriverTest {
         protected DomainManager createDomainManager(File cloudConfigFile)
             throws FileNotFoundException, DomainException {
             this.actualCloudConfigFile = cloudConfigFile;
-            return super.createDomainManager(cloudConfigFile);
+            return (domainManager == null) ? super.createDomainManager(cloudConfigFile) : domainManager;
         }
 
         public File getActualCloudConfigFile() {
             return actualCloudConfigFile;
         }
+
+        public TestListCache getActualTestListCache() {
+            return actualTestListCache;
+        }
     }
 }
\ No newline at end of file
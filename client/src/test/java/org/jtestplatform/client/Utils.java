@@ -78,11 +78,14 @@ public class Utils {
             INIT,
             GET_FRAMEWORKS,
             GET_TESTS,
+            GET_TESTS_PAGE,
             RUN_TEST
         }
 
         private STATE state = STATE.INIT;
         private String framework;
+        private int cursor;
+        private int pageSize;
         private String test;
         private final List<Transport> expectedTransports;
         private final List<TestResult> testResults = new ArrayList<TestResult>();
@@ -129,6 +132,12 @@ public class Utils {
             } else if (message instanceof GetFrameworkTests) {
                 framework = ((GetFrameworkTests) message).getFramework();
                 state = STATE.GET_TESTS;
+            } else if (message instanceof GetFrameworkTestsPage) {
+                GetFrameworkTestsPage getPage = (GetFrameworkTestsPage) message;
+                framework = getPage.getFramework();
+                cursor = getPage.getCursor();
+                pageSize = getPage.getPageSize();
+                state = STATE.GET_TESTS_PAGE;
             } else if (message instanceof RunTest) {
                 framework = ((RunTest) message).getFramework();
                 test = ((RunTest) message).getTest();
@@ -160,13 +169,14 @@ public class Utils {
                 break;
             case GET_TESTS:
                 state = STATE.INIT;
-                if (FRAMEWORK1.equals(framework)) {
-                    result = new FrameworkTests(FRAMEWORK1_TESTS);
-                } else if (FRAMEWORK2.equals(framework)) {
-                    result = new FrameworkTests(FRAMEWORK2_TESTS);
-                } else {
-                    throw new IllegalStateException("unknown framework: " + framework);
-                }
+                result = new FrameworkTests(getTests(framework));
+                break;
+            case GET_TESTS_PAGE:
+                state = STATE.INIT;
+                List<String> tests = new ArrayList<String>(getTests(framework));
+                int to = Math.min(cursor + pageSize, tests.size());
+                int nextCursor = (to < tests.size()) ? to : FrameworkTestsPage.LAST_PAGE;
+                result = new FrameworkTestsPage(tests.subList(cursor, to), nextCursor);
                 break;
             case RUN_TEST:
                 state = STATE.INIT;
@@ -182,6 +192,16 @@ public class Utils {
             return result;
         }
 
+        private static Set<String> getTests(String framework) {
+            if (FRAMEWORK1.equals(framework)) {
+                return FRAMEWORK1_TESTS;
+            } else if (FRAMEWORK2.equals(framework)) {
+                return FRAMEWORK2_TESTS;
+            } else {
+                throw new IllegalStateException("unknown framework: " + framework);
+            }
+        }
+
         public List<TestResult> getTestResults() {
             return testResults;
         }
@@ -192,6 +212,8 @@ public class Utils {
             } else if (result instanceof TestResult) {
                 final TestResult testResult = (TestResult) result;
                 return testResult.getFramework() + ',' + testResult.getTest() + ',' + testResult.isSuccess();
+            } else if (result instanceof FrameworkTestsPage) {
+                return ((FrameworkTestsPage) result).getTests();
             } else {
                 return ((FrameworkTests) result).getTests();
             }
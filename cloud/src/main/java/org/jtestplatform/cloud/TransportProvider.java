@@ -33,5 +33,18 @@ import org.jtestplatform.common.transport.TransportException;
  *
  */
 public interface TransportProvider {
+    /**
+     * @param platform The platform on which the requests will be executed.
+     * @return A transport to a server running on the given platform. It might be shared with other callers, which
+     * means that it must not be closed by the caller.
+     * @throws TransportException
+     */
     Transport get(Platform platform) throws TransportException;
+
+    /**
+     * Notifies that a request sent through a transport returned by {@link #get(Platform)} has been answered, or has
+     * failed. It's used to balance the load among the servers.
+     * @param transport The transport of the request.
+     */
+    void release(Transport transport);
 }
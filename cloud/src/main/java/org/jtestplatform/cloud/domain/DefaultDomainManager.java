@@ -32,10 +32,12 @@ import org.jtestplatform.cloud.configuration.Factory;
 import org.jtestplatform.cloud.configuration.Platform;
 import org.jtestplatform.cloud.configuration.io.dom4j.ConfigurationDom4jReader;
 import org.jtestplatform.cloud.domain.libvirt.LibVirtDomainFactory;
+import org.jtestplatform.cloud.domain.loadbalancing.*;
 import org.jtestplatform.cloud.domain.watchdog.DefaultWatchDogStrategy;
 import org.jtestplatform.cloud.domain.watchdog.WatchDog;
 import org.jtestplatform.cloud.domain.watchdog.WatchDogListener;
 import org.jtestplatform.cloud.domain.watchdog.WatchDogStrategy;
+import org.jtestplatform.common.transport.TCPTransport;
 import org.jtestplatform.common.transport.Transport;
 import org.jtestplatform.common.transport.TransportException;
 import org.jtestplatform.common.transport.UDPTransport;
@@ -47,9 +49,13 @@ import java.io.Reader;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.google.code.tempusfugit.temporal.Duration.millis;
 import static com.google.code.tempusfugit.temporal.Duration.seconds;
@@ -60,13 +66,36 @@ import static com.google.code.tempusfugit.temporal.Duration.seconds;
 public class DefaultDomainManager implements DomainManager {
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultDomainManager.class);
     private static final Duration MAX_ZOMBIE_DURATION = seconds(10);
+    private static final long IDLE_DOMAIN_POLL_INTERVAL = 1000L;
 
     private final Configuration config;
     private final LoadBalancer<DomainManagerDelegate> delegates;
     private final WatchDog watchDog;
-    private final LoadBalancer<Domain> domains;
+
+    /**
+     * The domains of each platform. A platform has its own load balancer so that a test is only sent to a domain of
+     * its platform. The pools are added, and the pending creations are updated, with the lock of the manager held.
+     */
+    private final Map<Platform, LoadBalancer<Domain>> pools = new ConcurrentHashMap<Platform, LoadBalancer<Domain>>();
+    private final Map<Platform, List<DomainCreation>> pendingCreations =
+        new HashMap<Platform, List<DomainCreation>>();
+    private final Object idleDomainLock = new Object();
+    private final ExecutorService domainCreator = Executors.newCachedThreadPool(new DomainCreatorThreadFactory());
+    private boolean stopped;
+
+    /**
+     * The transports to the domains, which are reused for all the requests. There is a single transport per domain
+     * since a test server only serves one client (requests can be sent concurrently through that transport),
+     * so the number of open sockets is bounded by the maximum number of domains.
+     */
+    private final Map<Domain, Transport> transports = new HashMap<Domain, Transport>();
+    private final Map<Transport, Domain> transportDomains = new HashMap<Transport, Domain>();
+    private final Map<Domain, Platform> domainPlatforms = new ConcurrentHashMap<Domain, Platform>();
+    private final Map<Domain, Connection> domainConnections = new ConcurrentHashMap<Domain, Connection>();
     private final int maxNumberOfDomains;
+    private final int minIdleDomains;
     private final int serverPort;
+    private final String transportProtocol;
 
     public DefaultDomainManager(Reader configReader) throws ConfigurationException {
         config = read(configReader);
@@ -74,9 +103,11 @@ public class DefaultDomainManager implements DomainManager {
         checkValid(knownFactories, config);
 
         maxNumberOfDomains = Math.max(1, config.getDomains().getMax());
+        minIdleDomains = config.getDomains().getMinIdle();
         serverPort = config.getServerPort();
+        transportProtocol = config.getTransport();
         watchDog = createWatchDog();
-        domains = new LoadBalancer<Domain>();
+        createLoadBalancingStrategy(config.getLoadBalancing()); // fails early for an unknown strategy
 
         List<DomainManagerDelegate> dmDelegates = new ArrayList<DomainManagerDelegate>();
         for (Factory factory : config.getDomains().getFactories()) {
@@ -88,6 +119,37 @@ public class DefaultDomainManager implements DomainManager {
         delegates = new LoadBalancer<DomainManagerDelegate>(dmDelegates);
     }
 
+    private LoadBalancingStrategy<Domain> createLoadBalancingStrategy(String name) throws ConfigurationException {
+        if (RoundRobinStrategy.NAME.equals(name)) {
+            return new RoundRobinStrategy<Domain>();
+        }
+        if (LeastOutstandingRequestsStrategy.NAME.equals(name)) {
+            return new LeastOutstandingRequestsStrategy<Domain>();
+        }
+        if (PowerOfTwoChoicesStrategy.NAME.equals(name)) {
+            return new PowerOfTwoChoicesStrategy<Domain>();
+        }
+        if (WeightedStrategy.NAME.equals(name)) {
+            return new WeightedStrategy<Domain>() {
+                @Override
+                protected double getWeight(Domain domain) {
+                    // the domains of a pool have the same platform : they only differ by their host
+                    Connection connection = domainConnections.get(domain);
+                    return (connection == null) ? 1d : getConnectionWeight(connection);
+                }
+            };
+        }
+        throw new ConfigurationException("Unknown load balancing strategy : " + name);
+    }
+
+    /**
+     * @param connection A connection.
+     * @return The relative capacity of the host of the given connection.
+     */
+    static double getConnectionWeight(Connection connection) {
+        return Math.max(1, connection.getWeight());
+    }
+
     private WatchDog createWatchDog() {
         WatchDogStrategy strategy = new DefaultWatchDogStrategy(MAX_ZOMBIE_DURATION);
         Sleeper sleeper = new ThreadSleep(millis(config.getWatchDogPollInterval()));
@@ -107,6 +169,31 @@ public class DefaultDomainManager implements DomainManager {
         return config.getPlatforms();
     }
 
+    @Override
+    public int getMaxNumberOfDomains() {
+        return maxNumberOfDomains;
+    }
+
+    @Override
+    public int getRunTimeout() {
+        return config.getRunTimeout();
+    }
+
+    @Override
+    public int getBatchSize() {
+        return config.getBatchSize();
+    }
+
+    @Override
+    public int getBatchLatency() {
+        return config.getBatchLatency();
+    }
+
+    @Override
+    public int getMaxInFlightRequests() {
+        return config.getMaxInFlightRequests();
+    }
+
     private DomainConfig createDomainConfig(Platform platform) {
         DomainConfig domainConfig = new DomainConfig();
         domainConfig.setDomainName(null); // null => will be defined automatically
@@ -114,43 +201,156 @@ public class DefaultDomainManager implements DomainManager {
         return domainConfig;
     }
 
-    private void domainDied(Domain domain) {
-        domains.remove(domain);
+    void domainDied(Domain domain) {
+        Platform platform = domainPlatforms.remove(domain);
+        domainConnections.remove(domain);
+        LoadBalancer<Domain> pool = (platform == null) ? null : pools.get(platform);
+        if (pool != null) {
+            pool.remove(domain);
+        }
+        closeTransport(domain);
+        if (pool != null) {
+            synchronized (this) {
+                replenishIdleDomains(platform, pool);
+            }
+        }
+        notifyIdleDomain();
+    }
+
+    private void closeTransport(Domain domain) {
+        Transport transport;
+        synchronized (transports) {
+            transport = transports.remove(domain);
+            if (transport != null) {
+                transportDomains.remove(transport);
+            }
+        }
+
+        if (transport != null) {
+            try {
+                transport.close();
+            } catch (IOException e) {
+                LOGGER.error("an error happened while closing transport", e);
+            }
+        }
     }
 
     @Override
     public void start() {
         watchDog.startWatching();
+
+        // boot the domains in parallel now, instead of one by one when the first tests are run
+        int warmPool = config.getDomains().getWarmPool();
+        synchronized (this) {
+            for (Platform platform : config.getPlatforms()) {
+                LoadBalancer<Domain> pool;
+                try {
+                    pool = getPool(platform);
+                } catch (TransportException e) {
+                    LOGGER.error("unable to warm up the domains of platform " + platform, e);
+                    continue;
+                }
+
+                int nbDomains = 0;
+                while ((nbDomains < warmPool) && startSpareDomainCreation(platform, pool)) {
+                    nbDomains++;
+                }
+                replenishIdleDomains(platform, pool);
+            }
+        }
     }
 
     @Override
     public void stop() {
+        synchronized (this) {
+            stopped = true;
+        }
+        domainCreator.shutdown();
         watchDog.stopWatching();
 
-        for (Domain domain : domains.clear()) {
-            // stop the watch dog before actually stop the domain
-            watchDog.unwatch(domain);
-
-            LOGGER.info("stopping domains");
-            try {
-                domain.stop();
-            } catch (DomainException e) {
-                LOGGER.error("an error happened while stopping", e);
+        for (LoadBalancer<Domain> pool : pools.values()) {
+            for (Domain domain : pool.clear()) {
+                stopDomain(domain);
             }
         }
     }
 
+    private void stopDomain(Domain domain) {
+        // stop the watch dog before actually stop the domain
+        watchDog.unwatch(domain);
+        closeTransport(domain);
+        domainPlatforms.remove(domain);
+        domainConnections.remove(domain);
+
+        LOGGER.info("stopping domains");
+        try {
+            domain.stop();
+        } catch (DomainException e) {
+            LOGGER.error("an error happened while stopping", e);
+        }
+    }
+
     /**
      * {@inheritDoc}
+     * The transport is shared with the other callers and is closed when its domain stops or dies.
      *
      * @throws TransportException
      */
     @Override
     public Transport get(Platform platform) throws TransportException {
-        //TODO put the connection/transport in cache and remove it when the domain stop/die
-        String host = getNextIP(platform);
+        Domain domain = getNextDomain(platform);
 
-        return createTransport(host, serverPort, config.getTimeout());
+        try {
+            synchronized (transports) {
+                Transport transport = transports.get(domain);
+                if (transport == null) {
+                    String host;
+                    try {
+                        host = domain.getIPAddress();
+                    } catch (DomainException e) {
+                        throw new TransportException("unable to get domain's IP address", e);
+                    }
+
+                    transport = createTransport(host, serverPort, config.getTimeout());
+                    transports.put(domain, transport);
+                    transportDomains.put(transport, domain);
+                }
+                return transport;
+            }
+        } catch (TransportException e) {
+            releaseDomain(domain);
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The request is no longer counted as in flight for the domain of the transport.
+     */
+    @Override
+    public void release(Transport transport) {
+        Domain domain;
+        synchronized (transports) {
+            domain = transportDomains.get(transport);
+        }
+        if (domain != null) {
+            releaseDomain(domain);
+        }
+    }
+
+    private void releaseDomain(Domain domain) {
+        Platform platform = domainPlatforms.get(domain);
+        LoadBalancer<Domain> pool = (platform == null) ? null : pools.get(platform);
+        if (pool != null) {
+            pool.release(domain);
+            notifyIdleDomain();
+        }
+    }
+
+    private void notifyIdleDomain() {
+        synchronized (idleDomainLock) {
+            idleDomainLock.notifyAll();
+        }
     }
 
     protected Transport createTransport(String host, int port, int timeout) throws TransportException {
@@ -163,45 +363,229 @@ public class DefaultDomainManager implements DomainManager {
     }
 
     protected Transport createTransport(InetAddress address, int port, int timeout) throws TransportException {
-        return new UDPTransport(address, port, timeout);
+        if (TCPTransport.PROTOCOL.equals(transportProtocol)) {
+            return new TCPTransport(address, port, timeout);
+        }
+        return new UDPTransport(address, port, timeout, true);
     }
 
-    private synchronized String getNextIP(Platform platform) throws TransportException {
-        if (domains.size() < maxNumberOfDomains) {
-            // create a domain if there is less than maximum
-            // (it includes the case where there is no domain running)
+    /**
+     * Gets the next domain of a platform. The domains are created in the background, so that a call only waits for
+     * a domain when its platform has none running.
+     */
+    private Domain getNextDomain(Platform platform) throws TransportException {
+        boolean firstTry = true;
+        while (true) {
+            DomainCreation creation;
+            synchronized (this) {
+                LoadBalancer<Domain> pool = getPool(platform);
+                if (firstTry || (pool.size() == 0)) {
+                    startDomainCreation(platform, pool);
+                }
+                firstTry = false;
 
-            try {
-                DomainManagerDelegate delegate = null;
-                Connection connection = null;
-                for (int i = 0; i < delegates.size(); i++) {
-                    DomainManagerDelegate d = delegates.getNext();
-                    connection = d.getConnectionFor(platform);
-                    if (connection != null) {
-                        delegate = d;
-                        break;
+                // never block here : the pool might be emptied by a dying domain
+                Domain domain = pool.tryGetNext();
+                if (domain != null) {
+                    if (minIdleDomains > 0) {
+                        replenishIdleDomains(platform, pool);
                     }
+                    return domain;
                 }
 
-                if (connection == null) {
-                    throw new TransportException("That platform is not supported :\n" + platform);
+                List<DomainCreation> creations = getPendingCreations(platform);
+                creation = creations.isEmpty() ? null : creations.get(0);
+            }
+
+            if (creation != null) {
+                waitFor(creation);
+            } else {
+                waitForIdleDomain();
+            }
+        }
+    }
+
+    private LoadBalancer<Domain> getPool(Platform platform) throws TransportException {
+        LoadBalancer<Domain> pool = pools.get(platform);
+        if (pool == null) {
+            try {
+                pool = new LoadBalancer<Domain>(createLoadBalancingStrategy(config.getLoadBalancing()));
+            } catch (ConfigurationException e) {
+                throw new TransportException("unable to create a new domain", e);
+            }
+            pools.put(platform, pool);
+        }
+        return pool;
+    }
+
+    private List<DomainCreation> getPendingCreations(Platform platform) {
+        List<DomainCreation> creations = pendingCreations.get(platform);
+        if (creations == null) {
+            creations = new ArrayList<DomainCreation>();
+            pendingCreations.put(platform, creations);
+        }
+        return creations;
+    }
+
+    /**
+     * Starts the creation of a domain if the platform has less than its maximum (domains being created included).
+     * A platform without any domain gets one even if other platforms use all of them : an idle domain of another
+     * platform is then stopped.
+     * @throws TransportException if the domain manager has been stopped.
+     */
+    private void startDomainCreation(Platform platform, LoadBalancer<Domain> pool) throws TransportException {
+        if (stopped) {
+            throw new TransportException("the domain manager has been stopped");
+        }
+
+        int nbPlatformDomains = pool.size() + getPendingCreations(platform).size();
+        if (nbPlatformDomains >= getMaxNumberOfDomains(platform)) {
+            return;
+        }
+
+        if (getNumberOfDomains() >= maxNumberOfDomains) {
+            if (nbPlatformDomains > 0) {
+                return;
+            }
+
+            final Domain idleDomain = removeIdleDomain();
+            if (idleDomain == null) {
+                return;
+            }
+            LOGGER.info("stopping an idle domain of platform {}", domainPlatforms.get(idleDomain));
+            domainCreator.execute(new Runnable() {
+                @Override
+                public void run() {
+                    stopDomain(idleDomain);
                 }
+            });
+        }
+
+        submitDomainCreation(platform, pool);
+    }
+
+    /**
+     * Starts the creation of a domain that no caller is waiting for, unless the platform or the configuration has
+     * reached its maximum. No domain is stopped to make room for it.
+     * @return true if the creation has been started.
+     */
+    private boolean startSpareDomainCreation(Platform platform, LoadBalancer<Domain> pool) {
+        if (stopped || (pool.size() + getPendingCreations(platform).size() >= getMaxNumberOfDomains(platform))
+            || (getNumberOfDomains() >= maxNumberOfDomains)) {
+            return false;
+        }
+        submitDomainCreation(platform, pool);
+        return true;
+    }
+
+    /**
+     * Starts the creation of domains until the platform has its minimum number of idle domains (domains being
+     * created included).
+     */
+    private void replenishIdleDomains(Platform platform, LoadBalancer<Domain> pool) {
+        int nbIdleDomains = pool.getNumberOfIdle() + getPendingCreations(platform).size();
+        while ((nbIdleDomains < minIdleDomains) && startSpareDomainCreation(platform, pool)) {
+            nbIdleDomains++;
+        }
+    }
+
+    private void submitDomainCreation(Platform platform, LoadBalancer<Domain> pool) {
+        DomainCreation creation = new DomainCreation(platform, pool);
+        getPendingCreations(platform).add(creation);
+        creation.future = domainCreator.submit(creation);
+    }
+
+    private static void waitFor(DomainCreation creation) throws TransportException {
+        try {
+            creation.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransportException("interrupted while waiting for a new domain", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TransportException) {
+                throw (TransportException) e.getCause();
+            }
+            throw new TransportException("unable to create a new domain", e.getCause());
+        }
+    }
+
+    private void waitForIdleDomain() throws TransportException {
+        synchronized (idleDomainLock) {
+            try {
+                idleDomainLock.wait(IDLE_DOMAIN_POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TransportException("interrupted while waiting for an idle domain", e);
+            }
+        }
+    }
 
-                DomainConfig domainConfig = createDomainConfig(platform);
-                Domain domain = delegate.createDomain(domainConfig, connection);
-                domains.add(domain);
-                watchDog.watch(domain);
-            } catch (DomainException ce) {
-                throw new TransportException("unable to create a new domain", ce);
+    private Domain createDomain(Platform platform) throws DomainException, TransportException {
+        DomainManagerDelegate delegate = null;
+        Connection connection = null;
+        for (int i = 0; (connection == null) && (i < delegates.size()); i++) {
+            delegate = delegates.getNext();
+            try {
+                connection = delegate.getConnectionFor(platform);
+            } finally {
+                if (connection == null) {
+                    delegates.release(delegate);
+                }
             }
         }
 
-        // TODO ensure that the ip address correspond to a domain with the appropriate platform
+        if (connection == null) {
+            throw new TransportException("That platform is not supported :\n" + platform);
+        }
+
         try {
-            return domains.getNext().getIPAddress();
-        } catch (DomainException e) {
-            throw new TransportException("unable to get domain's IP address", e);
+            DomainConfig domainConfig = createDomainConfig(platform);
+            Domain domain = delegate.createDomain(domainConfig, connection);
+            domainConnections.put(domain, connection);
+            return domain;
+        } finally {
+            // the creation is no longer in flight for the delegate
+            delegates.release(delegate);
+        }
+    }
+
+    /**
+     * @return An idle domain, removed from the largest pool having one, or null if all domains are busy.
+     */
+    private Domain removeIdleDomain() {
+        List<LoadBalancer<Domain>> sortedPools = new ArrayList<LoadBalancer<Domain>>(pools.values());
+        Collections.sort(sortedPools, new Comparator<LoadBalancer<Domain>>() {
+            @Override
+            public int compare(LoadBalancer<Domain> pool1, LoadBalancer<Domain> pool2) {
+                return pool2.size() - pool1.size();
+            }
+        });
+        for (LoadBalancer<Domain> pool : sortedPools) {
+            Domain domain = pool.removeIdle();
+            if (domain != null) {
+                return domain;
+            }
         }
+        return null;
+    }
+
+    /**
+     * @return The number of domains, including those being created.
+     */
+    private int getNumberOfDomains() {
+        int nbDomains = 0;
+        for (LoadBalancer<Domain> pool : pools.values()) {
+            nbDomains += pool.size();
+        }
+        for (List<DomainCreation> creations : pendingCreations.values()) {
+            nbDomains += creations.size();
+        }
+        return nbDomains;
+    }
+
+    private int getMaxNumberOfDomains(Platform platform) {
+        int max = platform.getMaxDomains();
+        return (max > 0) ? Math.min(max, maxNumberOfDomains) : maxNumberOfDomains;
     }
 
     private void checkValid(Map<String, DomainFactory<? extends Domain>> knownFactories, Configuration config)
@@ -215,6 +599,10 @@ public class DefaultDomainManager implements DomainManager {
         if ((config.getDomains().getFactories() == null) || config.getDomains().getFactories().isEmpty()) {
             throw new ConfigurationException("No factory has been defined");
         }
+        if (!UDPTransport.PROTOCOL.equals(config.getTransport())
+            && !TCPTransport.PROTOCOL.equals(config.getTransport())) {
+            throw new ConfigurationException("Unknown transport : " + config.getTransport());
+        }
 
         StringBuilder wrongTypes = new StringBuilder();
         StringBuilder typesWithoutConnection = new StringBuilder();
@@ -275,4 +663,54 @@ public class DefaultDomainManager implements DomainManager {
         return result;
     }
 
+    /**
+     * The creation of a domain, run in the background. The domain is added to the pool of its platform once created.
+     */
+    private class DomainCreation implements Callable<Domain> {
+        private final Platform platform;
+        private final LoadBalancer<Domain> pool;
+        private Future<Domain> future;
+
+        DomainCreation(Platform platform, LoadBalancer<Domain> pool) {
+            this.platform = platform;
+            this.pool = pool;
+        }
+
+        @Override
+        public Domain call() throws Exception {
+            try {
+                Domain domain = createDomain(platform);
+                synchronized (DefaultDomainManager.this) {
+                    if (!stopped) {
+                        domainPlatforms.put(domain, platform);
+                        pool.add(domain);
+                        watchDog.watch(domain);
+                        return domain;
+                    }
+                }
+                domainConnections.remove(domain);
+                domain.stop();
+                throw new DomainException("the domain manager has been stopped");
+            } catch (Exception e) {
+                LOGGER.error("unable to create a domain for platform " + platform, e);
+                throw e;
+            } finally {
+                synchronized (DefaultDomainManager.this) {
+                    getPendingCreations(platform).remove(this);
+                }
+                notifyIdleDomain();
+            }
+        }
+    }
+
+    private static class DomainCreatorThreadFactory implements ThreadFactory {
+        private final AtomicInteger nextId = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "domain-creator-" + nextId.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
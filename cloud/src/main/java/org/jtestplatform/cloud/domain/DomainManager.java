@@ -32,6 +32,31 @@ import java.util.List;
 public interface DomainManager extends TransportProvider {
     List<Platform> getPlatforms();
 
+    /**
+     * @return The maximum number of domains that can be running at the same time.
+     */
+    int getMaxNumberOfDomains();
+
+    /**
+     * @return The maximum duration of a test run, in milliseconds, or 0 if there is no limit.
+     */
+    int getRunTimeout();
+
+    /**
+     * @return The maximum number of tests sent to a server in a single request.
+     */
+    int getBatchSize();
+
+    /**
+     * @return The maximum time, in milliseconds, a test can wait for its batch to be full.
+     */
+    int getBatchLatency();
+
+    /**
+     * @return The maximum number of requests sent to a domain without waiting for their result.
+     */
+    int getMaxInFlightRequests();
+
     void start();
 
     void stop();
@@ -27,7 +27,10 @@ package org.jtestplatform.cloud.domain;
 import org.jtestplatform.cloud.configuration.Connection;
 import org.jtestplatform.cloud.configuration.Platform;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
 
 /**
  * @author Fabien DUMINY (fduminy at jnode dot org)
@@ -37,10 +40,20 @@ class DomainManagerDelegate {
     private final DomainFactory<? extends Domain> domainFactory;
     private final LoadBalancer<Connection> connections;
 
+    /**
+     * Bounds the number of domains created at the same time through a connection.
+     */
+    private final Map<Connection, Semaphore> creationPermits = new HashMap<Connection, Semaphore>();
+
     public DomainManagerDelegate(DomainFactory<? extends Domain> domainFactory,
                                  List<Connection> connections) {
         this.domainFactory = domainFactory;
         this.connections = new LoadBalancer<Connection>(connections);
+        for (Connection connection : connections) {
+            if (connection.getMaxCreations() > 0) {
+                creationPermits.put(connection, new Semaphore(connection.getMaxCreations(), true));
+            }
+        }
     }
 
     public Connection getConnectionFor(Platform platform) throws DomainException {
@@ -49,15 +62,34 @@ class DomainManagerDelegate {
             Connection connection = connections.getNext();
 
             //TODO think about caching the result of support(platform, connection) (to avoid potentially remote connection)
-            if (domainFactory.support(platform, connection)) {
-                result = connection;
-                break;
+            try {
+                if (domainFactory.support(platform, connection)) {
+                    result = connection;
+                    break;
+                }
+            } finally {
+                connections.release(connection);
             }
         }
         return result;
     }
 
     public Domain createDomain(DomainConfig config, Connection connection) throws DomainException {
-        return domainFactory.createDomain(config, connection);
+        Semaphore permits = creationPermits.get(connection);
+        if (permits == null) {
+            return domainFactory.createDomain(config, connection);
+        }
+
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DomainException("interrupted while waiting to create a domain", e);
+        }
+        try {
+            return domainFactory.createDomain(config, connection);
+        } finally {
+            permits.release();
+        }
     }
 }
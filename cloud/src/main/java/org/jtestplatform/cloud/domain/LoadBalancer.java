@@ -24,34 +24,60 @@
  */
 package org.jtestplatform.cloud.domain;
 
+import org.jtestplatform.cloud.domain.loadbalancing.LoadBalancingStrategy;
+import org.jtestplatform.cloud.domain.loadbalancing.RoundRobinStrategy;
+
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * Distributes the requests among elements, according to a {@link LoadBalancingStrategy}. The number of requests in
+ * flight for each element is counted from the calls to {@link #getNext()} and {@link #release(Object)}.
+ *
  * @author Fabien DUMINY (fduminy at jnode dot org)
  * @param <T>
  */
 public class LoadBalancer<T> {
     private final List<T> elements;
-
-    private final AtomicInteger nextElement = new AtomicInteger(0);
+    private final List<Integer> inFlight;
+    private final LoadBalancingStrategy<T> strategy;
 
     public LoadBalancer(List<T> elements) {
         this();
-        this.elements.addAll(elements);
+        addAll(elements);
     }
 
     /**
      *
      */
     public LoadBalancer() {
+        this(new RoundRobinStrategy<T>());
+    }
+
+    public LoadBalancer(List<T> elements, LoadBalancingStrategy<T> strategy) {
+        this(strategy);
+        addAll(elements);
+    }
+
+    public LoadBalancer(LoadBalancingStrategy<T> strategy) {
         this.elements = new ArrayList<T>();
+        this.inFlight = new ArrayList<Integer>();
+        this.strategy = strategy;
     }
 
+    private void addAll(List<T> elements) {
+        for (T element : elements) {
+            this.elements.add(element);
+            this.inFlight.add(0);
+        }
+    }
+
+    /**
+     * Gets the element that will receive the next request, which is counted as in flight until
+     * {@link #release(Object)} is called.
+     * @return The next element.
+     */
     public T getNext() {
-        //TODO use pluggable strategy
-        // simple round robin        
         T element;
 
         synchronized (elements) {
@@ -64,29 +90,92 @@ public class LoadBalancer<T> {
                 }
             }
 
-            element = elements.get(nextElement.getAndIncrement());
-            nextElement.compareAndSet(elements.size(), 0);
+            element = selectNext();
         }
 
         return element;
     }
 
+    /**
+     * Gets the element that will receive the next request, like {@link #getNext()}, but without blocking.
+     * @return The next element, or null if there is no element.
+     */
+    public T tryGetNext() {
+        synchronized (elements) {
+            return elements.isEmpty() ? null : selectNext();
+        }
+    }
+
+    private T selectNext() {
+        int[] loads = new int[inFlight.size()];
+        for (int i = 0; i < loads.length; i++) {
+            loads[i] = inFlight.get(i);
+        }
+        int index = strategy.select(elements, loads);
+        inFlight.set(index, loads[index] + 1);
+        return elements.get(index);
+    }
+
+    /**
+     * Notifies that a request given to an element is finished.
+     * @param element The element returned by {@link #getNext()}.
+     */
+    public void release(T element) {
+        synchronized (elements) {
+            int index = elements.indexOf(element);
+            if ((index >= 0) && (inFlight.get(index) > 0)) {
+                inFlight.set(index, inFlight.get(index) - 1);
+            }
+        }
+    }
+
     public void add(T element) {
         synchronized (elements) {
             elements.add(element);
+            inFlight.add(0);
             elements.notify(); // notify something has been added
         }
     }
 
     public boolean remove(T element) {
         synchronized (elements) {
-            boolean removed = elements.remove(element);
+            int index = elements.indexOf(element);
+            if (index >= 0) {
+                elements.remove(index);
+                inFlight.remove(index);
+            }
+            return index >= 0;
+        }
+    }
 
-            if (removed) {
-                nextElement.compareAndSet(elements.size(), 0);
+    /**
+     * Removes an element without request in flight.
+     * @return The removed element, or null if all the elements have requests in flight.
+     */
+    public T removeIdle() {
+        synchronized (elements) {
+            for (int i = 0; i < elements.size(); i++) {
+                if (inFlight.get(i) == 0) {
+                    inFlight.remove(i);
+                    return elements.remove(i);
+                }
             }
+            return null;
+        }
+    }
 
-            return removed;
+    /**
+     * @return The number of elements without request in flight.
+     */
+    public int getNumberOfIdle() {
+        synchronized (elements) {
+            int nbIdle = 0;
+            for (Integer nbRequests : inFlight) {
+                if (nbRequests == 0) {
+                    nbIdle++;
+                }
+            }
+            return nbIdle;
         }
     }
 
@@ -99,6 +188,7 @@ public class LoadBalancer<T> {
         synchronized (elements) {
             result = new ArrayList<T>(elements);
             elements.clear();
+            inFlight.clear();
         }
         return result;
     }
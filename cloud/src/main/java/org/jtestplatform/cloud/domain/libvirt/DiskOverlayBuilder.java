@@ -0,0 +1,134 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.cloud.domain.libvirt;
+
+import org.dom4j.DocumentException;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.jtestplatform.cloud.domain.DomainException;
+import org.libvirt.Connect;
+import org.libvirt.LibvirtException;
+import org.libvirt.StoragePool;
+import org.libvirt.StorageVol;
+
+import java.util.Arrays;
+
+import static java.lang.String.format;
+
+/**
+ * Creates the qcow2 overlays of the domains' disks. An overlay only stores the changes made by its domain, so that
+ * several domains can run from the same disk image without copying or modifying it.
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+class DiskOverlayBuilder {
+    private static final String OVERLAY_SUFFIX = ".qcow2";
+    private static final String DEFAULT_DISK_FORMAT = "raw";
+    private static final String OVERLAY_XML = "<volume><name>%s</name><capacity>%d</capacity>"
+        + "<target><format type='qcow2'/></target>"
+        + "<backingStore><path>%s</path><format type='%s'/></backingStore></volume>";
+
+    /**
+     * Creates the overlay of a domain, in the storage pool of its disk.
+     * @param connect The connection to libvirt.
+     * @param disk The path of the disk image.
+     * @param domainName The name of the domain.
+     * @return The path of the overlay.
+     * @throws DomainException
+     */
+    String build(Connect connect, String disk, String domainName) throws DomainException {
+        try {
+            StorageVol diskVolume = connect.storageVolLookupByPath(disk);
+            StoragePool pool = diskVolume.storagePoolLookupByVolume();
+            String overlayName = getOverlayName(domainName);
+            if (Arrays.asList(pool.listVolumes()).contains(overlayName)) {
+                // left by a domain whose saved state has not been restored
+                delete(pool.storageVolLookupByName(overlayName));
+            }
+
+            String xml = format(OVERLAY_XML, overlayName, diskVolume.getInfo().capacity, diskVolume.getPath(),
+                                getFormat(diskVolume));
+            StorageVol overlay = pool.storageVolCreateXML(xml, 0);
+            String overlayPath = overlay.getPath();
+            overlay.free();
+            pool.free();
+            diskVolume.free();
+            return overlayPath;
+        } catch (LibvirtException e) {
+            throw new DomainException(e);
+        }
+    }
+
+    /**
+     * @param connect The connection to libvirt.
+     * @param disk The path of the disk image.
+     * @param domainName The name of the domain.
+     * @return The path of the existing overlay of a domain, or null if it doesn't exist.
+     * @throws DomainException
+     */
+    String find(Connect connect, String disk, String domainName) throws DomainException {
+        try {
+            StorageVol diskVolume = connect.storageVolLookupByPath(disk);
+            StoragePool pool = diskVolume.storagePoolLookupByVolume();
+            String overlayName = getOverlayName(domainName);
+            String overlayPath = null;
+            if (Arrays.asList(pool.listVolumes()).contains(overlayName)) {
+                StorageVol overlay = pool.storageVolLookupByName(overlayName);
+                overlayPath = overlay.getPath();
+                overlay.free();
+            }
+            pool.free();
+            diskVolume.free();
+            return overlayPath;
+        } catch (LibvirtException e) {
+            throw new DomainException(e);
+        }
+    }
+
+    void delete(Connect connect, String overlayPath) throws DomainException {
+        try {
+            delete(connect.storageVolLookupByPath(overlayPath));
+        } catch (LibvirtException e) {
+            throw new DomainException(e);
+        }
+    }
+
+    private static void delete(StorageVol overlay) throws LibvirtException {
+        overlay.delete(0);
+        overlay.free();
+    }
+
+    private static String getOverlayName(String domainName) {
+        return domainName + OVERLAY_SUFFIX;
+    }
+
+    private static String getFormat(StorageVol volume) throws LibvirtException, DomainException {
+        Element format;
+        try {
+            Element target = DocumentHelper.parseText(volume.getXMLDesc(0)).getRootElement().element("target");
+            format = (target == null) ? null : target.element("format");
+        } catch (DocumentException e) {
+            throw new DomainException(e);
+        }
+        return (format == null) ? DEFAULT_DISK_FORMAT : format.attributeValue("type", DEFAULT_DISK_FORMAT);
+    }
+}
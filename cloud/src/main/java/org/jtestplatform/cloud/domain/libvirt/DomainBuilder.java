@@ -21,14 +21,23 @@
  */
 package org.jtestplatform.cloud.domain.libvirt;
 
+import org.jtestplatform.cloud.configuration.Connection;
+import org.jtestplatform.cloud.configuration.Platform;
 import org.jtestplatform.cloud.domain.DomainConfig;
 import org.jtestplatform.cloud.domain.DomainException;
 import org.jtestplatform.cloud.domain.libvirt.DomainCache.Entry;
 import org.jtestplatform.common.ConfigUtils;
 import org.libvirt.Connect;
+import org.libvirt.Domain;
 import org.libvirt.LibvirtException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -38,45 +47,142 @@ import static java.lang.String.format;
  * @author Fabien DUMINY (fduminy at jnode dot org)
  */
 class DomainBuilder {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DomainBuilder.class);
+    private static final String STATE_FILE_SUFFIX = ".state";
+
     private final DomainXMLBuilder domainXMLBuilder;
     private final DomainCache domainCache;
+    private final DiskOverlayBuilder diskOverlayBuilder;
     private final Map<String, Object> locks = new HashMap<String, Object>();
 
     DomainBuilder(DomainXMLBuilder domainXMLBuilder, DomainCache domainCache) {
+        this(domainXMLBuilder, domainCache, new DiskOverlayBuilder());
+    }
+
+    DomainBuilder(DomainXMLBuilder domainXMLBuilder, DomainCache domainCache, DiskOverlayBuilder diskOverlayBuilder) {
         this.domainXMLBuilder = domainXMLBuilder;
         this.domainCache = domainCache;
+        this.diskOverlayBuilder = diskOverlayBuilder;
     }
 
+    /**
+     * Defines a new domain, or restores the saved state of a domain of the same platform and name if there is one.
+     */
     DomainInfo defineDomain(Connect connect, DomainConfig config, NetworkConfig networkConfig) throws DomainException {
         try {
-            Entry entry = getEntry(connect, config);
+            // the entry is free until a domain with its name is defined, so the lock is held until then
+            synchronized (getLock(connect.getHostName())) {
+                Entry entry = getEntry(connect, config);
 
-            config.setDomainName(entry.getDomainName());
-            String macAddress = entry.getMacAddress();
-            String xml = domainXMLBuilder.build(config, macAddress, networkConfig.getNetworkName());
-            return new DomainInfo(connect.domainDefineXML(xml), macAddress, entry.getIpAddress());
+                config.setDomainName(entry.getDomainName());
+                String macAddress = entry.getMacAddress();
+                Domain domain = restoreDomain(connect, config);
+                String diskOverlay;
+                if (domain == null) {
+                    diskOverlay = useDiskOverlay(config.getPlatform()) ?
+                        diskOverlayBuilder.build(connect, config.getPlatform().getDisk(), entry.getDomainName()) :
+                        null;
+                    String xml = domainXMLBuilder.build(config, macAddress, networkConfig.getNetworkName(),
+                                                        diskOverlay);
+                    domain = connect.domainDefineXML(xml);
+                } else {
+                    diskOverlay = diskOverlayBuilder.find(connect, config.getPlatform().getDisk(),
+                                                          entry.getDomainName());
+                }
+                return new DomainInfo(domain, macAddress, entry.getIpAddress(), diskOverlay);
+            }
         } catch (LibvirtException e) {
             throw new DomainException(e);
         }
     }
 
+    void deleteDiskOverlay(Connect connect, String diskOverlay) throws DomainException {
+        diskOverlayBuilder.delete(connect, diskOverlay);
+    }
+
+    /**
+     * @param platform The platform of a domain.
+     * @param domainName The name of the domain.
+     * @return The file where the state of the domain is saved when it stops, or null if it must not be saved.
+     */
+    @Nullable
+    static File getStateFile(Platform platform, String domainName) {
+        if (!hasStateDirectory(platform)) {
+            return null;
+        }
+        return new File(platform.getStateDirectory(), domainName + STATE_FILE_SUFFIX);
+    }
+
+    /**
+     * Checks that the state of the domains of a platform can be saved through a connection. The state files are
+     * looked up and deleted on the local file system, so the connection must be local (its uri has no host, like
+     * <code>qemu:///system</code>).
+     * @param platform The platform of the domains.
+     * @param connection The connection to libvirt.
+     * @throws DomainException if the platform has a state directory and the connection is not local.
+     */
+    static void checkStateDirectory(Platform platform, Connection connection) throws DomainException {
+        if (hasStateDirectory(platform) && !isLocal(connection.getUri())) {
+            throw new DomainException(format("the state directory of a platform requires a local connection, "
+                                             + "but uri is %s", connection.getUri()));
+        }
+    }
+
+    private static boolean isLocal(String uri) {
+        try {
+            return ConfigUtils.isBlank(new URI(uri).getHost());
+        } catch (URISyntaxException e) {
+            return false;
+        }
+    }
+
+    private static boolean useDiskOverlay(Platform platform) {
+        return (platform != null) && platform.isDiskOverlay() && (platform.getDisk() != null);
+    }
+
+    private static boolean hasStateDirectory(Platform platform) {
+        return useDiskOverlay(platform) && !ConfigUtils.isBlank(platform.getStateDirectory());
+    }
+
+    @Nullable
+    private Domain restoreDomain(Connect connect, DomainConfig config) {
+        File stateFile = getStateFile(config.getPlatform(), config.getDomainName());
+        if ((stateFile == null) || !stateFile.exists()) {
+            return null;
+        }
+
+        try {
+            connect.restore(stateFile.getAbsolutePath());
+
+            // the restored domain is transient : define it to undefine it like the other domains when it stops
+            Domain domain = connect.domainLookupByName(config.getDomainName());
+            return connect.domainDefineXML(domain.getXMLDesc(0));
+        } catch (LibvirtException e) {
+            LOGGER.warn("unable to restore domain " + config.getDomainName() + ", booting a new one", e);
+            return null;
+        } finally {
+            // the disk of the domain changes once it runs again, so a state can only be restored once
+            if (!stateFile.delete()) {
+                LOGGER.warn("unable to delete saved state {}", stateFile);
+            }
+        }
+    }
+
     @Nonnull
     private Entry getEntry(Connect connect, DomainConfig config) throws LibvirtException, DomainException {
         boolean undefinedDomainName = ConfigUtils.isBlank(config.getDomainName());
         Entry entry;
-        synchronized (getLock(connect.getHostName())) {
-            if (undefinedDomainName) {
-                // automatically define the domain name
-                // it must be unique for the connection
-                entry = domainCache.findFreeEntry(connect);
-                if (entry == null) {
-                    throw new DomainException("No free Entry found for a new domain");
-                }
-            } else {
-                entry = domainCache.findEntry(connect, config.getDomainName());
-                if (entry == null) {
-                    throw new DomainException(format("No Entry found for a domain named %s", config.getDomainName()));
-                }
+        if (undefinedDomainName) {
+            // automatically define the domain name
+            // it must be unique for the connection
+            entry = domainCache.findFreeEntry(connect);
+            if (entry == null) {
+                throw new DomainException("No free Entry found for a new domain");
+            }
+        } else {
+            entry = domainCache.findEntry(connect, config.getDomainName());
+            if (entry == null) {
+                throw new DomainException(format("No Entry found for a domain named %s", config.getDomainName()));
             }
         }
         return entry;
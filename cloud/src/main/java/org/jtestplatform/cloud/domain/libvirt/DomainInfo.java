@@ -30,11 +30,17 @@ class DomainInfo {
     private final Domain domain;
     private final String macAddress;
     private final String ipAddress;
+    private final String diskOverlay;
 
     DomainInfo(Domain domain, String macAddress, String ipAddress) {
+        this(domain, macAddress, ipAddress, null);
+    }
+
+    DomainInfo(Domain domain, String macAddress, String ipAddress, String diskOverlay) {
         this.domain = domain;
         this.macAddress = macAddress;
         this.ipAddress = ipAddress;
+        this.diskOverlay = diskOverlay;
     }
 
     public Domain getDomain() {
@@ -48,4 +54,11 @@ class DomainInfo {
     public String getIpAddress() {
         return ipAddress;
     }
+
+    /**
+     * @return The path of the overlay of the domain's disk, or null if the domain runs directly on the disk.
+     */
+    public String getDiskOverlay() {
+        return diskOverlay;
+    }
 }
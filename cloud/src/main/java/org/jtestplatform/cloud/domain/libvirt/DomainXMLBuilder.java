@@ -39,14 +39,21 @@ class DomainXMLBuilder {
     static final char END_TAG = BEGIN_TAG;
 
     String build(DomainConfig config, String macAddress, String networkName) {
+        return build(config, macAddress, networkName, null);
+    }
+
+    /**
+     * @param diskOverlay The path of the qcow2 overlay used instead of the disk of the platform, or null.
+     */
+    String build(DomainConfig config, String macAddress, String networkName, String diskOverlay) {
         ST template;
         try {
             template = new ST(readResource("domain_template.xml"), BEGIN_TAG, END_TAG);
 
-            template
-                .add("cdromDrive", renderTemplate(config, config.getPlatform().getCdrom() != null, "domain_cdrom.xml"));
-            template
-                .add("diskDrive", renderTemplate(config, config.getPlatform().getDisk() != null, "domain_disk.xml"));
+            template.add("cdromDrive", renderTemplate(config, config.getPlatform().getCdrom() != null,
+                                                      "domain_cdrom.xml", null));
+            template.add("diskDrive", renderTemplate(config, config.getPlatform().getDisk() != null,
+                                                     "domain_disk.xml", diskOverlay));
         } catch (DomainException e) {
             throw new RuntimeException(e);
         }
@@ -61,12 +68,13 @@ class DomainXMLBuilder {
         return template.render();
     }
 
-    private String renderTemplate(DomainConfig config, boolean condition, String templateRessource)
-        throws DomainException {
+    private String renderTemplate(DomainConfig config, boolean condition, String templateRessource,
+                                  String diskOverlay) throws DomainException {
         String value = "";
         if (condition) {
             ST template = new ST(readResource(templateRessource), BEGIN_TAG, END_TAG);
             template.add("config", config);
+            template.add("diskOverlay", diskOverlay);
             value = template.render();
         }
         return value;
@@ -38,6 +38,7 @@ import org.libvirt.DomainInfo;
 import org.libvirt.DomainInfo.DomainState;
 import org.libvirt.LibvirtException;
 
+import java.io.File;
 import java.util.concurrent.TimeoutException;
 
 import static com.google.code.tempusfugit.temporal.Duration.minutes;
@@ -172,13 +173,22 @@ class LibVirtDomain implements Domain {
     private void stopDomain() throws DomainException {
         Timeout timeout = timeout(minutes(1));
         Sleeper sleeper = new ThreadSleep(seconds(1));
+        File stateFile = DomainBuilder.getStateFile(config.getPlatform(), config.getDomainName());
         try {
-            domain.getDomain().destroy();
+            if (stateFile == null) {
+                domain.getDomain().destroy();
+            } else {
+                // the saved state and the disk overlay are kept to restore the domain instead of booting a new one
+                domain.getDomain().save(stateFile.getAbsolutePath());
+            }
 
             waitOrTimeout(domainStateIs(VIR_DOMAIN_SHUTOFF), timeout, sleeper);
 
             domain.getDomain().undefine();
             domain.getDomain().free();
+            if ((stateFile == null) && (domain.getDiskOverlay() != null)) {
+                deleteDiskOverlay(domain.getDiskOverlay());
+            }
             closeConnection();
         } catch (LibvirtException e) {
             throw new DomainException(e);
@@ -191,6 +201,16 @@ class LibVirtDomain implements Domain {
         ipAddress = null;
     }
 
+    private void deleteDiskOverlay(final String diskOverlay) throws DomainException {
+        factory.execute(connection, new Command<Void>() {
+            @Override
+            public Void execute(Connect connect) throws Exception {
+                domainBuilder.deleteDiskOverlay(connect, diskOverlay);
+                return null;
+            }
+        });
+    }
+
     private Condition domainStateIs(final DomainState domainState) {
         return new Condition() {
             @Override
@@ -105,6 +105,7 @@ public class LibVirtDomainFactory implements DomainFactory<LibVirtDomain> {
      * {@inheritDoc}
      */
     public LibVirtDomain createDomain(DomainConfig config, Connection connection) throws DomainException {
+        DomainBuilder.checkStateDirectory(config.getPlatform(), connection);
         if (!support(config.getPlatform(), connection)) {
             throw new DomainException("Unsupported platform :\n" + config.getPlatform()
                                       + "\n. You should call support(Platform, Connection) before.");
@@ -0,0 +1,64 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.cloud.domain.loadbalancing;
+
+import java.util.List;
+
+/**
+ * Selects the element with the fewest requests in flight. Ties are broken in turn, so that elements with the same
+ * load are selected like with a {@link RoundRobinStrategy}.
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ * @param <T>
+ */
+public class LeastOutstandingRequestsStrategy<T> implements LoadBalancingStrategy<T> {
+    public static final String NAME = "leastOutstandingRequests";
+
+    private int nextElement = 0;
+
+    @Override
+    public int select(List<T> elements, int[] inFlight) {
+        int size = elements.size();
+        int start = nextElement % size;
+        int selected = start;
+        double minLoad = getLoad(elements.get(start), inFlight[start]);
+        for (int i = 1; i < size; i++) {
+            int index = (start + i) % size;
+            double load = getLoad(elements.get(index), inFlight[index]);
+            if (load < minLoad) {
+                minLoad = load;
+                selected = index;
+            }
+        }
+        nextElement = selected + 1;
+        return selected;
+    }
+
+    /**
+     * @param element An element.
+     * @param inFlight The number of requests in flight for that element.
+     * @return The load of the element, the lower the better.
+     */
+    protected double getLoad(T element, int inFlight) {
+        return inFlight;
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.cloud.domain.loadbalancing;
+
+import java.util.List;
+
+/**
+ * Selects the element of a {@link org.jtestplatform.cloud.domain.LoadBalancer} that will receive the next request.
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ * @param <T>
+ */
+public interface LoadBalancingStrategy<T> {
+    /**
+     * Selects an element. It's called with the lock of the load balancer held, so it doesn't need to be thread safe.
+     * @param elements The elements. It's never empty.
+     * @param inFlight The number of requests in flight for each element, with the same indices as the elements.
+     * @return The index of the selected element.
+     */
+    int select(List<T> elements, int[] inFlight);
+}
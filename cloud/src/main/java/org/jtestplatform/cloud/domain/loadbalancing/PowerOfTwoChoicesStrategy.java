@@ -0,0 +1,62 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.cloud.domain.loadbalancing;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Selects two elements at random and keeps the one with the fewest requests in flight. Unlike
+ * {@link LeastOutstandingRequestsStrategy}, it doesn't look at all the elements and it doesn't send all the requests to
+ * the element which has just become the least loaded.
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ * @param <T>
+ */
+public class PowerOfTwoChoicesStrategy<T> implements LoadBalancingStrategy<T> {
+    public static final String NAME = "powerOfTwoChoices";
+
+    private final Random random;
+
+    public PowerOfTwoChoicesStrategy() {
+        this(new Random());
+    }
+
+    PowerOfTwoChoicesStrategy(Random random) {
+        this.random = random;
+    }
+
+    @Override
+    public int select(List<T> elements, int[] inFlight) {
+        int size = elements.size();
+        if (size == 1) {
+            return 0;
+        }
+
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++; // the second choice must differ from the first one
+        }
+        return (inFlight[second] < inFlight[first]) ? second : first;
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.cloud.domain.loadbalancing;
+
+/**
+ * Selects the element with the fewest requests in flight relatively to its weight : an element with twice the weight
+ * of another one will receive twice as many requests.
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ * @param <T>
+ */
+public abstract class WeightedStrategy<T> extends LeastOutstandingRequestsStrategy<T> {
+    public static final String NAME = "weighted";
+
+    @Override
+    protected final double getLoad(T element, int inFlight) {
+        return (inFlight + 1) / Math.max(getWeight(element), Double.MIN_VALUE);
+    }
+
+    /**
+     * @param element An element.
+     * @return The weight of the element, which must be positive.
+     */
+    protected abstract double getWeight(T element);
+}
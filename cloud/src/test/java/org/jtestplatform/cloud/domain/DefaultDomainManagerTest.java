@@ -24,6 +24,8 @@ package org.jtestplatform.cloud.domain;
 import org.dom4j.DocumentException;
 import org.jtestplatform.cloud.configuration.*;
 import org.jtestplatform.cloud.configuration.io.dom4j.ConfigurationDom4jReader;
+import org.jtestplatform.cloud.domain.loadbalancing.WeightedStrategy;
+import org.jtestplatform.common.transport.TCPTransport;
 import org.jtestplatform.common.transport.Transport;
 import org.jtestplatform.common.transport.TransportException;
 import org.jtestplatform.common.transport.UDPTransport;
@@ -39,13 +41,20 @@ import java.net.InetAddress;
 import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.jtestplatform.cloud.domain.Utils.FixedState.ALWAYS_ALIVE;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
 
 /**
  * @author Fabien DUMINY (fduminy at jnode dot org)
@@ -67,6 +76,8 @@ public class DefaultDomainManagerTest {
         assertThat(config).isNotNull();
         assertThat(config.getWatchDogPollInterval()).isEqualTo(30000);
         assertThat(config.getTimeout()).isEqualTo(12345);
+        assertThat(config.getRunTimeout()).isEqualTo(3600000);
+        assertThat(config.getLoadBalancing()).isEqualTo(WeightedStrategy.NAME);
 
         assertThat(config.getPlatforms()).hasSize(1);
         Platform platform = config.getPlatforms().get(0);
@@ -78,6 +89,8 @@ public class DefaultDomainManagerTest {
 
         assertThat(config.getDomains()).isNotNull();
         assertThat(config.getDomains().getMax()).isEqualTo(2);
+        assertThat(config.getDomains().getWarmPool()).isEqualTo(1);
+        assertThat(config.getDomains().getMinIdle()).isEqualTo(1);
         assertThat(config.getDomains().getFactories()).hasSize(1);
 
         Factory factory = config.getDomains().getFactories().get(0);
@@ -86,6 +99,8 @@ public class DefaultDomainManagerTest {
         assertThat(factory.getConnections()).hasSize(1);
         assertThat(factory.getConnections().get(0)).isNotNull();
         assertThat(factory.getConnections().get(0).getUri()).isEqualTo("qemu:///system");
+        assertThat(factory.getConnections().get(0).getMaxCreations()).isEqualTo(2);
+        assertThat(factory.getConnections().get(0).getWeight()).isEqualTo(2);
     }
 
     @Test
@@ -159,6 +174,94 @@ public class DefaultDomainManagerTest {
         assertThat(transport).isExactlyInstanceOf(UDPTransport.class);
     }
 
+    @Test
+    public void testCreateTCPTransport() throws Exception {
+        Configuration config = createConfiguration();
+        config.setTransport(TCPTransport.PROTOCOL);
+        DefaultDomainManager domainManager = createDomainManager(config, true, null);
+
+        Transport transport = domainManager.createTransport(InetAddress.getLocalHost(), 1234, -1);
+
+        assertThat(transport).isExactlyInstanceOf(TCPTransport.class);
+    }
+
+    @Test
+    public void testConstructor_withUnknownTransport() throws ConfigurationException {
+        thrown.expect(ConfigurationException.class);
+        thrown.expectMessage("Unknown transport : aWrongTransport");
+
+        Configuration config = createConfiguration();
+        config.setTransport("aWrongTransport");
+
+        createDomainManager(config, true, null);
+    }
+
+    @Test
+    public void testConstructor_withUnknownLoadBalancing() throws ConfigurationException {
+        thrown.expect(ConfigurationException.class);
+        thrown.expectMessage("Unknown load balancing strategy : aWrongStrategy");
+
+        Configuration config = createConfiguration();
+        config.setLoadBalancing("aWrongStrategy");
+
+        createDomainManager(config, true, null);
+    }
+
+    @Test
+    public void testGetMaxNumberOfDomains() throws Exception {
+        Configuration config = createConfiguration();
+        config.getDomains().setMax(3);
+        DomainManager domainManager = createDomainManager(config, true, null);
+
+        int maxNumberOfDomains = domainManager.getMaxNumberOfDomains();
+
+        assertThat(maxNumberOfDomains).isEqualTo(3);
+    }
+
+    @Test
+    public void testGetRunTimeout() throws Exception {
+        Configuration config = createConfiguration();
+        config.setRunTimeout(1234);
+        DomainManager domainManager = createDomainManager(config, true, null);
+
+        int runTimeout = domainManager.getRunTimeout();
+
+        assertThat(runTimeout).isEqualTo(1234);
+    }
+
+    @Test
+    public void testGetBatchSize() throws Exception {
+        Configuration config = createConfiguration();
+        config.setBatchSize(16);
+        DomainManager domainManager = createDomainManager(config, true, null);
+
+        int batchSize = domainManager.getBatchSize();
+
+        assertThat(batchSize).isEqualTo(16);
+    }
+
+    @Test
+    public void testGetBatchLatency() throws Exception {
+        Configuration config = createConfiguration();
+        config.setBatchLatency(250);
+        DomainManager domainManager = createDomainManager(config, true, null);
+
+        int batchLatency = domainManager.getBatchLatency();
+
+        assertThat(batchLatency).isEqualTo(250);
+    }
+
+    @Test
+    public void testGetMaxInFlightRequests() throws Exception {
+        Configuration config = createConfiguration();
+        config.setMaxInFlightRequests(8);
+        DomainManager domainManager = createDomainManager(config, true, null);
+
+        int maxInFlightRequests = domainManager.getMaxInFlightRequests();
+
+        assertThat(maxInFlightRequests).isEqualTo(8);
+    }
+
     @Test
     public void testGetTransport_noTimeout() throws Exception {
         testGetTransport(0);
@@ -188,6 +291,310 @@ public class DefaultDomainManagerTest {
         assertThat(transport.getPort()).as("port").isEqualTo(configuration.getServerPort());
     }
 
+    @Test
+    public void testGetTransport_reusedForADomain() throws Exception {
+        // prepare
+        List<DatagramSocket> sockets = new ArrayList<DatagramSocket>();
+        Configuration configuration = createConfiguration();
+        configuration.getDomains().setMax(1);
+        DomainManager domainManager = createDomainManager(configuration, new CustomDomainFactory(), sockets);
+
+        // test
+        Transport transport1 = domainManager.get(new Platform());
+        Transport transport2 = domainManager.get(new Platform());
+
+        // verify
+        assertThat(transport2).as("transport2").isSameAs(transport1);
+        assertThat(sockets).hasSize(1);
+    }
+
+    @Test
+    public void testRelease() throws Exception {
+        // prepare
+        List<DatagramSocket> sockets = new ArrayList<DatagramSocket>();
+        Configuration configuration = createConfiguration();
+        configuration.getDomains().setMax(2);
+        DomainManager domainManager = createDomainManager(configuration, new CustomDomainFactory(), sockets);
+        Transport transport1 = domainManager.get(new Platform());
+        Transport transport2 = getOtherTransport(domainManager, new Platform(), transport1);
+
+        // test
+        domainManager.release(transport2);
+
+        // verify
+        assertThat(domainManager.get(new Platform())).as("transport without request in flight")
+                                                     .isSameAs(transport2);
+    }
+
+    @Test
+    public void testGetTransport_doesNotWaitForADomainCreation() throws Exception {
+        // prepare
+        List<DatagramSocket> sockets = new ArrayList<DatagramSocket>();
+        Configuration configuration = createConfiguration();
+        configuration.getDomains().setMax(2);
+        final CountDownLatch secondDomainCreation = new CountDownLatch(1);
+        CustomDomainFactory factory = new CustomDomainFactory() {
+            @Override
+            public Domain createDomain(DomainConfig config, Connection connection) throws DomainException {
+                if (!domains.isEmpty()) {
+                    try {
+                        secondDomainCreation.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new DomainException(e);
+                    }
+                }
+                return super.createDomain(config, connection);
+            }
+        };
+        DomainManager domainManager = createDomainManager(configuration, factory, sockets);
+        Transport transport1 = domainManager.get(new Platform());
+
+        // test
+        Transport transport2 = domainManager.get(new Platform());
+
+        // verify
+        assertThat(transport2).as("transport2").isSameAs(transport1);
+        secondDomainCreation.countDown();
+        getOtherTransport(domainManager, new Platform(), transport1);
+        assertThat(factory.domains).hasSize(2);
+    }
+
+    @Test
+    public void testGetConnectionWeight() {
+        Connection connection = new Connection();
+        connection.setWeight(3);
+
+        double weight = DefaultDomainManager.getConnectionWeight(connection);
+
+        assertThat(weight).isEqualTo(3d);
+    }
+
+    @Test
+    public void testGetConnectionWeight_notPositive() {
+        Connection connection = new Connection();
+        connection.setWeight(0);
+
+        double weight = DefaultDomainManager.getConnectionWeight(connection);
+
+        assertThat(weight).isEqualTo(1d);
+    }
+
+    @Test
+    public void testGetTransport_domainOfThePlatform() throws Exception {
+        // prepare
+        List<DatagramSocket> sockets = new ArrayList<DatagramSocket>();
+        Configuration configuration = createConfiguration();
+        configuration.getDomains().setMax(2);
+        CustomDomainFactory factory = new CustomDomainFactory();
+        DomainManager domainManager = createDomainManager(configuration, factory, sockets);
+        Platform platform1 = createPlatform("cpu1");
+        Platform platform2 = createPlatform("cpu2");
+
+        // test
+        Transport transport1 = domainManager.get(platform1);
+        Transport transport2 = domainManager.get(platform2);
+        Transport transport3 = domainManager.get(platform1);
+
+        // verify
+        assertThat(transport2).as("transport of platform2").isNotSameAs(transport1);
+        assertThat(transport3).as("transport of platform1").isSameAs(transport1);
+        assertThat(factory.domains).hasSize(2);
+    }
+
+    @Test
+    public void testGetTransport_maxDomainsOfThePlatform() throws Exception {
+        // prepare
+        List<DatagramSocket> sockets = new ArrayList<DatagramSocket>();
+        Configuration configuration = createConfiguration();
+        configuration.getDomains().setMax(3);
+        CustomDomainFactory factory = new CustomDomainFactory();
+        DomainManager domainManager = createDomainManager(configuration, factory, sockets);
+        Platform platform = createPlatform("cpu1");
+        platform.setMaxDomains(1);
+
+        // test
+        Transport transport1 = domainManager.get(platform);
+        Transport transport2 = domainManager.get(platform);
+
+        // verify
+        assertThat(transport2).as("transport2").isSameAs(transport1);
+        assertThat(factory.domains).hasSize(1);
+    }
+
+    @Test
+    public void testGetTransport_stopsAnIdleDomainOfAnotherPlatform() throws Exception {
+        // prepare
+        List<DatagramSocket> sockets = new ArrayList<DatagramSocket>();
+        Configuration configuration = createConfiguration();
+        configuration.getDomains().setMax(1);
+        CustomDomainFactory factory = new CustomDomainFactory();
+        DomainManager domainManager = createDomainManager(configuration, factory, sockets);
+        Transport transport1 = domainManager.get(createPlatform("cpu1"));
+        domainManager.release(transport1);
+
+        // test
+        Transport transport2 = domainManager.get(createPlatform("cpu2"));
+
+        // verify
+        assertThat(transport2).as("transport2").isNotSameAs(transport1);
+        assertThat(factory.domains).hasSize(2);
+        verify(factory.domains.get(0), timeout(1000)).stop();
+        assertThat(sockets.get(0).isClosed()).as("socket of stopped domain closed").isTrue();
+    }
+
+    @Test
+    public void testDomainDied() throws Exception {
+        // prepare
+        List<DatagramSocket> sockets = new ArrayList<DatagramSocket>();
+        Configuration configuration = createConfiguration();
+        configuration.getDomains().setMax(1);
+        CustomDomainFactory factory = new CustomDomainFactory();
+        DefaultDomainManager domainManager = createDomainManager(configuration, factory, sockets);
+        Transport transport1 = domainManager.get(new Platform());
+
+        // test
+        domainManager.domainDied(factory.domains.get(0));
+
+        // verify
+        assertThat(sockets.get(0).isClosed()).as("socket of dead domain closed").isTrue();
+        Transport transport2 = domainManager.get(new Platform());
+        assertThat(transport2).as("transport2").isNotSameAs(transport1);
+        assertThat(factory.domains).hasSize(2);
+        assertThat(sockets).hasSize(2);
+    }
+
+    @Test
+    public void testStart_warmPool() throws Exception {
+        // prepare
+        Configuration configuration = createConfiguration();
+        configuration.getDomains().setMax(2);
+        configuration.getDomains().setWarmPool(3);
+        Platform platform = createPlatform("cpu1");
+        configuration.addPlatform(platform);
+        CustomDomainFactory factory = new CustomDomainFactory();
+        DomainManager domainManager = createDomainManager(configuration, factory, new ArrayList<DatagramSocket>());
+
+        // test
+        domainManager.start();
+
+        // verify
+        waitForDomains(factory, 2);
+        Transport transport1 = domainManager.get(platform);
+        Transport transport2 = domainManager.get(platform);
+        assertThat(transport2).as("transport2").isNotSameAs(transport1);
+    }
+
+    @Test
+    public void testStart_maxCreationsOfTheConnection() throws Exception {
+        // prepare
+        Configuration configuration = createConfiguration();
+        configuration.getDomains().setMax(3);
+        configuration.getDomains().setWarmPool(3);
+        configuration.getDomains().getFactories().get(0).getConnections().get(0).setMaxCreations(1);
+        configuration.addPlatform(createPlatform("cpu1"));
+        final AtomicInteger nbCreations = new AtomicInteger(0);
+        final AtomicInteger maxNbCreations = new AtomicInteger(0);
+        CustomDomainFactory factory = new CustomDomainFactory() {
+            @Override
+            public Domain createDomain(DomainConfig config, Connection connection) throws DomainException {
+                int nb = nbCreations.incrementAndGet();
+                maxNbCreations.set(Math.max(maxNbCreations.get(), nb));
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    throw new DomainException(e);
+                } finally {
+                    nbCreations.decrementAndGet();
+                }
+                return super.createDomain(config, connection);
+            }
+        };
+        DomainManager domainManager = createDomainManager(configuration, factory, new ArrayList<DatagramSocket>());
+
+        // test
+        domainManager.start();
+
+        // verify
+        waitForDomains(factory, 3);
+        assertThat(maxNbCreations.get()).as("maximum number of concurrent creations").isEqualTo(1);
+    }
+
+    @Test
+    public void testDomainDied_minIdle() throws Exception {
+        // prepare
+        Configuration configuration = createConfiguration();
+        configuration.getDomains().setMax(1);
+        configuration.getDomains().setMinIdle(1);
+        Platform platform = createPlatform("cpu1");
+        configuration.addPlatform(platform);
+        CustomDomainFactory factory = new CustomDomainFactory();
+        List<DatagramSocket> sockets = new ArrayList<DatagramSocket>();
+        DefaultDomainManager domainManager = createDomainManager(configuration, factory, sockets);
+        domainManager.start();
+        waitForDomains(factory, 1);
+        domainManager.get(platform);
+
+        // test
+        domainManager.domainDied(factory.domains.get(0));
+
+        // verify
+        waitForDomains(factory, 2);
+    }
+
+    @Test
+    public void testStop_closesTransports() throws Exception {
+        // prepare
+        List<DatagramSocket> sockets = new ArrayList<DatagramSocket>();
+        DomainManager domainManager = createDomainManager(createConfiguration(), new CustomDomainFactory(), sockets);
+        domainManager.get(new Platform());
+
+        // test
+        domainManager.stop();
+
+        // verify
+        assertThat(sockets).hasSize(1);
+        assertThat(sockets.get(0).isClosed()).as("socket closed").isTrue();
+    }
+
+    @Test
+    public void testGet_afterStop() throws Exception {
+        // prepare
+        DomainManager domainManager = createDomainManager(createConfiguration(), new CustomDomainFactory(), null);
+        domainManager.get(new Platform());
+        domainManager.stop();
+        thrown.expect(TransportException.class);
+        thrown.expectMessage("the domain manager has been stopped");
+
+        // test
+        domainManager.get(new Platform());
+    }
+
+    private static void waitForDomains(CustomDomainFactory factory, int nbDomains) throws InterruptedException {
+        for (int i = 0; (i < 100) && (factory.domains.size() < nbDomains); i++) {
+            Thread.sleep(10);
+        }
+        assertThat(factory.domains).hasSize(nbDomains);
+    }
+
+    private static Transport getOtherTransport(DomainManager domainManager, Platform platform, Transport transport)
+        throws Exception {
+        for (int i = 0; i < 100; i++) {
+            Transport otherTransport = domainManager.get(platform);
+            if (otherTransport != transport) {
+                return otherTransport;
+            }
+            Thread.sleep(10);
+        }
+        fail("no other transport");
+        return null;
+    }
+
+    private static Platform createPlatform(String cpu) {
+        Platform platform = new Platform();
+        platform.setCpu(cpu);
+        return platform;
+    }
+
     private Configuration createConfiguration() {
         Connection connection = new Connection();
         connection.setUri("anURI");
@@ -206,9 +613,14 @@ public class DefaultDomainManagerTest {
 
     private DefaultDomainManager createDomainManager(final Configuration config, boolean withKnownFactories,
                                                      final List<DatagramSocket> sockets) throws ConfigurationException {
+        return createDomainManager(config, withKnownFactories ? new CustomDomainFactory() : null, sockets);
+    }
+
+    private DefaultDomainManager createDomainManager(final Configuration config, CustomDomainFactory factory,
+                                                     final List<DatagramSocket> sockets) throws ConfigurationException {
         final Map<String, DomainFactory<? extends Domain>> knownFactories = new HashMap<String, DomainFactory<? extends Domain>>();
-        if (withKnownFactories) {
-            knownFactories.put(CustomDomainFactory.TYPE, new CustomDomainFactory());
+        if (factory != null) {
+            knownFactories.put(CustomDomainFactory.TYPE, factory);
         }
 
         return new DefaultDomainManager(null) {
@@ -243,6 +655,8 @@ public class DefaultDomainManagerTest {
     private static class CustomDomainFactory implements DomainFactory<Domain> {
         private static final String TYPE = "test";
 
+        protected final List<Domain> domains = Collections.synchronizedList(new ArrayList<Domain>());
+
         @Override
         public String getType() {
             return TYPE;
@@ -252,7 +666,9 @@ public class DefaultDomainManagerTest {
         public Domain createDomain(DomainConfig config, Connection connection)
             throws DomainException {
             try {
-                return Utils.createFixedStateDomain(ALWAYS_ALIVE, InetAddress.getLocalHost().getHostName());
+                Domain domain = Utils.createFixedStateDomain(ALWAYS_ALIVE, InetAddress.getLocalHost().getHostName());
+                domains.add(domain);
+                return domain;
             } catch (UnknownHostException e) {
                 throw new DomainException(e);
             }
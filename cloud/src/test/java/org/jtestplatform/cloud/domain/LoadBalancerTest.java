@@ -25,6 +25,7 @@
 package org.jtestplatform.cloud.domain;
 
 import com.google.code.tempusfugit.condition.Conditions;
+import org.jtestplatform.cloud.domain.loadbalancing.LeastOutstandingRequestsStrategy;
 import org.junit.Test;
 import org.junit.experimental.theories.DataPoint;
 import org.junit.experimental.theories.Theories;
@@ -141,6 +142,97 @@ public class LoadBalancerTest {
         assertThat(loadBalancer.getNext()).isSameAs(TWO_ELEMENTS[1]);
     }
 
+    @Test
+    public void testTryGetNext_emptyList() {
+        // prepare
+        LoadBalancer<String> loadBalancer = new LoadBalancer<String>();
+
+        // test
+        String next = loadBalancer.tryGetNext();
+
+        // verify
+        assertThat(next).isNull();
+    }
+
+    @Test
+    public void testTryGetNext_nonEmptyList() {
+        // prepare
+        LoadBalancer<String> loadBalancer = new LoadBalancer<String>(Arrays.asList(TWO_ELEMENTS),
+                                                                     new LeastOutstandingRequestsStrategy<String>());
+
+        // test
+        String first = loadBalancer.tryGetNext();
+        String second = loadBalancer.tryGetNext();
+
+        // verify
+        assertThat(first).isSameAs(TWO_ELEMENTS[0]);
+        assertThat(second).as("first element has a request in flight").isSameAs(TWO_ELEMENTS[1]);
+        assertThat(loadBalancer.getNumberOfIdle()).isZero();
+    }
+
+    @Test
+    public void testGetNext_leastOutstandingRequests() {
+        // prepare
+        LoadBalancer<String> loadBalancer = new LoadBalancer<String>(Arrays.asList(TWO_ELEMENTS),
+                                                                     new LeastOutstandingRequestsStrategy<String>());
+        String first = loadBalancer.getNext();
+        String second = loadBalancer.getNext();
+        loadBalancer.release(second);
+
+        // test
+        String next = loadBalancer.getNext();
+
+        // verify
+        assertThat(first).isSameAs(TWO_ELEMENTS[0]);
+        assertThat(second).isSameAs(TWO_ELEMENTS[1]);
+        assertThat(next).as("element without request in flight").isSameAs(TWO_ELEMENTS[1]);
+    }
+
+    @Test
+    public void testRelease_unknownElement() {
+        // prepare
+        LoadBalancer<String> loadBalancer = new LoadBalancer<String>(Arrays.asList(TWO_ELEMENTS),
+                                                                     new LeastOutstandingRequestsStrategy<String>());
+        loadBalancer.getNext();
+
+        // test
+        loadBalancer.release("unknown");
+
+        // verify
+        assertThat(loadBalancer.getNext()).as("element without request in flight").isSameAs(TWO_ELEMENTS[1]);
+    }
+
+    @Test
+    public void testRemoveIdle() {
+        // prepare
+        LoadBalancer<String> loadBalancer = new LoadBalancer<String>(Arrays.asList(TWO_ELEMENTS));
+        loadBalancer.getNext();
+
+        // test
+        String idle = loadBalancer.removeIdle();
+        String none = loadBalancer.removeIdle();
+
+        // verify
+        assertThat(idle).isSameAs(TWO_ELEMENTS[1]);
+        assertThat(none).as("element with a request in flight").isNull();
+        assertThat(loadBalancer.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testGetNumberOfIdle() {
+        // prepare
+        LoadBalancer<String> loadBalancer = new LoadBalancer<String>(Arrays.asList(TWO_ELEMENTS));
+        String element = loadBalancer.getNext();
+        int nbIdleWithRequest = loadBalancer.getNumberOfIdle();
+
+        // test
+        loadBalancer.release(element);
+
+        // verify
+        assertThat(nbIdleWithRequest).as("number of idle elements with a request in flight").isEqualTo(1);
+        assertThat(loadBalancer.getNumberOfIdle()).isEqualTo(2);
+    }
+
     @Test
     public void testRemove_lastElement() {
         String firstElement = "firstElement";
@@ -0,0 +1,155 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.cloud.domain.libvirt;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.libvirt.Connect;
+import org.libvirt.StoragePool;
+import org.libvirt.StorageVol;
+import org.libvirt.StorageVolInfo;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+public class DiskOverlayBuilderTest {
+    private static final String DISK = "/images/disk.img";
+    private static final long CAPACITY = 1024L;
+    private static final String DOMAIN_NAME = "domain5";
+    private static final String OVERLAY_NAME = DOMAIN_NAME + ".qcow2";
+    private static final String OVERLAY_PATH = "/images/" + OVERLAY_NAME;
+
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock private Connect connect;
+    @Mock private StoragePool pool;
+    @Mock private StorageVol diskVolume;
+    @Mock private StorageVolInfo diskInfo;
+    @Mock private StorageVol overlay;
+
+    @Before
+    public void setUp() throws Exception {
+        diskInfo.capacity = CAPACITY;
+        when(connect.storageVolLookupByPath(DISK)).thenReturn(diskVolume);
+        when(connect.storageVolLookupByPath(OVERLAY_PATH)).thenReturn(overlay);
+        when(diskVolume.storagePoolLookupByVolume()).thenReturn(pool);
+        when(diskVolume.getPath()).thenReturn(DISK);
+        when(diskVolume.getInfo()).thenReturn(diskInfo);
+        when(diskVolume.getXMLDesc(0)).thenReturn("<volume><target><format type='raw'/></target></volume>");
+        when(pool.listVolumes()).thenReturn(new String[] { "disk.img" });
+        when(pool.storageVolCreateXML(anyString(), eq(0))).thenReturn(overlay);
+        when(pool.storageVolLookupByName(OVERLAY_NAME)).thenReturn(overlay);
+        when(overlay.getPath()).thenReturn(OVERLAY_PATH);
+    }
+
+    @Test
+    public void build() throws Exception {
+        // test
+        String overlayPath = new DiskOverlayBuilder().build(connect, DISK, DOMAIN_NAME);
+
+        // verify
+        assertThat(overlayPath).isEqualTo(OVERLAY_PATH);
+        ArgumentCaptor<String> xml = ArgumentCaptor.forClass(String.class);
+        verify(pool).storageVolCreateXML(xml.capture(), eq(0));
+        assertThat(xml.getValue()).contains("<name>" + OVERLAY_NAME + "</name>",
+                                            "<capacity>" + CAPACITY + "</capacity>", "<format type='qcow2'/>",
+                                            "<backingStore><path>" + DISK + "</path><format type='raw'/>");
+        verify(overlay, never()).delete(0);
+    }
+
+    @Test
+    public void build_qcow2Disk() throws Exception {
+        // prepare
+        when(diskVolume.getXMLDesc(0)).thenReturn("<volume><target><format type='qcow2'/></target>"
+                                                  + "<backingStore><format type='raw'/></backingStore></volume>");
+
+        // test
+        new DiskOverlayBuilder().build(connect, DISK, DOMAIN_NAME);
+
+        // verify
+        ArgumentCaptor<String> xml = ArgumentCaptor.forClass(String.class);
+        verify(pool).storageVolCreateXML(xml.capture(), eq(0));
+        assertThat(xml.getValue()).contains("<backingStore><path>" + DISK + "</path><format type='qcow2'/>");
+    }
+
+    @Test
+    public void build_existingOverlay() throws Exception {
+        // prepare
+        when(pool.listVolumes()).thenReturn(new String[] { "disk.img", OVERLAY_NAME });
+
+        // test
+        String overlayPath = new DiskOverlayBuilder().build(connect, DISK, DOMAIN_NAME);
+
+        // verify
+        assertThat(overlayPath).isEqualTo(OVERLAY_PATH);
+        InOrder inOrder = inOrder(overlay, pool);
+        inOrder.verify(overlay).delete(0);
+        inOrder.verify(pool).storageVolCreateXML(anyString(), eq(0));
+    }
+
+    @Test
+    public void find() throws Exception {
+        // prepare
+        when(pool.listVolumes()).thenReturn(new String[] { "disk.img", OVERLAY_NAME });
+
+        // test
+        String overlayPath = new DiskOverlayBuilder().find(connect, DISK, DOMAIN_NAME);
+
+        // verify
+        assertThat(overlayPath).isEqualTo(OVERLAY_PATH);
+    }
+
+    @Test
+    public void find_noOverlay() throws Exception {
+        // test
+        String overlayPath = new DiskOverlayBuilder().find(connect, DISK, DOMAIN_NAME);
+
+        // verify
+        assertThat(overlayPath).isNull();
+    }
+
+    @Test
+    public void delete() throws Exception {
+        // test
+        new DiskOverlayBuilder().delete(connect, OVERLAY_PATH);
+
+        // verify
+        InOrder inOrder = inOrder(overlay);
+        inOrder.verify(overlay).delete(0);
+        inOrder.verify(overlay).free();
+    }
+}
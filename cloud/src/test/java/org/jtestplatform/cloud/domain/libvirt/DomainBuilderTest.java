@@ -22,21 +22,29 @@
 package org.jtestplatform.cloud.domain.libvirt;
 
 import org.assertj.core.api.JUnitSoftAssertions;
+import org.jtestplatform.cloud.configuration.Connection;
+import org.jtestplatform.cloud.configuration.Platform;
 import org.jtestplatform.cloud.domain.DomainConfig;
 import org.jtestplatform.cloud.domain.DomainException;
 import org.jtestplatform.cloud.domain.libvirt.DomainCache.Entry;
 import org.junit.Before;
 import org.junit.Rule;
+import org.junit.Test;
 import org.junit.experimental.theories.Theories;
 import org.junit.experimental.theories.Theory;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.libvirt.Connect;
 import org.libvirt.Domain;
 import org.mockito.Mock;
 
+import java.io.File;
+
 import static java.lang.Integer.toHexString;
 import static java.lang.String.format;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -51,6 +59,8 @@ public class DomainBuilderTest extends AbstractDomainTest {
     private static final String DOMAIN_XML = "domainXML";
     private static final String EXPECTED_DOMAIN_NAME = "domain5";
     private static final Entry EXPECTED_ENTRY = new Entry(EXPECTED_DOMAIN_NAME, MAC_ADDRESS, IP_ADDRESS);
+    private static final String DISK = "/images/disk.img";
+    private static final String DISK_OVERLAY = "/images/" + EXPECTED_DOMAIN_NAME + ".qcow2";
 
     @Rule
     public JUnitSoftAssertions soft = new JUnitSoftAssertions();
@@ -58,15 +68,22 @@ public class DomainBuilderTest extends AbstractDomainTest {
     @Rule
     public ExpectedException thrown = ExpectedException.none();
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Mock
     private DomainXMLBuilder domainXMLBuilder;
     @Mock
     private DomainCache domainCache;
     @Mock
+    private DiskOverlayBuilder diskOverlayBuilder;
+    @Mock
     private Connect connect;
     @Mock
     private Domain expectedDomain;
     @Mock
+    private Domain restoredDomain;
+    @Mock
     private NetworkConfig networkConfig;
 
     private DomainConfig domainConfig;
@@ -82,7 +99,7 @@ public class DomainBuilderTest extends AbstractDomainTest {
         when(connect.domainLookupByID(3)).thenReturn(domain3);
         when(connect.domainLookupByID(4)).thenReturn(domain4);
         when(networkConfig.getNetworkName()).thenReturn(NETWORK_NAME);
-        when(domainXMLBuilder.build(domainConfig, MAC_ADDRESS, NETWORK_NAME)).thenReturn(DOMAIN_XML);
+        when(domainXMLBuilder.build(domainConfig, MAC_ADDRESS, NETWORK_NAME, null)).thenReturn(DOMAIN_XML);
         when(connect.domainDefineXML(DOMAIN_XML)).thenReturn(expectedDomain);
     }
 
@@ -119,4 +136,88 @@ public class DomainBuilderTest extends AbstractDomainTest {
 
         new DomainBuilder(domainXMLBuilder, domainCache).defineDomain(connect, domainConfig, networkConfig);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void defineDomain_diskOverlay() throws Exception {
+        // prepare
+        domainConfig.setPlatform(createPlatform(null));
+        when(domainCache.findFreeEntry(connect)).thenReturn(EXPECTED_ENTRY);
+        when(diskOverlayBuilder.build(connect, DISK, EXPECTED_DOMAIN_NAME)).thenReturn(DISK_OVERLAY);
+        when(domainXMLBuilder.build(domainConfig, MAC_ADDRESS, NETWORK_NAME, DISK_OVERLAY)).thenReturn(DOMAIN_XML);
+        DomainBuilder builder = new DomainBuilder(domainXMLBuilder, domainCache, diskOverlayBuilder);
+
+        // test
+        DomainInfo domainInfo = builder.defineDomain(connect, domainConfig, networkConfig);
+
+        // verify
+        soft.assertThat(domainInfo.getDomain()).as("domainInfo.domain").isSameAs(expectedDomain);
+        soft.assertThat(domainInfo.getDiskOverlay()).as("domainInfo.diskOverlay").isEqualTo(DISK_OVERLAY);
+    }
+
+    @Test
+    public void defineDomain_restoreSavedState() throws Exception {
+        // prepare
+        File stateDirectory = folder.newFolder();
+        domainConfig.setPlatform(createPlatform(stateDirectory));
+        File stateFile = new File(stateDirectory, EXPECTED_DOMAIN_NAME + ".state");
+        stateFile.createNewFile();
+        when(domainCache.findFreeEntry(connect)).thenReturn(EXPECTED_ENTRY);
+        when(connect.domainLookupByName(EXPECTED_DOMAIN_NAME)).thenReturn(restoredDomain);
+        when(restoredDomain.getXMLDesc(0)).thenReturn(DOMAIN_XML);
+        when(diskOverlayBuilder.find(connect, DISK, EXPECTED_DOMAIN_NAME)).thenReturn(DISK_OVERLAY);
+        DomainBuilder builder = new DomainBuilder(domainXMLBuilder, domainCache, diskOverlayBuilder);
+
+        // test
+        DomainInfo domainInfo = builder.defineDomain(connect, domainConfig, networkConfig);
+
+        // verify
+        verify(connect).restore(stateFile.getAbsolutePath());
+        verify(diskOverlayBuilder, never()).build(connect, DISK, EXPECTED_DOMAIN_NAME);
+        soft.assertThat(domainInfo.getDomain()).as("domainInfo.domain").isSameAs(expectedDomain);
+        soft.assertThat(domainInfo.getDiskOverlay()).as("domainInfo.diskOverlay").isEqualTo(DISK_OVERLAY);
+        soft.assertThat(stateFile.exists()).as("state file exists").isFalse();
+    }
+
+    @Test
+    public void getStateFile_withoutDiskOverlay() throws Exception {
+        Platform platform = createPlatform(folder.getRoot());
+        platform.setDiskOverlay(false);
+
+        soft.assertThat(DomainBuilder.getStateFile(platform, EXPECTED_DOMAIN_NAME)).isNull();
+    }
+
+    @Test
+    public void checkStateDirectory_localConnection() throws Exception {
+        DomainBuilder.checkStateDirectory(createPlatform(folder.getRoot()), createConnection("qemu:///system"));
+    }
+
+    @Test
+    public void checkStateDirectory_remoteConnection() throws Exception {
+        thrown.expect(DomainException.class);
+        thrown.expectMessage("requires a local connection");
+
+        DomainBuilder.checkStateDirectory(createPlatform(folder.getRoot()),
+                                          createConnection("qemu+ssh://user@host/system"));
+    }
+
+    @Test
+    public void checkStateDirectory_remoteConnectionWithoutStateDirectory() throws Exception {
+        DomainBuilder.checkStateDirectory(createPlatform(null), createConnection("qemu+ssh://user@host/system"));
+    }
+
+    private static Connection createConnection(String uri) {
+        Connection connection = new Connection();
+        connection.setUri(uri);
+        return connection;
+    }
+
+    private static Platform createPlatform(File stateDirectory) {
+        Platform platform = new Platform();
+        platform.setDisk(DISK);
+        platform.setDiskOverlay(true);
+        if (stateDirectory != null) {
+            platform.setStateDirectory(stateDirectory.getAbsolutePath());
+        }
+        return platform;
+    }
+}
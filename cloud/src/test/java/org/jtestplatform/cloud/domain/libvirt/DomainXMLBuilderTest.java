@@ -29,6 +29,7 @@ import org.junit.experimental.theories.Theories;
 import org.junit.experimental.theories.Theory;
 import org.junit.runner.RunWith;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assume.assumeTrue;
 
 /**
@@ -52,6 +53,20 @@ public class DomainXMLBuilderTest extends AbstractXMLBuilderTest {
         build("domain2", nullCdrom ? null : "cdrom2", nullDisk ? null : "disk2", 56, 78, "56:78", "network2", 64);
     }
 
+    @Test
+    public void build_domain_diskOverlay() throws DomainException {
+        DomainConfig config = new DomainConfig();
+        Platform platform = new Platform();
+        platform.setDisk("disk1");
+        config.setPlatform(platform);
+        config.setDomainName("domain1");
+
+        String actualXML = new DomainXMLBuilder().build(config, "12:34", "network1", "overlay1");
+
+        assertXMLContains(actualXML, "domain1", "<driver name='qemu' type='qcow2'/>", "<source file='overlay1'/>");
+        assertThat(actualXML).doesNotContain("disk1");
+    }
+
     private void build(String domainName, String cdrom, String disk, long memory, int nbCores, String macAddress,
                        String networkName, int wordSize)
         throws DomainException {
@@ -22,6 +22,7 @@
 package org.jtestplatform.cloud.domain.libvirt;
 
 import org.jtestplatform.cloud.configuration.Connection;
+import org.jtestplatform.cloud.configuration.Platform;
 import org.jtestplatform.cloud.domain.DomainConfig;
 import org.jtestplatform.cloud.domain.DomainException;
 import org.junit.Before;
@@ -42,12 +43,17 @@ import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.io.File;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.jtestplatform.cloud.domain.libvirt.DomainBuilderTest.IP_ADDRESS;
 import static org.libvirt.DomainInfo.DomainState.VIR_DOMAIN_RUNNING;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mock;
 
@@ -59,6 +65,8 @@ import static org.powermock.api.mockito.PowerMockito.mock;
 @RunWith(PowerMockRunner.class)
 @PrepareForTest(LibVirtDomainFactory.class)
 public class LibVirtDomainTest {
+    private static final String DISK_OVERLAY = "/images/domain1.qcow2";
+
     @Rule
     public MockitoRule mockitoRule = MockitoJUnit.rule();
 
@@ -121,6 +129,57 @@ public class LibVirtDomainTest {
         inOrder.verifyNoMoreInteractions();
     }
 
+    @Test
+    public void stop_saveState() throws Exception {
+        Platform platform = new Platform();
+        platform.setDisk("disk");
+        platform.setDiskOverlay(true);
+        platform.setStateDirectory("states");
+        domainConfig.setPlatform(platform);
+        domainConfig.setDomainName("domain1");
+        domain.getInfo().state = DomainState.VIR_DOMAIN_SHUTOFF;
+        LibVirtDomain libVirtDomain = startDomain(DISK_OVERLAY);
+
+        libVirtDomain.stop();
+
+        InOrder inOrder = inOrder(domain);
+        inOrder.verify(domain).save(new File("states", "domain1.state").getAbsolutePath());
+        inOrder.verify(domain).undefine();
+        inOrder.verify(domain).free();
+        inOrder.verifyNoMoreInteractions();
+        verify(domainBuilder, never()).deleteDiskOverlay(any(Connect.class), anyString());
+    }
+
+    @Test
+    public void stop_deleteDiskOverlay() throws Exception {
+        domain.getInfo().state = DomainState.VIR_DOMAIN_SHUTOFF;
+        LibVirtDomain libVirtDomain = startDomain(DISK_OVERLAY);
+
+        libVirtDomain.stop();
+
+        InOrder inOrder = inOrder(domain, domainBuilder);
+        inOrder.verify(domain).destroy();
+        inOrder.verify(domain).undefine();
+        inOrder.verify(domain).free();
+        inOrder.verify(domainBuilder).deleteDiskOverlay(any(Connect.class), eq(DISK_OVERLAY));
+    }
+
+    private LibVirtDomain startDomain(final String diskOverlay) throws DomainException {
+        LibVirtDomain libVirtDomain = new LibVirtDomain(domainConfig, factory, connection, domainBuilder,
+                                                        networkConfig) {
+            @Override public synchronized void start() throws DomainException {
+                this.domain = new org.jtestplatform.cloud.domain.libvirt.DomainInfo(LibVirtDomainTest.this.domain,
+                                                                                    null, null, diskOverlay);
+            }
+
+            @Override public boolean isAlive() throws DomainException {
+                return true;
+            }
+        };
+        libVirtDomain.start();
+        return libVirtDomain;
+    }
+
     @Test
     public void isAlive() throws Exception {
         for (DomainState state : DomainState.values()) {
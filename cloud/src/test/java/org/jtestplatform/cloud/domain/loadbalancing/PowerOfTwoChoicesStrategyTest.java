@@ -0,0 +1,79 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.cloud.domain.loadbalancing;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+public class PowerOfTwoChoicesStrategyTest {
+    private static final List<String> ELEMENTS = Arrays.asList("1", "2", "3");
+
+    @Test
+    public void testSelect_oneElement() {
+        PowerOfTwoChoicesStrategy<String> strategy = new PowerOfTwoChoicesStrategy<String>();
+
+        int index = strategy.select(Collections.singletonList("1"), new int[]{5});
+
+        assertThat(index).isEqualTo(0);
+    }
+
+    @Test
+    public void testSelect_leastLoadedOfTwoChoices() {
+        // prepare
+        Random random = mock(Random.class);
+        when(random.nextInt(3)).thenReturn(2);
+        when(random.nextInt(2)).thenReturn(0);
+        PowerOfTwoChoicesStrategy<String> strategy = new PowerOfTwoChoicesStrategy<String>(random);
+
+        // test
+        int index = strategy.select(ELEMENTS, new int[]{3, 0, 1});
+
+        // verify
+        assertThat(index).as("least loaded of elements 2 and 0").isEqualTo(2);
+    }
+
+    @Test
+    public void testSelect_distinctChoices() {
+        // prepare
+        Random random = mock(Random.class);
+        when(random.nextInt(3)).thenReturn(1);
+        when(random.nextInt(2)).thenReturn(1);
+        PowerOfTwoChoicesStrategy<String> strategy = new PowerOfTwoChoicesStrategy<String>(random);
+
+        // test
+        int index = strategy.select(ELEMENTS, new int[]{0, 1, 0});
+
+        // verify
+        assertThat(index).as("least loaded of elements 1 and 2").isEqualTo(2);
+    }
+}
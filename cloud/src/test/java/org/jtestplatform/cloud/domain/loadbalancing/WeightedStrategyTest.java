@@ -0,0 +1,57 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.cloud.domain.loadbalancing;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+public class WeightedStrategyTest {
+    private static final List<Integer> WEIGHTS = Arrays.asList(1, 3);
+
+    @Test
+    public void testSelect() {
+        // prepare
+        WeightedStrategy<Integer> strategy = new WeightedStrategy<Integer>() {
+            @Override
+            protected double getWeight(Integer element) {
+                return element;
+            }
+        };
+        int[] inFlight = new int[WEIGHTS.size()];
+
+        // test
+        for (int i = 0; i < 8; i++) {
+            inFlight[strategy.select(WEIGHTS, inFlight)]++;
+        }
+
+        // verify
+        assertThat(inFlight[0]).as("requests of weight 1").isEqualTo(2);
+        assertThat(inFlight[1]).as("requests of weight 3").isEqualTo(6);
+    }
+}
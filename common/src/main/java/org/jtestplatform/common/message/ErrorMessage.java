@@ -31,6 +31,12 @@ import org.jtestplatform.common.transport.TransportException;
  * @author Fabien DUMINY (fduminy at jnode dot org)
  */
 public class ErrorMessage implements Message {
+    /**
+     * Beginning of the error sent by a server that has no command for a message. It's followed by the class name of
+     * the message.
+     */
+    public static final String NO_COMMAND_FOR_MESSAGE = "No command for message : ";
+
     private String message;
 
     public ErrorMessage() {
@@ -48,6 +54,14 @@ public class ErrorMessage implements Message {
         return message;
     }
 
+    /**
+     * @param messageClass The class of a message.
+     * @return true if this error was sent by a server that has no command for that class of message.
+     */
+    public boolean isNoCommandFor(Class<? extends Message> messageClass) {
+        return (NO_COMMAND_FOR_MESSAGE + messageClass.getName()).equals(message);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,85 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.common.message;
+
+import org.jtestplatform.common.transport.Transport;
+import org.jtestplatform.common.transport.TransportException;
+import org.jtestplatform.common.transport.TransportHelper;
+
+import java.util.Collection;
+
+/**
+ * A page of the tests of a framework, as a reply to {@link GetFrameworkTestsPage}.
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+public class FrameworkTestsPage implements Message {
+    /**
+     * Value of the next cursor for the last page.
+     */
+    public static final int LAST_PAGE = -1;
+
+    private Collection<String> tests;
+    private int nextCursor;
+
+    public FrameworkTestsPage() {
+        // nothing
+    }
+
+    public FrameworkTestsPage(Collection<String> tests, int nextCursor) {
+        this.tests = tests;
+        this.nextCursor = nextCursor;
+    }
+
+    public Collection<String> getTests() {
+        return tests;
+    }
+
+    /**
+     * @return The cursor of the next page, or {@link #LAST_PAGE}.
+     */
+    public int getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean isLastPage() {
+        return nextCursor == LAST_PAGE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sendWith(Transport transport) throws TransportException {
+        TransportHelper.sendInt(transport, nextCursor);
+        TransportHelper.sendList(transport, tests);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void receiveFrom(Transport transport) throws TransportException {
+        nextCursor = TransportHelper.receiveInt(transport);
+        tests = TransportHelper.receiveList(transport);
+    }
+}
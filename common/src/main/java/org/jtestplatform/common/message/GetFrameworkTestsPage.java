@@ -0,0 +1,86 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.common.message;
+
+import org.jtestplatform.common.transport.Transport;
+import org.jtestplatform.common.transport.TransportException;
+import org.jtestplatform.common.transport.TransportHelper;
+
+/**
+ * Paged variant of {@link GetFrameworkTests}, which allows to use the first tests of a framework while its next
+ * tests are still being received. The reply is a {@link FrameworkTestsPage}.
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+public class GetFrameworkTestsPage implements Message {
+    private String framework;
+    private int cursor;
+    private int pageSize;
+
+    public GetFrameworkTestsPage() {
+        // nothing
+    }
+
+    /**
+     * @param framework The name of the framework.
+     * @param cursor The position of the first test of the page : 0 for the first page, then the
+     *               {@link FrameworkTestsPage#getNextCursor()} of the previous page.
+     * @param pageSize The maximum number of tests in the page.
+     */
+    public GetFrameworkTestsPage(String framework, int cursor, int pageSize) {
+        this.framework = framework;
+        this.cursor = cursor;
+        this.pageSize = pageSize;
+    }
+
+    public String getFramework() {
+        return framework;
+    }
+
+    public int getCursor() {
+        return cursor;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sendWith(Transport transport) throws TransportException {
+        transport.send(framework);
+        TransportHelper.sendInt(transport, cursor);
+        TransportHelper.sendInt(transport, pageSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void receiveFrom(Transport transport) throws TransportException {
+        framework = transport.receive();
+        cursor = TransportHelper.receiveInt(transport);
+        pageSize = TransportHelper.receiveInt(transport);
+    }
+}
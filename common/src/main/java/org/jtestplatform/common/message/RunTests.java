@@ -0,0 +1,74 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.common.message;
+
+import org.jtestplatform.common.transport.Transport;
+import org.jtestplatform.common.transport.TransportException;
+import org.jtestplatform.common.transport.TransportHelper;
+
+import java.util.Collection;
+
+/**
+ * Batch variant of {@link RunTest}, which runs several tests of a framework in a single round trip.
+ * The reply is a {@link TestResults}.
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+public class RunTests implements Message {
+    private String framework;
+    private Collection<String> tests;
+
+    public RunTests() {
+        // nothing
+    }
+
+    public RunTests(String framework, Collection<String> tests) {
+        this.framework = framework;
+        this.tests = tests;
+    }
+
+    public String getFramework() {
+        return framework;
+    }
+
+    public Collection<String> getTests() {
+        return tests;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sendWith(Transport transport) throws TransportException {
+        transport.send(framework);
+        TransportHelper.sendList(transport, tests);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void receiveFrom(Transport transport) throws TransportException {
+        framework = transport.receive();
+        tests = TransportHelper.receiveList(transport);
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.common.message;
+
+import org.jtestplatform.common.transport.Transport;
+import org.jtestplatform.common.transport.TransportException;
+import org.jtestplatform.common.transport.TransportHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The results of a {@link RunTests}, in the order of its tests. Since the tests are run in a batch, their durations
+ * are measured on server side.
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+public class TestResults implements Message {
+    private List<TestResult> results;
+    private List<Integer> durations;
+
+    public TestResults() {
+        // nothing
+    }
+
+    /**
+     * @param results The results of the tests.
+     * @param durations The durations of the tests, in milliseconds.
+     */
+    public TestResults(List<TestResult> results, List<Integer> durations) {
+        if (results.size() != durations.size()) {
+            throw new IllegalArgumentException("there must be one duration per result");
+        }
+
+        this.results = results;
+        this.durations = durations;
+    }
+
+    public List<TestResult> getResults() {
+        return results;
+    }
+
+    /**
+     * @return The durations of the tests, in milliseconds.
+     */
+    public List<Integer> getDurations() {
+        return durations;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sendWith(Transport transport) throws TransportException {
+        TransportHelper.sendInt(transport, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            TransportHelper.sendInt(transport, durations.get(i));
+            results.get(i).sendWith(transport);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void receiveFrom(Transport transport) throws TransportException {
+        int size = TransportHelper.receiveInt(transport);
+        results = new ArrayList<TestResult>(size);
+        durations = new ArrayList<Integer>(size);
+        for (int i = 0; i < size; i++) {
+            durations.add(TransportHelper.receiveInt(transport));
+            TestResult result = new TestResult();
+            result.receiveFrom(transport);
+            results.add(result);
+        }
+    }
+}
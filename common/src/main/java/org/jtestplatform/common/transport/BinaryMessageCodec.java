@@ -0,0 +1,688 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.common.transport;
+
+import org.jtestplatform.common.message.*;
+import org.jtestplatform.common.message.Shutdown;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static java.lang.String.format;
+
+/**
+ * A compact binary {@link MessageCodec}. An encoded message is made of :
+ * <ul>
+ * <li>the schema version (1 byte)</li>
+ * <li>the message type id (a varint), as given by the {@link MessageRegistry}</li>
+ * <li>the message fields : ints and sizes are varints, booleans are packed in a flags byte and strings are
+ * prefixed by their size in bytes plus one (0 means null) followed by their UTF-8 bytes.</li>
+ * <li>optionally, a capabilities byte (old decoders ignore it since it follows the message)</li>
+ * </ul>
+ * <p>
+ * Compression is negotiated : when it's enabled, each message announces {@link #DEFLATE_CAPABILITY} and the long
+ * fields of a {@link TestResult} (failure content, system out and err) are deflated once the peer has announced it
+ * too. Since a codec can be shared by several transports, the capability of a peer is kept for the transport it's
+ * connected to. The deflater is primed with a dictionary of common stack trace fragments.
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ *
+ */
+public class BinaryMessageCodec implements MessageCodec {
+    static final byte SCHEMA_VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    /**
+     * Announces that deflated fields, with the current {@link #DICTIONARY}, can be decoded.
+     */
+    static final int DEFLATE_CAPABILITY = 0x01;
+
+    /**
+     * The minimum size, in bytes, of a string to deflate.
+     */
+    static final int MIN_DEFLATED_SIZE = 128;
+
+    /**
+     * The maximum compression ratio of the deflate algorithm.
+     */
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    private static final byte[] DICTIONARY = ("\tat sun.reflect.NativeMethodAccessorImpl.invoke"
+        + "\tat sun.reflect.DelegatingMethodAccessorImpl.invoke\tat java.lang.reflect.Method.invoke"
+        + "\tat org.junit.runners.model.FrameworkMethod$1.runReflectiveCall"
+        + "\tat org.junit.internal.runners.model.ReflectiveCallable.run"
+        + "\tat org.junit.runners.model.FrameworkMethod.invokeExplosively"
+        + "\tat org.junit.internal.runners.statements.InvokeMethod.evaluate"
+        + "\tat org.junit.runners.ParentRunner.runLeaf\tat org.junit.runners.BlockJUnit4ClassRunner.runChild"
+        + "\tat org.junit.Assert.fail\tat org.junit.Assert.assertEquals\tat junit.framework.Assert."
+        + "\tat gnu.testlet.\tat org.jtestplatform.server.\tat java.util.concurrent."
+        + "java.lang.AssertionError: java.lang.NullPointerException: java.lang.IllegalArgumentException: "
+        + "\tat java.lang.Thread.run(Thread.java:\n\tat java.lang.").getBytes(UTF8);
+
+    private static final int IGNORED_FLAG = 0x01;
+    private static final int ERROR_FLAG = 0x02;
+    private static final int DEFLATED_FLAG = 0x04;
+
+    private static final int PLAIN_FIELD = 0;
+    private static final int DEFLATED_FIELD = 1;
+
+    private final MessageRegistry registry;
+    private final boolean compression;
+    private final Map<Transport, Boolean> peersSupportingCompression =
+        Collections.synchronizedMap(new WeakHashMap<Transport, Boolean>());
+    private final Map<Class<? extends Message>, Encoding<?>> encodingsByClass =
+        new HashMap<Class<? extends Message>, Encoding<?>>();
+
+    /**
+     * The deflater and the inflater of each thread, reset before each field : creating them (and their native state)
+     * for each message would cost more than what is saved by deflating small fields.
+     */
+    private final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.BEST_SPEED);
+        }
+    };
+    private final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    public BinaryMessageCodec() {
+        this(new MessageRegistry());
+    }
+
+    public BinaryMessageCodec(MessageRegistry registry) {
+        this(registry, true);
+    }
+
+    /**
+     * @param registry The registry of the message types.
+     * @param compression true to announce compression and use it when the peer has announced it too.
+     */
+    public BinaryMessageCodec(MessageRegistry registry, boolean compression) {
+        this.registry = registry;
+        this.compression = compression;
+        addEncoding(new Encoding<ErrorMessage>(ErrorMessage.class) {
+            @Override
+            void write(ErrorMessage message, Output output) {
+                output.writeString(message.getMessage());
+            }
+
+            @Override
+            ErrorMessage read(Input input) throws CharacterCodingException {
+                return new ErrorMessage(input.readString());
+            }
+        });
+        addEncoding(new Encoding<GetTestFrameworks>(GetTestFrameworks.class) {
+            @Override
+            void write(GetTestFrameworks message, Output output) {
+                // nothing
+            }
+
+            @Override
+            GetTestFrameworks read(Input input) {
+                return GetTestFrameworks.INSTANCE;
+            }
+        });
+        addEncoding(new Encoding<TestFrameworks>(TestFrameworks.class) {
+            @Override
+            void write(TestFrameworks message, Output output) {
+                output.writeStrings(message.getFrameworks());
+            }
+
+            @Override
+            TestFrameworks read(Input input) throws CharacterCodingException {
+                return new TestFrameworks(input.readStrings());
+            }
+        });
+        addEncoding(new Encoding<GetFrameworkTests>(GetFrameworkTests.class) {
+            @Override
+            void write(GetFrameworkTests message, Output output) {
+                output.writeString(message.getFramework());
+            }
+
+            @Override
+            GetFrameworkTests read(Input input) throws CharacterCodingException {
+                return new GetFrameworkTests(input.readString());
+            }
+        });
+        addEncoding(new Encoding<FrameworkTests>(FrameworkTests.class) {
+            @Override
+            void write(FrameworkTests message, Output output) {
+                output.writeStrings(message.getTests());
+            }
+
+            @Override
+            FrameworkTests read(Input input) throws CharacterCodingException {
+                return new FrameworkTests(input.readStrings());
+            }
+        });
+        addEncoding(new Encoding<RunTest>(RunTest.class) {
+            @Override
+            void write(RunTest message, Output output) {
+                output.writeString(message.getFramework());
+                output.writeString(message.getTest());
+            }
+
+            @Override
+            RunTest read(Input input) throws CharacterCodingException {
+                return new RunTest(input.readString(), input.readString());
+            }
+        });
+        final Encoding<TestResult> testResultEncoding = new Encoding<TestResult>(TestResult.class) {
+            @Override
+            void write(TestResult message, Output output) {
+                boolean deflate = output.deflate;
+                int flags = (message.isIgnored() ? IGNORED_FLAG : 0) | (message.isError() ? ERROR_FLAG : 0)
+                    | (deflate ? DEFLATED_FLAG : 0);
+                output.writeByte(flags);
+                output.writeString(message.getFramework());
+                output.writeString(message.getTest());
+                if (!message.isIgnored()) {
+                    output.writeString(message.getFailureType());
+                    if (message.getFailureType() != null) {
+                        output.writeLongString(message.getFailureContent(), deflate);
+                        output.writeString(message.getFailureMessage());
+                        output.writeLongString(message.getSystemOut(), deflate);
+                        output.writeLongString(message.getSystemErr(), deflate);
+                    }
+                }
+            }
+
+            @Override
+            TestResult read(Input input) throws CharacterCodingException, DataFormatException {
+                int flags = input.readByte();
+                TestResult message = new TestResult(input.readString(), input.readString());
+                if ((flags & IGNORED_FLAG) != 0) {
+                    message.setIgnored();
+                } else {
+                    String failureType = input.readString();
+                    if (failureType != null) {
+                        boolean deflated = (flags & DEFLATED_FLAG) != 0;
+                        String failureContent = input.readLongString(deflated);
+                        message.setFailure(failureType, failureContent, input.readString(),
+                                           (flags & ERROR_FLAG) != 0);
+                        message.setSystemOut(input.readLongString(deflated));
+                        message.setSystemErr(input.readLongString(deflated));
+                    }
+                }
+                return message;
+            }
+        };
+        addEncoding(testResultEncoding);
+        addEncoding(new Encoding<Shutdown>(Shutdown.class) {
+            @Override
+            void write(Shutdown message, Output output) {
+                // nothing
+            }
+
+            @Override
+            Shutdown read(Input input) {
+                return Shutdown.INSTANCE;
+            }
+        });
+        addEncoding(new Encoding<GetFrameworkTestsPage>(GetFrameworkTestsPage.class) {
+            @Override
+            void write(GetFrameworkTestsPage message, Output output) {
+                output.writeString(message.getFramework());
+                output.writeVarInt(message.getCursor());
+                output.writeVarInt(message.getPageSize());
+            }
+
+            @Override
+            GetFrameworkTestsPage read(Input input) throws CharacterCodingException {
+                return new GetFrameworkTestsPage(input.readString(), input.readVarInt(), input.readVarInt());
+            }
+        });
+        addEncoding(new Encoding<FrameworkTestsPage>(FrameworkTestsPage.class) {
+            @Override
+            void write(FrameworkTestsPage message, Output output) {
+                output.writeVarInt(message.getNextCursor() + 1); // LAST_PAGE (-1) is written as 0
+                output.writeStrings(message.getTests());
+            }
+
+            @Override
+            FrameworkTestsPage read(Input input) throws CharacterCodingException {
+                int nextCursor = input.readVarInt() - 1;
+                return new FrameworkTestsPage(input.readStrings(), nextCursor);
+            }
+        });
+        addEncoding(new Encoding<RunTests>(RunTests.class) {
+            @Override
+            void write(RunTests message, Output output) {
+                output.writeString(message.getFramework());
+                output.writeStrings(message.getTests());
+            }
+
+            @Override
+            RunTests read(Input input) throws CharacterCodingException {
+                return new RunTests(input.readString(), input.readStrings());
+            }
+        });
+        addEncoding(new Encoding<TestResults>(TestResults.class) {
+            @Override
+            void write(TestResults message, Output output) {
+                output.writeVarInt(message.getResults().size());
+                for (int i = 0; i < message.getResults().size(); i++) {
+                    output.writeVarInt(message.getDurations().get(i));
+                    testResultEncoding.write(message.getResults().get(i), output);
+                }
+            }
+
+            @Override
+            TestResults read(Input input) throws CharacterCodingException, DataFormatException {
+                int size = input.readVarInt();
+                if ((size < 0) || (size > input.remaining())) { // each result needs at least one byte
+                    throw new BufferUnderflowException();
+                }
+
+                List<TestResult> results = new ArrayList<TestResult>(size);
+                List<Integer> durations = new ArrayList<Integer>(size);
+                for (int i = 0; i < size; i++) {
+                    durations.add(input.readVarInt());
+                    results.add(testResultEncoding.read(input));
+                }
+                return new TestResults(results, durations);
+            }
+        });
+    }
+
+    /**
+     * @param transport The transport connected to the peer.
+     * @return true if the peer has announced that it can decode deflated fields.
+     */
+    public boolean isPeerSupportingCompression(Transport transport) {
+        return Boolean.TRUE.equals(peersSupportingCompression.get(transport));
+    }
+
+    private void addEncoding(Encoding<?> encoding) {
+        encodingsByClass.put(encoding.messageClass, encoding);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean canEncode(Message message) {
+        return encodingsByClass.containsKey(message.getClass()) && registry.contains(message.getClass());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ByteBuffer encode(Message message, Transport transport) throws TransportException {
+        Encoding<?> encoding = encodingsByClass.get(message.getClass());
+        if (encoding == null) {
+            throw new TransportException("can't encode message of type " + message.getClass().getName());
+        }
+
+        Output output = new Output(compression && isPeerSupportingCompression(transport), deflaters);
+        output.writeByte(SCHEMA_VERSION);
+        output.writeVarInt(registry.getId(message.getClass()));
+        encoding.writeMessage(message, output);
+        if (compression) {
+            output.writeByte(DEFLATE_CAPABILITY);
+        }
+        return output.toByteBuffer();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Message decode(ByteBuffer buffer, Transport transport) throws TransportException {
+        Input input = new Input(buffer, inflaters);
+        try {
+            int version = input.readByte();
+            if (version != SCHEMA_VERSION) {
+                throw new TransportException(format("unsupported schema version (%d)", version));
+            }
+
+            Class<? extends Message> messageClass = registry.getMessageClass(input.readVarInt());
+            Encoding<?> encoding = encodingsByClass.get(messageClass);
+            if (encoding == null) {
+                throw new TransportException("can't decode message of type " + messageClass.getName());
+            }
+            Message message = encoding.read(input);
+            if ((input.remaining() > 0) && ((input.readByte() & DEFLATE_CAPABILITY) != 0)) {
+                peersSupportingCompression.put(transport, Boolean.TRUE);
+            }
+            return message;
+        } catch (BufferUnderflowException e) {
+            throw new TransportException("stream corrupted : truncated message", e);
+        } catch (CharacterCodingException e) {
+            throw new TransportException("stream corrupted : invalid UTF-8 string", e);
+        } catch (DataFormatException e) {
+            throw new TransportException("stream corrupted : invalid deflated string", e);
+        }
+    }
+
+    private static abstract class Encoding<M extends Message> {
+        private final Class<M> messageClass;
+
+        Encoding(Class<M> messageClass) {
+            this.messageClass = messageClass;
+        }
+
+        final void writeMessage(Message message, Output output) {
+            write(messageClass.cast(message), output);
+        }
+
+        abstract void write(M message, Output output);
+
+        abstract M read(Input input) throws CharacterCodingException, DataFormatException;
+    }
+
+    /**
+     * A growable buffer where the fields of a message are written.
+     */
+    private static class Output {
+        /**
+         * true if the long strings can be deflated.
+         */
+        private final boolean deflate;
+        private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        private final ThreadLocal<Deflater> deflaters;
+
+        Output(boolean deflate, ThreadLocal<Deflater> deflaters) {
+            this.deflate = deflate;
+            this.deflaters = deflaters;
+        }
+
+        void writeByte(int value) {
+            ensureRemaining(1);
+            buffer.put((byte) value);
+        }
+
+        void writeVarInt(int value) {
+            ensureRemaining(5);
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        void writeStrings(Collection<String> strings) {
+            writeVarInt(strings.size());
+            for (String string : strings) {
+                writeString(string);
+            }
+        }
+
+        void writeString(String string) {
+            if (string == null) {
+                writeVarInt(0);
+                return;
+            }
+
+            int length = string.length();
+            int size = utf8Size(string);
+            writeVarInt(size + 1);
+            ensureRemaining(size);
+            for (int i = 0; i < length; i++) {
+                char c = string.charAt(i);
+                if (c < 0x80) {
+                    buffer.put((byte) c);
+                } else if (c < 0x800) {
+                    buffer.put((byte) (0xC0 | (c >> 6)));
+                    buffer.put((byte) (0x80 | (c & 0x3F)));
+                } else if (isSurrogatePair(string, i)) {
+                    int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                    buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                    buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                    buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                    buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+                } else if (isSurrogate(c)) {
+                    buffer.put((byte) '?'); // malformed surrogate : same replacement as String.getBytes
+                } else {
+                    buffer.put((byte) (0xE0 | (c >> 12)));
+                    buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                    buffer.put((byte) (0x80 | (c & 0x3F)));
+                }
+            }
+        }
+
+        /**
+         * Writes a string that may be long : when <code>deflate</code> is true, it's prefixed by a byte telling if
+         * it has been deflated (only when it's worth it).
+         */
+        void writeLongString(String string, boolean deflate) {
+            if (!deflate) {
+                writeString(string);
+                return;
+            }
+
+            byte[] bytes = (string == null) ? null : string.getBytes(UTF8);
+            if ((bytes == null) || (bytes.length < MIN_DEFLATED_SIZE)) {
+                writeByte(PLAIN_FIELD);
+                writeString(string);
+                return;
+            }
+
+            Deflater deflater = deflaters.get();
+            deflater.reset();
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(bytes);
+            deflater.finish();
+
+            byte[] deflated = new byte[bytes.length];
+            int size = deflater.deflate(deflated);
+            if (!deflater.finished()) {
+                // not smaller than the original string
+                writeByte(PLAIN_FIELD);
+                writeString(string);
+                return;
+            }
+
+            writeByte(DEFLATED_FIELD);
+            writeVarInt(bytes.length);
+            writeVarInt(size);
+            ensureRemaining(size);
+            buffer.put(deflated, 0, size);
+        }
+
+        ByteBuffer toByteBuffer() {
+            buffer.flip();
+            return buffer;
+        }
+
+        private void ensureRemaining(int size) {
+            if (buffer.remaining() < size) {
+                int capacity = Math.max(2 * buffer.capacity(), buffer.position() + size);
+                if (capacity < 0) {
+                    throw new BufferOverflowException();
+                }
+                ByteBuffer newBuffer = ByteBuffer.allocate(capacity);
+                buffer.flip();
+                newBuffer.put(buffer);
+                buffer = newBuffer;
+            }
+        }
+
+        private static int utf8Size(String string) {
+            int length = string.length();
+            int size = 0;
+            for (int i = 0; i < length; i++) {
+                char c = string.charAt(i);
+                if (c < 0x80) {
+                    size++;
+                } else if (c < 0x800) {
+                    size += 2;
+                } else if (isSurrogatePair(string, i)) {
+                    size += 4;
+                    i++;
+                } else if (isSurrogate(c)) {
+                    size++;
+                } else {
+                    size += 3;
+                }
+            }
+            return size;
+        }
+
+        private static boolean isSurrogatePair(String string, int index) {
+            return Character.isHighSurrogate(string.charAt(index)) && ((index + 1) < string.length())
+                && Character.isLowSurrogate(string.charAt(index + 1));
+        }
+
+        private static boolean isSurrogate(char c) {
+            return (c >= Character.MIN_SURROGATE) && (c <= Character.MAX_SURROGATE);
+        }
+    }
+
+    /**
+     * Reads the fields of a message. Strings are decoded directly from the buffer, through a single
+     * decoder and char buffer for the whole message.
+     */
+    private static class Input {
+        private final ByteBuffer buffer;
+        private final CharsetDecoder decoder;
+        private CharBuffer chars;
+        private final ThreadLocal<Inflater> inflaters;
+
+        Input(ByteBuffer buffer, ThreadLocal<Inflater> inflaters) {
+            this.buffer = buffer;
+            this.inflaters = inflaters;
+            decoder = UTF8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        int readByte() {
+            return buffer.get() & 0xFF;
+        }
+
+        int remaining() {
+            return buffer.remaining();
+        }
+
+        int readVarInt() throws BufferUnderflowException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = buffer.get();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            return -1; // too many bytes
+        }
+
+        /**
+         * Reads a string written by {@link Output#writeLongString(String, boolean)}.
+         */
+        String readLongString(boolean deflated) throws CharacterCodingException, DataFormatException {
+            if (!deflated || (readByte() == PLAIN_FIELD)) {
+                return readString();
+            }
+
+            int size = readVarInt();
+            int deflatedSize = readVarInt();
+            if ((size < 0) || (deflatedSize < 0) || (deflatedSize > buffer.remaining())) {
+                throw new BufferUnderflowException();
+            }
+            if (size > MAX_DEFLATE_RATIO * (long) deflatedSize) {
+                throw new DataFormatException("invalid size of deflated string (" + size + ")");
+            }
+
+            Inflater inflater = inflaters.get();
+            inflater.reset();
+            byte[] deflatedBytes = new byte[deflatedSize];
+            buffer.get(deflatedBytes);
+            inflater.setInput(deflatedBytes);
+            byte[] bytes = new byte[size];
+            int inflatedSize = inflater.inflate(bytes);
+            if (inflater.needsDictionary()) {
+                inflater.setDictionary(DICTIONARY);
+                inflatedSize = inflater.inflate(bytes);
+            }
+            if ((inflatedSize != size) || !inflater.finished()) {
+                throw new DataFormatException("deflated string has not the expected size (" + size + ")");
+            }
+            return new String(bytes, UTF8);
+        }
+
+        List<String> readStrings() throws CharacterCodingException {
+            int size = readVarInt();
+            if ((size < 0) || (size > buffer.remaining())) { // each string needs at least one byte
+                throw new BufferUnderflowException();
+            }
+
+            List<String> strings = new ArrayList<String>(size);
+            for (int i = 0; i < size; i++) {
+                strings.add(readString());
+            }
+            return strings;
+        }
+
+        String readString() throws CharacterCodingException {
+            int size = readVarInt() - 1;
+            if (size < 0) {
+                if (size == -1) {
+                    return null;
+                }
+                throw new BufferUnderflowException();
+            }
+            if (size > buffer.remaining()) {
+                throw new BufferUnderflowException();
+            }
+
+            if ((chars == null) || (chars.capacity() < size)) {
+                chars = CharBuffer.allocate(Math.max(size, INITIAL_BUFFER_SIZE));
+            }
+            chars.clear();
+
+            int limit = buffer.limit();
+            buffer.limit(buffer.position() + size);
+            try {
+                decoder.reset();
+                CoderResult result = decoder.decode(buffer, chars, true);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                decoder.flush(chars);
+            } finally {
+                buffer.limit(limit);
+            }
+
+            chars.flip();
+            return chars.toString();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.common.transport;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.List;
+
+import static java.lang.String.format;
+
+/**
+ * Encodes strings in UTF-8 (and decodes them) with reusable buffers, in order to avoid allocating memory once the
+ * buffers have reached their working size. Apart from the decoded strings, nothing is allocated per message.
+ * <p>
+ * The content of a frame of strings is, for each string, its size in bytes (or {@link #NULL_SIZE}) followed by
+ * its bytes.
+ * <p>
+ * Encoding and decoding can be done concurrently (by 2 different threads), but each of them is not thread safe.
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ *
+ */
+class FrameStrings {
+    static final int NULL_SIZE = Integer.MIN_VALUE;
+    static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private static final int INT_SIZE = Integer.SIZE / 8;
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    private final ByteOrder byteOrder;
+
+    private final CharsetEncoder encoder;
+    private char[] encoderChars = new char[INITIAL_BUFFER_SIZE];
+    private CharBuffer encoderInput = CharBuffer.wrap(encoderChars);
+    private ByteBuffer encoderOutput;
+
+    private final CharsetDecoder decoder;
+    private CharBuffer decoderOutput = CharBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+    FrameStrings(ByteOrder byteOrder) {
+        this.byteOrder = byteOrder;
+        encoderOutput = ByteBuffer.allocate(INITIAL_BUFFER_SIZE).order(byteOrder);
+        encoder = CHARSET.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+                         .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        decoder = CHARSET.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                         .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * @param string The string to encode (not null).
+     * @return The bytes of the string. The buffer is only valid until the next call to an encode method.
+     */
+    ByteBuffer encode(String string) {
+        encoderOutput.clear();
+        append(string);
+        encoderOutput.flip();
+        return encoderOutput;
+    }
+
+    /**
+     * @param strings The strings to encode, which can be null.
+     * @return The content of a frame of strings. The buffer is only valid until the next call to an encode method.
+     */
+    ByteBuffer encode(List<String> strings) {
+        encoderOutput.clear();
+        for (int i = 0; i < strings.size(); i++) {
+            String string = strings.get(i);
+            ensureRemaining(INT_SIZE);
+            if (string == null) {
+                encoderOutput.putInt(NULL_SIZE);
+            } else {
+                int sizePosition = encoderOutput.position();
+                encoderOutput.putInt(0);
+                append(string);
+                encoderOutput.putInt(sizePosition, encoderOutput.position() - sizePosition - INT_SIZE);
+            }
+        }
+        encoderOutput.flip();
+        return encoderOutput;
+    }
+
+    /**
+     * Decodes the given number of bytes from the current position of the buffer.
+     */
+    String decode(ByteBuffer buffer, int size) {
+        int limit = buffer.limit();
+        buffer.limit(buffer.position() + size);
+        try {
+            if (decoderOutput.capacity() < size) { // UTF-8 never needs more chars than bytes
+                decoderOutput = CharBuffer.allocate(Math.max(size, 2 * decoderOutput.capacity()));
+            }
+            decoderOutput.clear();
+            decoder.reset();
+            decoder.decode(buffer, decoderOutput, true);
+            decoder.flush(decoderOutput);
+            decoderOutput.flip();
+            return decoderOutput.toString();
+        } finally {
+            buffer.limit(limit);
+        }
+    }
+
+    /**
+     * Decodes the content of a frame of strings.
+     * @param content The content of the frame.
+     * @param strings The list where decoded strings are added.
+     * @throws TransportException
+     */
+    void decode(ByteBuffer content, List<String> strings) throws TransportException {
+        while (content.hasRemaining()) {
+            if (content.remaining() < INT_SIZE) {
+                throw new TransportException("stream corrupted : truncated string size in frame");
+            }
+            int size = content.getInt();
+            if (size == NULL_SIZE) {
+                strings.add(null);
+            } else if ((size < 0) || (size > content.remaining())) {
+                throw new TransportException(format("stream corrupted : invalid string size in frame (%d)", size));
+            } else {
+                strings.add(decode(content, size));
+            }
+        }
+    }
+
+    private void append(String string) {
+        int length = string.length();
+        if (encoderChars.length < length) {
+            encoderChars = new char[Math.max(length, 2 * encoderChars.length)];
+            encoderInput = CharBuffer.wrap(encoderChars);
+        }
+        string.getChars(0, length, encoderChars, 0);
+        encoderInput.clear();
+        encoderInput.limit(length);
+
+        encoder.reset();
+        CoderResult result;
+        do {
+            result = encoder.encode(encoderInput, encoderOutput, true);
+            if (result.isOverflow()) {
+                ensureRemaining(2 * encoderInput.remaining() + 1);
+            }
+        } while (result.isOverflow());
+        while (encoder.flush(encoderOutput).isOverflow()) {
+            ensureRemaining(INITIAL_BUFFER_SIZE);
+        }
+    }
+
+    private void ensureRemaining(int size) {
+        if (encoderOutput.remaining() < size) {
+            int capacity = Math.max(encoderOutput.position() + size, 2 * encoderOutput.capacity());
+            ByteBuffer newOutput = ByteBuffer.allocate(capacity).order(byteOrder);
+            encoderOutput.flip();
+            newOutput.put(encoderOutput);
+            encoderOutput = newOutput;
+        }
+    }
+}
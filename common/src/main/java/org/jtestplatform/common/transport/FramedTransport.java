@@ -0,0 +1,78 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.common.transport;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link Transport} able to group all the strings of a message into a single frame.
+ * The strings given to {@link #send(String)} are buffered until {@link #flush()} is called.
+ * It can also send a message encoded by a {@link MessageCodec} as a single binary frame.
+ * <p>
+ * Each frame carries a correlation id, which allows to match a reply with its request.
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ *
+ */
+public interface FramedTransport extends Transport {
+    /**
+     * Sends all the strings buffered since the previous call as a single frame.
+     * @throws TransportException
+     */
+    void flush() throws TransportException;
+
+    /**
+     * @return true if the peer is known to understand frames.
+     */
+    boolean isFramed();
+
+    /**
+     * Sends the given binary content as a single frame.
+     * @param content The content of the frame.
+     * @throws TransportException
+     */
+    void sendFrame(ByteBuffer content) throws TransportException;
+
+    /**
+     * Receives the next binary frame. If strings are received instead, they are kept for the next calls
+     * to {@link #receive()}.
+     * @return The content of the next binary frame (only valid until the next receive), or null if strings were
+     * received.
+     * @throws TransportException
+     */
+    ByteBuffer receiveFrame() throws TransportException;
+
+    /**
+     * @param correlationId The correlation id of the frames sent after this call.
+     */
+    void setCorrelationId(int correlationId);
+
+    /**
+     * @return The correlation id of the last frame received (0 if none or if the frame didn't have one).
+     */
+    int getReceivedCorrelationId();
+
+    /**
+     * @return The timeout in milliseconds of a receive (0 means no timeout).
+     */
+    int getTimeout();
+}
@@ -0,0 +1,56 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.common.transport;
+
+import org.jtestplatform.common.message.Message;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes {@link Message}s to bytes and decodes them back.
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ *
+ */
+public interface MessageCodec {
+    /**
+     * @param message The message to encode.
+     * @return true if this codec is able to encode the given message.
+     */
+    boolean canEncode(Message message);
+
+    /**
+     * @param message The message to encode.
+     * @param transport The transport through which the message will be sent.
+     * @return A buffer containing the encoded message, ready to be read.
+     * @throws TransportException
+     */
+    ByteBuffer encode(Message message, Transport transport) throws TransportException;
+
+    /**
+     * @param buffer A buffer containing an encoded message.
+     * @param transport The transport from which the message has been received.
+     * @return The decoded message.
+     * @throws TransportException
+     */
+    Message decode(ByteBuffer buffer, Transport transport) throws TransportException;
+}
@@ -0,0 +1,206 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.common.transport;
+
+import org.jtestplatform.common.message.*;
+import org.jtestplatform.common.message.Shutdown;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.lang.String.format;
+
+/**
+ * Registry of the message types that can be received. Each type has a small numeric id, given in registration order,
+ * and a {@link MessageFactory}. Messages of an unknown type are rejected.
+ * <p>
+ * The standard messages are registered at creation. Since ids depend on the registration order, the client and
+ * the server must register the same additional types in the same order.
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ *
+ */
+public class MessageRegistry {
+    private final List<Entry> entriesById = new CopyOnWriteArrayList<Entry>();
+    private final Map<Class<? extends Message>, Entry> entriesByClass =
+        new ConcurrentHashMap<Class<? extends Message>, Entry>();
+    private final Map<String, Entry> entriesByClassName = new ConcurrentHashMap<String, Entry>();
+
+    public MessageRegistry() {
+        register(ErrorMessage.class, new MessageFactory<ErrorMessage>() {
+            @Override
+            public ErrorMessage create() {
+                return new ErrorMessage();
+            }
+        });
+        register(GetTestFrameworks.class, new MessageFactory<GetTestFrameworks>() {
+            @Override
+            public GetTestFrameworks create() {
+                return GetTestFrameworks.INSTANCE;
+            }
+        });
+        register(TestFrameworks.class, new MessageFactory<TestFrameworks>() {
+            @Override
+            public TestFrameworks create() {
+                return new TestFrameworks();
+            }
+        });
+        register(GetFrameworkTests.class, new MessageFactory<GetFrameworkTests>() {
+            @Override
+            public GetFrameworkTests create() {
+                return new GetFrameworkTests();
+            }
+        });
+        register(FrameworkTests.class, new MessageFactory<FrameworkTests>() {
+            @Override
+            public FrameworkTests create() {
+                return new FrameworkTests();
+            }
+        });
+        register(RunTest.class, new MessageFactory<RunTest>() {
+            @Override
+            public RunTest create() {
+                return new RunTest();
+            }
+        });
+        register(TestResult.class, new MessageFactory<TestResult>() {
+            @Override
+            public TestResult create() {
+                return new TestResult();
+            }
+        });
+        register(Shutdown.class, new MessageFactory<Shutdown>() {
+            @Override
+            public Shutdown create() {
+                return Shutdown.INSTANCE;
+            }
+        });
+        register(GetFrameworkTestsPage.class, new MessageFactory<GetFrameworkTestsPage>() {
+            @Override
+            public GetFrameworkTestsPage create() {
+                return new GetFrameworkTestsPage();
+            }
+        });
+        register(FrameworkTestsPage.class, new MessageFactory<FrameworkTestsPage>() {
+            @Override
+            public FrameworkTestsPage create() {
+                return new FrameworkTestsPage();
+            }
+        });
+        register(RunTests.class, new MessageFactory<RunTests>() {
+            @Override
+            public RunTests create() {
+                return new RunTests();
+            }
+        });
+        register(TestResults.class, new MessageFactory<TestResults>() {
+            @Override
+            public TestResults create() {
+                return new TestResults();
+            }
+        });
+    }
+
+    /**
+     * Registers a message type.
+     * @param messageClass The class of message.
+     * @param factory The factory used to create messages of that type.
+     * @param <M> The type of message.
+     * @return The id of the message type.
+     */
+    public synchronized <M extends Message> int register(Class<M> messageClass, MessageFactory<M> factory) {
+        if (entriesByClass.containsKey(messageClass)) {
+            throw new IllegalArgumentException("message type already registered : " + messageClass.getName());
+        }
+
+        Entry entry = new Entry(entriesById.size(), messageClass, factory);
+        entriesById.add(entry);
+        entriesByClass.put(messageClass, entry);
+        entriesByClassName.put(messageClass.getName(), entry);
+        return entry.id;
+    }
+
+    public boolean contains(Class<? extends Message> messageClass) {
+        return entriesByClass.containsKey(messageClass);
+    }
+
+    public int getId(Class<? extends Message> messageClass) throws TransportException {
+        return getEntry(messageClass).id;
+    }
+
+    public Class<? extends Message> getMessageClass(int id) throws TransportException {
+        return getEntry(id).messageClass;
+    }
+
+    public Class<? extends Message> getMessageClass(String className) throws TransportException {
+        return getEntry(className).messageClass;
+    }
+
+    public Message create(int id) throws TransportException {
+        return getEntry(id).factory.create();
+    }
+
+    public Message create(String className) throws TransportException {
+        return getEntry(className).factory.create();
+    }
+
+    public Message create(Class<? extends Message> messageClass) throws TransportException {
+        return getEntry(messageClass).factory.create();
+    }
+
+    private Entry getEntry(Class<? extends Message> messageClass) throws TransportException {
+        Entry entry = entriesByClass.get(messageClass);
+        if (entry == null) {
+            throw new TransportException("unknown message type " + messageClass.getName());
+        }
+        return entry;
+    }
+
+    private Entry getEntry(int id) throws TransportException {
+        if ((id < 0) || (id >= entriesById.size())) {
+            throw new TransportException(format("unknown message type id (%d)", id));
+        }
+        return entriesById.get(id);
+    }
+
+    private Entry getEntry(String className) throws TransportException {
+        Entry entry = (className == null) ? null : entriesByClassName.get(className);
+        if (entry == null) {
+            throw new TransportException("unknown message type " + className);
+        }
+        return entry;
+    }
+
+    private static class Entry {
+        private final int id;
+        private final Class<? extends Message> messageClass;
+        private final MessageFactory<? extends Message> factory;
+
+        Entry(int id, Class<? extends Message> messageClass, MessageFactory<? extends Message> factory) {
+            this.id = id;
+            this.messageClass = messageClass;
+            this.factory = factory;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.common.transport;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.jtestplatform.common.message.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Allows to have several requests in flight on a {@link FramedTransport}. Each request is sent with a new
+ * correlation id and a reader thread dispatches the replies to the matching futures.
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ *
+ */
+class RequestMultiplexer implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestMultiplexer.class);
+    private static final AtomicInteger NEXT_THREAD_ID = new AtomicInteger(0);
+
+    private final TransportHelper transportHelper;
+    private final FramedTransport transport;
+    private final Map<Integer, PendingRequest> pendingRequests = new ConcurrentHashMap<Integer, PendingRequest>();
+    private final AtomicInteger nextCorrelationId = new AtomicInteger(0);
+    private volatile boolean stopped;
+
+    RequestMultiplexer(TransportHelper transportHelper, FramedTransport transport) {
+        this.transportHelper = transportHelper;
+        this.transport = transport;
+    }
+
+    void start() {
+        Thread reader = new Thread(this, "transport-reader-" + NEXT_THREAD_ID.getAndIncrement());
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    ListenableFuture<Message> sendRequest(Message message) throws TransportException {
+        if (stopped) {
+            throw new TransportException("transport closed");
+        }
+
+        int correlationId = newCorrelationId();
+        SettableFuture<Message> reply = SettableFuture.create();
+        pendingRequests.put(correlationId, new PendingRequest(reply, transport.getTimeout()));
+        if (stopped && (pendingRequests.remove(correlationId) != null)) {
+            // the reader has stopped meanwhile : nobody would complete the reply
+            throw new TransportException("transport closed");
+        }
+        try {
+            synchronized (transport) {
+                transport.setCorrelationId(correlationId);
+                transportHelper.sendImpl(transport, message);
+            }
+        } catch (TransportException e) {
+            pendingRequests.remove(correlationId);
+            throw e;
+        }
+        return reply;
+    }
+
+    void stop() {
+        stopped = true;
+    }
+
+    @Override
+    public void run() {
+        while (!stopped) {
+            try {
+                Message reply = transportHelper.receiveImpl(transport);
+                PendingRequest request = removePendingRequest();
+                if (request != null) {
+                    request.reply.set(reply);
+                }
+            } catch (TransportException e) {
+                if (e.getErrorMessage() != null) {
+                    // the server has replied with an error
+                    PendingRequest request = removePendingRequest();
+                    if (request != null) {
+                        request.reply.setException(e);
+                    }
+                } else if (e.getCause() instanceof SocketTimeoutException) {
+                    // the other requests may have been sent after the last reply : they have their own deadline
+                    expirePendingRequests(e);
+                } else {
+                    stopped = true;
+                    failPendingRequests(e);
+                }
+            } catch (RuntimeException e) {
+                stopped = true;
+                failPendingRequests(new TransportException(e.getMessage(), e));
+            }
+        }
+        transportHelper.multiplexerStopped(transport, this);
+        failPendingRequests(new TransportException("transport closed"));
+    }
+
+    private PendingRequest removePendingRequest() {
+        int correlationId = transport.getReceivedCorrelationId();
+        PendingRequest request = pendingRequests.remove(correlationId);
+        if (request == null) {
+            LOGGER.warn("no request for reply with correlation id {}", correlationId);
+        }
+        return request;
+    }
+
+    private void failPendingRequests(TransportException e) {
+        List<Integer> correlationIds = new ArrayList<Integer>(pendingRequests.keySet());
+        for (Integer correlationId : correlationIds) {
+            PendingRequest request = pendingRequests.remove(correlationId);
+            if (request != null) {
+                request.reply.setException(e);
+            }
+        }
+    }
+
+    /**
+     * Fails the requests whose deadline has passed.
+     */
+    private void expirePendingRequests(TransportException e) {
+        long now = System.currentTimeMillis();
+        List<Integer> correlationIds = new ArrayList<Integer>(pendingRequests.keySet());
+        for (Integer correlationId : correlationIds) {
+            PendingRequest request = pendingRequests.get(correlationId);
+            if ((request != null) && request.isExpired(now) && (pendingRequests.remove(correlationId) != null)) {
+                request.reply.setException(e);
+            }
+        }
+    }
+
+    private int newCorrelationId() {
+        int correlationId;
+        do {
+            correlationId = nextCorrelationId.incrementAndGet();
+        } while (correlationId == 0); // 0 means no correlation id
+        return correlationId;
+    }
+
+    private static class PendingRequest {
+        private final SettableFuture<Message> reply;
+
+        /**
+         * The time after which the request fails if no reply has been received, or 0 if there is no timeout.
+         */
+        private final long deadline;
+
+        PendingRequest(SettableFuture<Message> reply, int timeout) {
+            this.reply = reply;
+            this.deadline = (timeout > 0) ? (System.currentTimeMillis() + timeout) : 0L;
+        }
+
+        boolean isExpired(long now) {
+            return (deadline > 0L) && (now >= deadline);
+        }
+    }
+}
@@ -0,0 +1,471 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.common.transport;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import static java.lang.String.format;
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+
+/**
+ * A {@link Transport} using a TCP connection. Unlike {@link UDPTransport}, frames are never lost nor truncated,
+ * whatever their size.
+ * <p>
+ * Each frame is sent with a header (size of the content, flags and correlation id) followed by its content,
+ * which is either strings or a binary content (see {@link #sendFrame(ByteBuffer)}). The socket channel is used in
+ * non-blocking mode in order to apply the timeout to reads and writes.
+ * <p>
+ * On the client side, the connection is opened by the first send or receive and, when it's closed by the server or
+ * broken, it's opened again by the next send or receive. On the server side, a client connection is accepted by the
+ * first receive and, when the client disconnects, by the next receive.
+ * <p>
+ * Sending and receiving can be done concurrently (by 2 different threads).
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ *
+ */
+public class TCPTransport implements FramedTransport {
+    public static final String PROTOCOL = "tcp";
+
+    static final ByteOrder BYTE_ORDER = LITTLE_ENDIAN; // let use x86 CPU byte order
+    static final byte BINARY_CONTENT = 0x02;
+
+    /**
+     *  size of an int in bytes.
+     */
+    private static final int INT_SIZE = Integer.SIZE / 8;
+
+    /**
+     * size of a frame header : content size, flags and correlation id.
+     */
+    static final int FRAME_HEADER_SIZE = INT_SIZE + 1 + INT_SIZE;
+
+    /**
+     * Maximum size of a frame content. Bigger sizes are considered as a corrupted stream.
+     */
+    static final int MAX_FRAME_SIZE = 256 * 1024 * 1024;
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final InetSocketAddress serverAddress;
+    private final ServerSocketChannel serverChannel;
+    private final int timeout;
+    private final Object connectLock = new Object();
+    private volatile SocketChannel channel;
+    private final Selector readSelector;
+    private final Selector writeSelector;
+
+    private int correlationId;
+    private int receivedCorrelationId;
+    private ByteBuffer readBuffer;
+    private SocketChannel readChannel; // the channel whose data is in readBuffer
+    private ByteBuffer writeBuffer;
+    private final FrameStrings sentStrings = new FrameStrings(BYTE_ORDER);
+    private final FrameStrings receivedStringsDecoder = new FrameStrings(BYTE_ORDER);
+    private final List<String> framedStrings = new ArrayList<String>();
+    private final LinkedList<String> receivedStrings = new LinkedList<String>();
+    private ByteBuffer receivedFrame;
+
+    /**
+     * Creates the server side of a connection.
+     * @param serverPort The port on which client connections are accepted.
+     * @throws TransportException
+     */
+    public TCPTransport(int serverPort) throws TransportException {
+        serverAddress = null;
+        timeout = 0;
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.socket().bind(new InetSocketAddress(serverPort));
+            readSelector = Selector.open();
+            writeSelector = Selector.open();
+        } catch (IOException e) {
+            throw new TransportException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Creates the client side of a connection.
+     * @param serverAddress The address of the server.
+     * @param serverPort The port of the server.
+     * @param timeout The timeout in milliseconds for connecting, sending and receiving (0 means no timeout).
+     * @throws TransportException
+     */
+    public TCPTransport(InetAddress serverAddress, int serverPort, int timeout) throws TransportException {
+        this.serverAddress = new InetSocketAddress(serverAddress, serverPort);
+        this.timeout = Math.max(0, timeout);
+        serverChannel = null;
+        try {
+            readSelector = Selector.open();
+            writeSelector = Selector.open();
+        } catch (IOException e) {
+            throw new TransportException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void send(String message) throws TransportException {
+        framedStrings.add(message);
+    }
+
+    @Override
+    public void flush() throws TransportException {
+        if (framedStrings.isEmpty()) {
+            return;
+        }
+
+        try {
+            sendFrame(sentStrings.encode(framedStrings), (byte) 0);
+        } finally {
+            framedStrings.clear();
+        }
+    }
+
+    /**
+     * @return always true since both sides of a TCP connection understand frames.
+     */
+    @Override
+    public boolean isFramed() {
+        return true;
+    }
+
+    @Override
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sendFrame(ByteBuffer content) throws TransportException {
+        sendFrame(content, BINARY_CONTENT);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setCorrelationId(int correlationId) {
+        this.correlationId = correlationId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getReceivedCorrelationId() {
+        return receivedCorrelationId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ByteBuffer receiveFrame() throws TransportException {
+        try {
+            while (receivedStrings.isEmpty() && (receivedFrame == null)) {
+                receiveNextFrame();
+            }
+        } catch (SocketTimeoutException e) {
+            throw new TransportException("timeout in receive", e);
+        } catch (IOException e) {
+            throw new TransportException("error in receive", e);
+        }
+
+        ByteBuffer frame = receivedFrame;
+        receivedFrame = null;
+        return frame;
+    }
+
+    @Override
+    public String receive() throws TransportException {
+        try {
+            while (receivedStrings.isEmpty()) {
+                if (receivedFrame != null) {
+                    throw new TransportException("binary frame received while expecting a string");
+                }
+                receiveNextFrame();
+            }
+            return receivedStrings.removeFirst();
+        } catch (SocketTimeoutException e) {
+            throw new TransportException("timeout in receive", e);
+        } catch (IOException e) {
+            throw new TransportException("error in receive", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            closeChannel(null);
+        } finally {
+            try {
+                if (serverChannel != null) {
+                    serverChannel.close();
+                }
+            } finally {
+                readSelector.close();
+                writeSelector.close();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("TCPTransport[");
+        SocketChannel currentChannel = channel;
+        if ((currentChannel != null) && currentChannel.isConnected()) {
+            sb.append(currentChannel.socket().getInetAddress()).append(":");
+            sb.append(currentChannel.socket().getPort());
+        } else {
+            sb.append("not connected");
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+    private void sendFrame(ByteBuffer content, byte flags) throws TransportException {
+        int size = content.remaining();
+        if (size > MAX_FRAME_SIZE) {
+            throw new TransportException(format("message too big (%d bytes)", size));
+        }
+
+        SocketChannel currentChannel = null;
+        try {
+            currentChannel = getChannel();
+            writeBuffer = ensureCapacity(writeBuffer, FRAME_HEADER_SIZE + size);
+            writeBuffer.clear();
+            writeBuffer.putInt(size).put(flags).putInt(correlationId).put(content);
+            writeBuffer.flip();
+            while (writeBuffer.hasRemaining()) {
+                if (currentChannel.write(writeBuffer) == 0) {
+                    waitFor(writeSelector, "timeout in send");
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            // a part of the frame might have been sent : the stream can't be used anymore
+            closeBrokenChannel(currentChannel);
+            throw new TransportException("timeout in send", e);
+        } catch (IOException e) {
+            closeBrokenChannel(currentChannel);
+            throw new TransportException("error in send", e);
+        }
+    }
+
+    private void receiveNextFrame() throws IOException, TransportException {
+        if (serverChannel == null) {
+            SocketChannel currentChannel = getChannel();
+            try {
+                readFrame(currentChannel);
+            } catch (SocketTimeoutException e) {
+                throw e;
+            } catch (IOException e) {
+                // the connection has been closed by the server or is broken : the next call will reconnect
+                closeBrokenChannel(currentChannel);
+                throw e;
+            }
+            return;
+        }
+
+        while (true) {
+            if (channel == null) {
+                accept();
+            }
+            SocketChannel currentChannel = getChannel();
+            try {
+                readFrame(currentChannel);
+                return;
+            } catch (SocketTimeoutException e) {
+                throw e;
+            } catch (IOException e) {
+                // the client has disconnected or its connection is broken : wait for the next one
+                closeChannel(currentChannel);
+            }
+        }
+    }
+
+    private void readFrame(SocketChannel currentChannel) throws IOException, TransportException {
+        if (currentChannel != readChannel) {
+            // the read state is only reset by the receiving thread, which might be using it
+            readBuffer = ensureCapacity(readBuffer, INITIAL_BUFFER_SIZE);
+            readBuffer.clear().flip();
+            readChannel = currentChannel;
+        }
+
+        ensureReadable(currentChannel, FRAME_HEADER_SIZE);
+        int headerPosition = readBuffer.position();
+        int size = readBuffer.getInt(headerPosition);
+        byte flags = readBuffer.get(headerPosition + INT_SIZE);
+        int frameCorrelationId = readBuffer.getInt(headerPosition + INT_SIZE + 1);
+        if ((size < 0) || (size > MAX_FRAME_SIZE)) {
+            throw new TransportException(format("stream corrupted : invalid frame size (%d)", size));
+        }
+
+        // the header is consumed with the content, thus a timeout while reading the content keeps the stream usable
+        ensureReadable(currentChannel, FRAME_HEADER_SIZE + size);
+        readBuffer.position(readBuffer.position() + FRAME_HEADER_SIZE);
+        ByteBuffer content = readBuffer.slice().order(BYTE_ORDER);
+        content.limit(size);
+        readBuffer.position(readBuffer.position() + size);
+
+        receivedCorrelationId = frameCorrelationId;
+        if ((flags & BINARY_CONTENT) != 0) {
+            receivedFrame = content;
+        } else {
+            receivedStringsDecoder.decode(content, receivedStrings);
+        }
+    }
+
+    /**
+     * Reads from the channel until the read buffer contains at least the given number of bytes.
+     */
+    private void ensureReadable(SocketChannel currentChannel, int size) throws IOException {
+        if (readBuffer.capacity() < size) {
+            ByteBuffer newBuffer = ByteBuffer.allocateDirect(Math.max(size, 2 * readBuffer.capacity()));
+            newBuffer.order(BYTE_ORDER).put(readBuffer).flip();
+            readBuffer = newBuffer;
+        }
+
+        while (readBuffer.remaining() < size) {
+            readBuffer.compact();
+            int nbRead;
+            try {
+                nbRead = currentChannel.read(readBuffer);
+            } finally {
+                readBuffer.flip();
+            }
+
+            if (nbRead < 0) {
+                throw new EOFException("connection closed by peer");
+            }
+            if (nbRead == 0) {
+                waitFor(readSelector, "timeout in receive");
+            }
+        }
+    }
+
+    private void waitFor(Selector selector, String timeoutMessage) throws IOException {
+        int nbSelected = selector.select(timeout);
+        selector.selectedKeys().clear();
+        if ((nbSelected == 0) && (timeout > 0)) {
+            throw new SocketTimeoutException(timeoutMessage);
+        }
+    }
+
+    private SocketChannel getChannel() throws IOException {
+        synchronized (connectLock) {
+            if (channel == null) {
+                if (serverChannel != null) {
+                    throw new IOException("no client connected");
+                }
+
+                SocketChannel newChannel = SocketChannel.open();
+                try {
+                    newChannel.socket().connect(serverAddress, timeout);
+                    setChannel(newChannel);
+                } catch (IOException e) {
+                    newChannel.close();
+                    throw e;
+                }
+            }
+            return channel;
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel newChannel = serverChannel.accept();
+        synchronized (connectLock) {
+            try {
+                setChannel(newChannel);
+            } catch (IOException e) {
+                newChannel.close();
+                throw e;
+            }
+        }
+    }
+
+    private void setChannel(SocketChannel newChannel) throws IOException {
+        newChannel.socket().setTcpNoDelay(true);
+        newChannel.configureBlocking(false);
+        newChannel.register(readSelector, SelectionKey.OP_READ);
+        newChannel.register(writeSelector, SelectionKey.OP_WRITE);
+        channel = newChannel;
+    }
+
+    /**
+     * Closes the current channel.
+     * @param expectedChannel If not null, the channel is closed only if it's still the current one (it might have
+     * already been replaced by a new connection).
+     * @throws IOException
+     */
+    private void closeChannel(SocketChannel expectedChannel) throws IOException {
+        SocketChannel oldChannel;
+        synchronized (connectLock) {
+            if ((expectedChannel != null) && (channel != expectedChannel)) {
+                return;
+            }
+            oldChannel = channel;
+            channel = null;
+        }
+        if (oldChannel != null) {
+            try {
+                oldChannel.close();
+            } finally {
+                readSelector.wakeup();
+                writeSelector.wakeup();
+            }
+        }
+    }
+
+    private void closeBrokenChannel(SocketChannel brokenChannel) {
+        if (brokenChannel != null) {
+            try {
+                closeChannel(brokenChannel);
+            } catch (IOException e) {
+                // ignore : the channel is already broken
+            }
+        }
+    }
+
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, int capacity) {
+        if ((buffer == null) || (buffer.capacity() < capacity)) {
+            int newCapacity = Math.max(capacity, (buffer == null) ? INITIAL_BUFFER_SIZE : 2 * buffer.capacity());
+            buffer = ByteBuffer.allocateDirect(newCapacity).order(BYTE_ORDER);
+        }
+        return buffer;
+    }
+}
@@ -21,15 +21,15 @@
  */
 package org.jtestplatform.common.transport;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import org.jtestplatform.common.message.ErrorMessage;
-import org.jtestplatform.common.message.GetTestFrameworks;
 import org.jtestplatform.common.message.Message;
-import org.jtestplatform.common.message.Shutdown;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
 
 /**
  * @author Fabien DUMINY (fduminy at jnode dot org)
@@ -40,9 +40,124 @@ public class TransportHelper {
     static final String TRUE = "1";
     static final String FALSE = "0";
 
+    /**
+     * Correlation id used when a message is not a reply to a request sent asynchronously.
+     */
+    public static final int NO_CORRELATION_ID = 0;
+
+    private final MessageRegistry registry;
+    private final MessageCodec codec;
+    private final Map<Transport, RequestMultiplexer> multiplexers = new IdentityHashMap<Transport, RequestMultiplexer>();
+    private final Map<Transport, Object> receiveLocks = new IdentityHashMap<Transport, Object>();
+
+    public TransportHelper() {
+        this(new MessageRegistry());
+    }
+
+    public TransportHelper(MessageRegistry registry) {
+        this(registry, new BinaryMessageCodec(registry));
+    }
+
+    /**
+     * @param registry The registry of message types that can be received.
+     * @param codec The codec used to send messages in binary frames, when the transport supports it.
+     *              If null, messages are always sent as strings.
+     */
+    public TransportHelper(MessageRegistry registry, MessageCodec codec) {
+        this.registry = registry;
+        this.codec = codec;
+    }
+
+    public MessageRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Sends a request and waits for its reply. When the peer supports framing, the request goes through the
+     * multiplexer of the transport, whose reader thread is then the only one receiving from the transport.
+     * @param transport The transport used to send the request.
+     * @param message The request.
+     * @return The reply.
+     * @throws TransportException
+     */
     public Message sendRequest(Transport transport, Message message) throws TransportException {
-        synchronized (transport) {
-            return sendRequestImpl(transport, message);
+        RequestMultiplexer multiplexer;
+        synchronized (getReceiveLock(transport)) {
+            multiplexer = getMultiplexer(transport, true);
+            if (multiplexer == null) {
+                synchronized (transport) {
+                    return sendRequestImpl(transport, message);
+                }
+            }
+        }
+
+        // a reader thread is receiving the replies
+        return waitReply(multiplexer.sendRequest(message));
+    }
+
+    /**
+     * Sends a request without waiting for its reply, which allows to have several requests in flight on the same
+     * transport. When the peer doesn't support framing (yet), the request is sent synchronously.
+     * @param transport The transport used to send the request.
+     * @param message The request.
+     * @return The future reply.
+     * @throws TransportException
+     */
+    public ListenableFuture<Message> sendRequestAsync(Transport transport, Message message)
+        throws TransportException {
+        RequestMultiplexer multiplexer;
+        synchronized (getReceiveLock(transport)) {
+            // wait for the end of a synchronous request before the reader thread starts receiving
+            multiplexer = getMultiplexer(transport, true);
+        }
+        if (multiplexer != null) {
+            return multiplexer.sendRequest(message);
+        }
+
+        SettableFuture<Message> reply = SettableFuture.create();
+        try {
+            reply.set(sendRequest(transport, message));
+        } catch (TransportException e) {
+            reply.setException(e);
+        }
+        return reply;
+    }
+
+    private RequestMultiplexer getMultiplexer(Transport transport, boolean create) {
+        synchronized (multiplexers) {
+            RequestMultiplexer multiplexer = multiplexers.get(transport);
+            if ((multiplexer == null) && create && (transport instanceof FramedTransport)
+                && ((FramedTransport) transport).isFramed()) {
+                multiplexer = new RequestMultiplexer(this, (FramedTransport) transport);
+                multiplexers.put(transport, multiplexer);
+                multiplexer.start();
+            }
+            return multiplexer;
+        }
+    }
+
+    /**
+     * Called by a multiplexer when it has stopped (for instance because its transport was closed).
+     */
+    void multiplexerStopped(Transport transport, RequestMultiplexer multiplexer) {
+        synchronized (multiplexers) {
+            if (multiplexers.get(transport) == multiplexer) {
+                multiplexers.remove(transport);
+            }
+        }
+    }
+
+    private static Message waitReply(ListenableFuture<Message> reply) throws TransportException {
+        try {
+            return reply.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransportException("interrupted while waiting reply", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TransportException) {
+                throw (TransportException) e.getCause();
+            }
+            throw new TransportException(e.getCause().getMessage(), e.getCause());
         }
     }
 
@@ -57,38 +172,99 @@ public class TransportHelper {
         }
     }
 
+    /**
+     * Sends a reply to a request.
+     * @param transport The transport used to send the reply.
+     * @param message The reply.
+     * @param correlationId The correlation id of the request (see {@link #getCorrelationId(Transport)}).
+     * @throws TransportException
+     */
+    public void send(Transport transport, Message message, int correlationId) throws TransportException {
+        synchronized (transport) {
+            if (transport instanceof FramedTransport) {
+                ((FramedTransport) transport).setCorrelationId(correlationId);
+            }
+            sendImpl(transport, message);
+        }
+    }
+
+    /**
+     * @param transport A transport.
+     * @return The correlation id of the last message received from the transport.
+     */
+    public static int getCorrelationId(Transport transport) {
+        if (transport instanceof FramedTransport) {
+            return ((FramedTransport) transport).getReceivedCorrelationId();
+        }
+        return NO_CORRELATION_ID;
+    }
+
     protected void sendImpl(Transport transport, Message message) throws TransportException {
+        if ((codec != null) && (transport instanceof FramedTransport)) {
+            FramedTransport framedTransport = (FramedTransport) transport;
+            if (framedTransport.isFramed() && codec.canEncode(message)) {
+                framedTransport.sendFrame(codec.encode(message, transport));
+                return;
+            }
+        }
+
         transport.send(message.getClass().getName());
         message.sendWith(transport);
+        if (transport instanceof FramedTransport) {
+            ((FramedTransport) transport).flush();
+        }
     }
 
+    /**
+     * Receives a message. The lock used for sending is not held while waiting for the message, so that other threads
+     * can send messages (for instance replies) through the same transport.
+     * @param transport The transport used to receive the message.
+     * @return The received message.
+     * @throws TransportException if the message can't be received or if the replies of the transport are received by
+     * its multiplexer.
+     */
     public Message receive(Transport transport) throws TransportException {
-        synchronized (transport) {
+        synchronized (getReceiveLock(transport)) {
+            if (getMultiplexer(transport, false) != null) {
+                throw new TransportException("the messages of the transport are received by its multiplexer");
+            }
             return receiveImpl(transport);
         }
     }
 
+    private Object getReceiveLock(Transport transport) {
+        synchronized (receiveLocks) {
+            Object lock = receiveLocks.get(transport);
+            if (lock == null) {
+                lock = new Object();
+                receiveLocks.put(transport, lock);
+            }
+            return lock;
+        }
+    }
+
     protected Message receiveImpl(Transport transport) throws TransportException {
-        String className = transport.receive();
+        if (transport instanceof FramedTransport) {
+            ByteBuffer frame = ((FramedTransport) transport).receiveFrame();
+            if (frame != null) {
+                if (codec == null) {
+                    throw new TransportException("can't decode binary message : no codec");
+                }
+                return checkError(codec.decode(frame, transport));
+            }
+        }
 
-        try {
-            Class<? extends Message> clazz = Class.forName(className).asSubclass(Message.class);
-            Message message = createMessage(clazz);
+        String className = transport.receive();
+        Message message = createMessage(registry.getMessageClass(className));
+        message.receiveFrom(transport);
+        return checkError(message);
+    }
 
-            message.receiveFrom(transport);
-            if (message instanceof ErrorMessage) {
-                throw new TransportException((ErrorMessage) message);
-            }
-            return message;
-        } catch (ClassNotFoundException e) {
-            throw new TransportException("can't find message of type " + className, e);
-        } catch (InstantiationException e) {
-            throw new TransportException("can't create message of type " + className, e);
-        } catch (IllegalAccessException e) {
-            throw new TransportException("can't create message of type " + className, e);
-        } catch (ClassCastException cce) {
-            throw new TransportException(className + " is not a message type", cce);
+    private static Message checkError(Message message) throws TransportException {
+        if (message instanceof ErrorMessage) {
+            throw new TransportException((ErrorMessage) message);
         }
+        return message;
     }
 
     /**
@@ -96,17 +272,21 @@ public class TransportHelper {
      *
      */
     public void stop(Transport transport) throws IOException {
+        RequestMultiplexer multiplexer;
+        synchronized (multiplexers) {
+            multiplexer = multiplexers.remove(transport);
+        }
+        if (multiplexer != null) {
+            multiplexer.stop();
+        }
+        synchronized (receiveLocks) {
+            receiveLocks.remove(transport);
+        }
         transport.close();
     }
 
-    Message createMessage(Class<? extends Message> clazz) throws InstantiationException, IllegalAccessException {
-        if (GetTestFrameworks.class.equals(clazz)) {
-            return GetTestFrameworks.INSTANCE;
-        }
-        if (Shutdown.class.equals(clazz)) {
-            return Shutdown.INSTANCE;
-        }
-        return clazz.newInstance();
+    Message createMessage(Class<? extends Message> clazz) throws TransportException {
+        return registry.create(clazz);
     }
 
     public static int receiveInt(Transport transport) throws TransportException {
@@ -25,29 +25,92 @@ import java.io.IOException;
 import java.net.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.*;
 
 import static java.lang.String.format;
 import static java.nio.ByteOrder.LITTLE_ENDIAN;
 
 /**
+ * A {@link Transport} using UDP.
+ * <p>
+ * In legacy mode, each string is sent as 2 datagrams : its size and its content.<br>
+ * When framing is enabled, all the strings of a message are sent in a single datagram (a frame), which is split
+ * into fragments when it doesn't fit in {@link #MAX_DATAGRAM_SIZE} bytes. Framing is negotiated : until the peer
+ * has proven that it understands frames, the legacy mode is used and the {@link #FRAME_MAGIC} is appended to each
+ * size datagram (old peers only read the first 4 bytes of such a datagram).<br>
+ * A frame contains either strings or a binary content (see {@link #sendFrame(ByteBuffer)}) and a correlation id.
+ * <p>
+ * Strings are encoded in UTF-8 and the buffers used to send and receive datagrams are reused, so that no memory is
+ * allocated per message (except for the received strings and for the frames split into several fragments).
+ * <p>
+ * Sending and receiving can be done concurrently (by 2 different threads).
+ *
  * @author Fabien DUMINY (fduminy at jnode dot org)
  *
  */
-public class UDPTransport implements Transport {
-    static final int NULL_SIZE = Integer.MIN_VALUE;
+public class UDPTransport implements FramedTransport {
+    public static final String PROTOCOL = "udp";
+
+    static final int NULL_SIZE = FrameStrings.NULL_SIZE;
     static final ByteOrder BYTE_ORDER = LITTLE_ENDIAN; // let use x86 CPU byte order
 
+    /**
+     * Marks the beginning of a frame. Also used to announce that framing is supported.
+     */
+    static final int FRAME_MAGIC = 0x4650544A; // "JTPF"
+    static final byte FRAME_VERSION = 1;
+    static final byte LAST_FRAGMENT = 0x01;
+    static final byte BINARY_CONTENT = 0x02;
+
     /**
      *  size of an int in bytes.
      */
     private static final int INT_SIZE = Integer.SIZE / 8;
 
-    private InetAddress address;
-    private int port;
+    /**
+     * size of a frame header : magic, version, flags, frame id, fragment index and correlation id.
+     */
+    static final int FRAME_HEADER_SIZE = INT_SIZE + 1 + 1 + INT_SIZE + 2 + INT_SIZE;
+
+    /**
+     * Maximum size of a datagram : ethernet MTU minus IP and UDP headers.
+     */
+    static final int MAX_DATAGRAM_SIZE = 1500 - 20 - 8;
+
+    private static final int MAX_FRAGMENTS = 0xFFFF + 1;
+    private static final int MAX_INCOMPLETE_FRAMES = 16;
+    private static final int MAX_RECEIVE_SIZE = 0xFFFF;
+
+    private volatile InetAddress address;
+    private volatile int port;
     private final DatagramSocket socket;
-    private DatagramPacket packet;
+    private DatagramPacket sendPacket;
+    private DatagramPacket receivePacket;
+    private final ByteBuffer sendBuffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE).order(BYTE_ORDER);
+    private final FrameStrings sentStrings = new FrameStrings(BYTE_ORDER);
+    private final byte[] receiveBuffer = new byte[MAX_RECEIVE_SIZE];
+    private final ByteBuffer receiveView = ByteBuffer.wrap(receiveBuffer).order(BYTE_ORDER);
+    private final ByteBuffer receivedFrameView = ByteBuffer.wrap(receiveBuffer).order(BYTE_ORDER);
+    private final FrameStrings receivedStringsDecoder = new FrameStrings(BYTE_ORDER);
+
+    private final boolean framingEnabled;
+    private final int timeout;
+    private volatile boolean peerSupportsFraming;
+    private int nextFrameId;
+    private int correlationId;
+    private int receivedCorrelationId;
+    private final List<String> framedStrings = new ArrayList<String>();
+    private final LinkedList<String> receivedStrings = new LinkedList<String>();
+    private ByteBuffer receivedFrame;
+    private final Map<Integer, Fragments> incompleteFrames = new LinkedHashMap<Integer, Fragments>();
 
     public UDPTransport(int serverPort) throws TransportException {
+        this(serverPort, false);
+    }
+
+    public UDPTransport(int serverPort, boolean framingEnabled) throws TransportException {
+        this.framingEnabled = framingEnabled;
+        this.timeout = 0;
         try {
             this.socket = createDatagramSocket(serverPort);
         } catch (SocketException e) {
@@ -57,6 +120,13 @@ public class UDPTransport implements Transport {
     }
 
     public UDPTransport(InetAddress serverAddress, int serverPort, int timeout) throws TransportException {
+        this(serverAddress, serverPort, timeout, false);
+    }
+
+    public UDPTransport(InetAddress serverAddress, int serverPort, int timeout, boolean framingEnabled)
+        throws TransportException {
+        this.framingEnabled = framingEnabled;
+        this.timeout = Math.max(0, timeout);
         try {
             this.socket = createDatagramSocket();
             if (timeout > 0) {
@@ -80,12 +150,18 @@ public class UDPTransport implements Transport {
 
     @Override
     public void send(String message) throws TransportException {
+        if (isFramed()) {
+            framedStrings.add(message);
+            return;
+        }
+
         try {
             if (message == null) {
                 sendInt(NULL_SIZE);
             } else {
-                sendInt(message.length());
-                sendString(message);
+                ByteBuffer bytes = sentStrings.encode(message);
+                sendInt(bytes.remaining());
+                sendBytes(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
             }
         } catch (SocketTimeoutException e) {
             throw new TransportException("timeout in receive", e);
@@ -94,8 +170,88 @@ public class UDPTransport implements Transport {
         }
     }
 
+    @Override
+    public void flush() throws TransportException {
+        if (framedStrings.isEmpty()) {
+            return;
+        }
+
+        try {
+            sendFrame(sentStrings.encode(framedStrings), (byte) 0);
+        } finally {
+            framedStrings.clear();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sendFrame(ByteBuffer content) throws TransportException {
+        if (!isFramed()) {
+            throw new TransportException("framing not negotiated with peer");
+        }
+        sendFrame(content, BINARY_CONTENT);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setCorrelationId(int correlationId) {
+        this.correlationId = correlationId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getReceivedCorrelationId() {
+        return receivedCorrelationId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ByteBuffer receiveFrame() throws TransportException {
+        if (!framingEnabled) {
+            return null;
+        }
+
+        try {
+            while (receivedStrings.isEmpty() && (receivedFrame == null)) {
+                receiveDatagram();
+            }
+        } catch (SocketTimeoutException e) {
+            throw new TransportException("timeout in receive", e);
+        } catch (IOException e) {
+            throw new TransportException("error in receive", e);
+        }
+
+        ByteBuffer frame = receivedFrame;
+        receivedFrame = null;
+        return frame;
+    }
+
     @Override
     public String receive() throws TransportException {
+        if (framingEnabled) {
+            try {
+                while (receivedStrings.isEmpty()) {
+                    if (receivedFrame != null) {
+                        throw new TransportException("binary frame received while expecting a string");
+                    }
+                    receiveDatagram();
+                }
+                return receivedStrings.removeFirst();
+            } catch (SocketTimeoutException e) {
+                throw new TransportException("timeout in receive", e);
+            } catch (IOException e) {
+                throw new TransportException("error in receive", e);
+            }
+        }
+
         try {
             int size = receiveInt();
 
@@ -140,43 +296,189 @@ public class UDPTransport implements Transport {
         return sb.toString();
     }
 
-    private void sendInt(int integer) throws IOException {
-        sendBytes(ByteBuffer.allocate(INT_SIZE).order(BYTE_ORDER).putInt(integer).array());
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isFramed() {
+        return framingEnabled && peerSupportsFraming;
+    }
+
+    @Override
+    public int getTimeout() {
+        return timeout;
     }
 
-    private void sendString(String message) throws IOException {
-        sendBytes(message.getBytes());
+    private void sendInt(int integer) throws IOException {
+        sendBuffer.clear();
+        sendBuffer.putInt(integer);
+        if (framingEnabled) {
+            // announce that we support framing
+            sendBuffer.putInt(FRAME_MAGIC);
+        }
+        sendBytes(sendBuffer.array(), 0, sendBuffer.position());
     }
 
-    private void sendBytes(byte[] buffer) throws IOException {
-        DatagramPacket packet = getDatagramPacket(buffer);
-        packet.setAddress(address);
-        packet.setPort(port);
-        socket.send(packet);
+    private void sendBytes(byte[] buffer, int offset, int length) throws IOException {
+        sendPacket = getDatagramPacket(sendPacket, buffer, offset, length);
+        sendPacket.setAddress(address);
+        sendPacket.setPort(port);
+        socket.send(sendPacket);
     }
 
     private int receiveInt() throws IOException, TransportException {
-        return ByteBuffer.wrap(receiveBytes(INT_SIZE)).order(BYTE_ORDER).getInt();
+        return receiveBytes(INT_SIZE).getInt();
     }
 
     private String receiveString(int length) throws IOException, TransportException {
-        return new String(receiveBytes(length));
+        if (length > MAX_RECEIVE_SIZE) {
+            throw new TransportException(format("stream corrupted : message size too big (%d)", length));
+        }
+        return receivedStringsDecoder.decode(receiveBytes(length), length);
     }
 
-    private byte[] receiveBytes(int length) throws IOException, TransportException {
-        byte[] buffer = new byte[length];
-        DatagramPacket packet = getDatagramPacket(buffer);
-        socket.receive(packet);
-        if (address == null) {
-            address = packet.getAddress();
-            port = packet.getPort();
+    private void sendFrame(ByteBuffer content, byte contentFlags) throws TransportException {
+        int size = content.remaining();
+        int maxFragmentSize = MAX_DATAGRAM_SIZE - FRAME_HEADER_SIZE;
+        int nbFragments = Math.max(1, (size + maxFragmentSize - 1) / maxFragmentSize);
+        if (nbFragments > MAX_FRAGMENTS) {
+            throw new TransportException(format("message too big (%d bytes)", size));
+        }
+
+        try {
+            int frameId = nextFrameId++;
+            for (int index = 0; index < nbFragments; index++) {
+                int length = Math.min(maxFragmentSize, content.remaining());
+                byte flags = (byte) (contentFlags | ((index == (nbFragments - 1)) ? LAST_FRAGMENT : 0));
+
+                sendBuffer.clear();
+                sendBuffer.putInt(FRAME_MAGIC).put(FRAME_VERSION).put(flags).putInt(frameId).putShort((short) index)
+                          .putInt(correlationId);
+                int limit = content.limit();
+                content.limit(content.position() + length);
+                sendBuffer.put(content);
+                content.limit(limit);
+                sendBytes(sendBuffer.array(), 0, sendBuffer.position());
+            }
+        } catch (SocketTimeoutException e) {
+            throw new TransportException("timeout in send", e);
+        } catch (IOException e) {
+            throw new TransportException("error in send", e);
+        }
+    }
+
+    private void receiveDatagram() throws IOException, TransportException {
+        int length = receivePacket(MAX_RECEIVE_SIZE);
+        ByteBuffer datagram = receiveView;
+        datagram.clear();
+        datagram.limit(length);
+
+        if ((length >= FRAME_HEADER_SIZE) && (datagram.getInt(0) == FRAME_MAGIC)) {
+            peerSupportsFraming = true;
+            receiveFragment(datagram);
+        } else {
+            receiveLegacyString(datagram);
+        }
+    }
+
+    private void receiveFragment(ByteBuffer datagram) throws TransportException {
+        datagram.position(INT_SIZE);
+        byte version = datagram.get();
+        if (version != FRAME_VERSION) {
+            throw new TransportException(format("unsupported frame version (%d)", version));
+        }
+        byte flags = datagram.get();
+        boolean last = (flags & LAST_FRAGMENT) != 0;
+        boolean binary = (flags & BINARY_CONTENT) != 0;
+        int frameId = datagram.getInt();
+        int index = datagram.getShort() & 0xFFFF;
+        int frameCorrelationId = datagram.getInt();
+
+        if ((index == 0) && last) {
+            // the frame content is used directly from the receive buffer
+            receivedFrameView.limit(datagram.limit());
+            receivedFrameView.position(datagram.position());
+            receiveFrameContent(receivedFrameView, binary, frameCorrelationId);
+            return;
+        }
+
+        Fragments fragments = incompleteFrames.get(frameId);
+        if (fragments == null) {
+            if (incompleteFrames.size() >= MAX_INCOMPLETE_FRAMES) {
+                // forget the oldest frame : some of its fragments were probably lost
+                Iterator<Integer> it = incompleteFrames.keySet().iterator();
+                it.next();
+                it.remove();
+            }
+            fragments = new Fragments();
+            incompleteFrames.put(frameId, fragments);
+        }
+
+        byte[] fragment = new byte[datagram.remaining()];
+        datagram.get(fragment);
+        if (fragments.add(index, fragment, last)) {
+            incompleteFrames.remove(frameId);
+            receiveFrameContent(ByteBuffer.wrap(fragments.join()).order(BYTE_ORDER), binary, frameCorrelationId);
         }
-        if (packet.getLength() < buffer.length) {
+    }
+
+    private void receiveFrameContent(ByteBuffer content, boolean binary, int frameCorrelationId)
+        throws TransportException {
+        receivedCorrelationId = frameCorrelationId;
+        if (binary) {
+            receivedFrame = content;
+        } else {
+            receivedStringsDecoder.decode(content, receivedStrings);
+        }
+    }
+
+    private void receiveLegacyString(ByteBuffer datagram) throws IOException, TransportException {
+        int length = datagram.remaining();
+        if (length == (2 * INT_SIZE)) {
+            if (datagram.getInt(INT_SIZE) != FRAME_MAGIC) {
+                throw new TransportException("stream corrupted : unexpected data after message size");
+            }
+            peerSupportsFraming = true;
+        } else if (length != INT_SIZE) {
+            throw new TransportException(
+                format("stream corrupted : expected %d bytes but %s bytes were received", INT_SIZE, length));
+        }
+
+        int size = datagram.getInt();
+        String message = null;
+        if (size != NULL_SIZE) {
+            if (size < 0) {
+                throw new TransportException(format("stream corrupted : received negative message size (%d)", size));
+            }
+            message = receiveString(size);
+        }
+        receivedCorrelationId = 0;
+        receivedStrings.add(message);
+    }
+
+    /**
+     * @return The received bytes. The buffer is only valid until the next receive.
+     */
+    private ByteBuffer receiveBytes(int length) throws IOException, TransportException {
+        int receivedLength = receivePacket(length);
+        if (receivedLength < length) {
             throw new TransportException(
-                format("stream corrupted : expected %d bytes but only %s bytes were received", buffer.length,
-                       packet.getLength()));
+                format("stream corrupted : expected %d bytes but only %s bytes were received", length,
+                       receivedLength));
         }
-        return buffer;
+        receiveView.clear();
+        receiveView.limit(length);
+        return receiveView;
+    }
+
+    private int receivePacket(int length) throws IOException {
+        receivePacket = getDatagramPacket(receivePacket, receiveBuffer, 0, length);
+        socket.receive(receivePacket);
+        if (address == null) {
+            address = receivePacket.getAddress();
+            port = receivePacket.getPort();
+        }
+        return receivePacket.getLength();
     }
 
     public InetAddress getAddress() {
@@ -187,12 +489,44 @@ public class UDPTransport implements Transport {
         return port;
     }
 
-    private DatagramPacket getDatagramPacket(byte[] buffer) {
+    private static DatagramPacket getDatagramPacket(DatagramPacket packet, byte[] buffer, int offset, int length) {
         if (packet == null) {
-            packet = new DatagramPacket(buffer, buffer.length);
+            packet = new DatagramPacket(buffer, offset, length);
         } else {
-            packet.setData(buffer);
+            packet.setData(buffer, offset, length);
         }
         return packet;
     }
+
+    /**
+     * Fragments of a frame, received so far.
+     */
+    private static class Fragments {
+        private final SortedMap<Integer, byte[]> fragments = new TreeMap<Integer, byte[]>();
+        private int nbFragments = -1;
+        private int size;
+
+        /**
+         * @return true if the frame is complete.
+         */
+        boolean add(int index, byte[] fragment, boolean last) {
+            if (fragments.put(index, fragment) == null) {
+                size += fragment.length;
+            }
+            if (last) {
+                nbFragments = index + 1;
+            }
+            return fragments.size() == nbFragments;
+        }
+
+        byte[] join() {
+            byte[] result = new byte[size];
+            int offset = 0;
+            for (byte[] fragment : fragments.values()) {
+                System.arraycopy(fragment, 0, result, offset, fragment.length);
+                offset += fragment.length;
+            }
+            return result;
+        }
+    }
 }
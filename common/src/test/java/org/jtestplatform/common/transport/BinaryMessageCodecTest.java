@@ -0,0 +1,209 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.common.transport;
+
+import org.jtestplatform.common.message.ErrorMessage;
+import org.jtestplatform.common.message.Message;
+import org.jtestplatform.common.message.RunTest;
+import org.jtestplatform.common.message.TestResult;
+import org.jtestplatform.common.transport.TransportHelperTest.MessageData;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.theories.Theories;
+import org.junit.experimental.theories.Theory;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ *
+ */
+@RunWith(Theories.class)
+public class BinaryMessageCodecTest {
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    private final BinaryMessageCodec codec = new BinaryMessageCodec();
+    private final Transport transport = mock(Transport.class);
+    private final Transport peerTransport = mock(Transport.class);
+
+    @Theory
+    public void testEncodeAndDecode(MessageData data) throws TransportException {
+        // prepare
+        Message message = data.createMessage();
+
+        // test
+        boolean canEncode = codec.canEncode(message);
+        Message actualMessage = codec.decode(codec.encode(message, transport), transport);
+
+        // verify
+        assertThat(canEncode).as("canEncode").isTrue();
+        data.verifyMessage(actualMessage);
+    }
+
+    @Test
+    public void testEncodeAndDecode_nonAsciiStrings() throws TransportException {
+        // prepare
+        String test = "caf\u00e9 \u20ac \ud83d\ude00";
+        TestResult message = new TestResult(null, test);
+        message.setFailure("type", "", null, true);
+
+        // test
+        TestResult actualMessage = (TestResult) codec.decode(codec.encode(message, transport), transport);
+
+        // verify
+        assertThat(actualMessage).isEqualToComparingFieldByField(message);
+    }
+
+    @Test
+    public void testEncode_isCompact() throws TransportException {
+        // test
+        ByteBuffer buffer = codec.encode(new RunTest("junit", "Test#test"), transport);
+
+        // verify : version, type id, (size + 1) and bytes for each string, capabilities
+        assertThat(buffer.remaining()).isEqualTo(1 + 1 + (1 + 5) + (1 + 9) + 1);
+    }
+
+    @Test
+    public void testEncodeAndDecode_deflated() throws TransportException {
+        // prepare
+        TestResult message = failingTestResult();
+        BinaryMessageCodec peer = new BinaryMessageCodec();
+        int plainSize = codec.encode(message, transport).remaining();
+        // the peer announces compression
+        codec.decode(peer.encode(new RunTest("junit", "Test#test"), peerTransport), transport);
+
+        // test
+        ByteBuffer buffer = codec.encode(message, transport);
+        int deflatedSize = buffer.remaining();
+        TestResult actualMessage = (TestResult) peer.decode(buffer, peerTransport);
+
+        // verify
+        assertThat(codec.isPeerSupportingCompression(transport)).as("peerSupportsCompression").isTrue();
+        assertThat(deflatedSize).as("deflated size").isLessThan(plainSize / 2);
+        assertThat(actualMessage).isEqualToComparingFieldByField(message);
+    }
+
+    @Test
+    public void testEncodeAndDecode_deflatedSeveralTimes() throws TransportException {
+        // prepare
+        TestResult message = failingTestResult();
+        BinaryMessageCodec peer = new BinaryMessageCodec();
+        codec.decode(peer.encode(new RunTest("junit", "Test#test"), peerTransport), transport);
+        ByteBuffer firstBuffer = codec.encode(message, transport);
+        int firstSize = firstBuffer.remaining();
+        peer.decode(firstBuffer, peerTransport);
+
+        // test
+        ByteBuffer buffer = codec.encode(message, transport);
+        int size = buffer.remaining();
+        TestResult actualMessage = (TestResult) peer.decode(buffer, peerTransport);
+
+        // verify
+        assertThat(size).as("size with the reused deflater").isEqualTo(firstSize);
+        assertThat(actualMessage).isEqualToComparingFieldByField(message);
+    }
+
+    @Test
+    public void testEncode_peerWithoutCompression() throws TransportException {
+        // prepare
+        TestResult message = failingTestResult();
+        int plainSize = codec.encode(message, transport).remaining();
+        BinaryMessageCodec peer = new BinaryMessageCodec(new MessageRegistry(), false);
+        codec.decode(peer.encode(new RunTest("junit", "Test#test"), peerTransport), transport);
+
+        // test
+        ByteBuffer buffer = codec.encode(message, transport);
+
+        // verify
+        assertThat(codec.isPeerSupportingCompression(transport)).as("peerSupportsCompression").isFalse();
+        assertThat(buffer.remaining()).as("size").isEqualTo(plainSize);
+        assertThat(peer.decode(buffer, peerTransport)).isEqualToComparingFieldByField(message);
+    }
+
+    @Test
+    public void testEncode_compressionPerTransport() throws TransportException {
+        // prepare
+        TestResult message = failingTestResult();
+        int plainSize = codec.encode(message, transport).remaining();
+        BinaryMessageCodec peer = new BinaryMessageCodec();
+        codec.decode(peer.encode(new RunTest("junit", "Test#test"), peerTransport), transport);
+        Transport otherTransport = mock(Transport.class);
+
+        // test
+        ByteBuffer buffer = codec.encode(message, otherTransport);
+
+        // verify
+        assertThat(codec.isPeerSupportingCompression(transport)).as("transport supports compression").isTrue();
+        assertThat(codec.isPeerSupportingCompression(otherTransport)).as("otherTransport supports compression")
+                                                                     .isFalse();
+        assertThat(buffer.remaining()).as("size").isEqualTo(plainSize);
+    }
+
+    private static TestResult failingTestResult() {
+        StringBuilder stackTrace = new StringBuilder("java.lang.AssertionError: a failure");
+        for (int i = 0; i < 20; i++) {
+            stackTrace.append("\n\tat org.junit.runners.ParentRunner.runLeaf(ParentRunner.java:").append(i).append(')');
+        }
+        TestResult message = new TestResult("junit", "Test#test");
+        message.setFailure(AssertionError.class.getName(), stackTrace.toString(), "a failure", false);
+        message.setSystemOut("out");
+        return message;
+    }
+
+    @Test
+    public void testCanEncode_unknownMessage() {
+        assertThat(codec.canEncode(new MockMessage())).isFalse();
+    }
+
+    @Test
+    public void testDecode_unknownTypeId() throws TransportException {
+        thrown.expect(TransportException.class);
+        thrown.expectMessage("unknown message type id (127)");
+
+        codec.decode(ByteBuffer.wrap(new byte[] { BinaryMessageCodec.SCHEMA_VERSION, 127 }), transport);
+    }
+
+    @Test
+    public void testDecode_unsupportedVersion() throws TransportException {
+        thrown.expect(TransportException.class);
+        thrown.expectMessage("unsupported schema version (2)");
+
+        codec.decode(ByteBuffer.wrap(new byte[] { 2, 0 }), transport);
+    }
+
+    @Test
+    public void testDecode_truncatedMessage() throws TransportException {
+        thrown.expect(TransportException.class);
+        thrown.expectMessage("stream corrupted");
+        BinaryMessageCodec peer = new BinaryMessageCodec(new MessageRegistry(), false);
+        ByteBuffer buffer = peer.encode(new ErrorMessage("an error"), peerTransport);
+        buffer.limit(buffer.limit() - 1);
+
+        codec.decode(buffer, transport);
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.common.transport;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.jtestplatform.common.transport.UDPTransport.BYTE_ORDER;
+
+/**
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+public class FrameStringsTest {
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testEncodeAndDecode() throws TransportException {
+        // prepare
+        char[] chars = new char[10000];
+        Arrays.fill(chars, '\u00e9');
+        List<String> strings = Arrays.asList("a value", null, "", "\u20ac\ud83d\ude00", new String(chars));
+        FrameStrings frameStrings = new FrameStrings(BYTE_ORDER);
+
+        // test
+        ByteBuffer content = frameStrings.encode(strings);
+        List<String> actualStrings = new ArrayList<String>();
+        frameStrings.decode(content, actualStrings);
+
+        // verify
+        assertThat(actualStrings).isEqualTo(strings);
+    }
+
+    @Test
+    public void testEncode_string() {
+        // prepare
+        FrameStrings frameStrings = new FrameStrings(BYTE_ORDER);
+
+        // test
+        ByteBuffer bytes = frameStrings.encode("\u00e9t\u00e9");
+
+        // verify
+        byte[] actualBytes = new byte[bytes.remaining()];
+        bytes.get(actualBytes);
+        assertThat(actualBytes).isEqualTo("\u00e9t\u00e9".getBytes(FrameStrings.CHARSET));
+    }
+
+    @Test
+    public void testEncode_reusesBuffer() {
+        // prepare
+        FrameStrings frameStrings = new FrameStrings(BYTE_ORDER);
+        ByteBuffer bytes1 = frameStrings.encode("value1");
+
+        // test
+        ByteBuffer bytes2 = frameStrings.encode(Arrays.asList("value2", "value3"));
+
+        // verify
+        assertThat(bytes2).isSameAs(bytes1);
+    }
+
+    @Test
+    public void testEncode_loneSurrogate() throws TransportException {
+        // prepare
+        FrameStrings frameStrings = new FrameStrings(BYTE_ORDER);
+
+        // test
+        ByteBuffer content = frameStrings.encode(Arrays.asList("a\ud83db"));
+
+        // verify
+        List<String> actualStrings = new ArrayList<String>();
+        frameStrings.decode(content, actualStrings);
+        assertThat(actualStrings).containsExactly("a?b");
+    }
+
+    @Test
+    public void testDecode_invalidSize() throws TransportException {
+        // prepare
+        ByteBuffer content = ByteBuffer.allocate(5).order(BYTE_ORDER).putInt(2).put((byte) 'a');
+        content.flip();
+        FrameStrings frameStrings = new FrameStrings(BYTE_ORDER);
+
+        thrown.expect(TransportException.class);
+        thrown.expectMessage("stream corrupted : invalid string size in frame (2)");
+
+        // test
+        frameStrings.decode(content, new ArrayList<String>());
+    }
+}
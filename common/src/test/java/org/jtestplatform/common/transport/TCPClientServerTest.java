@@ -0,0 +1,268 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.common.transport;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import org.apache.commons.lang3.mutable.MutableObject;
+import org.jtestplatform.common.message.Message;
+import org.jtestplatform.common.message.TestResult;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Test a client and a server using {@link org.jtestplatform.common.transport.TCPTransport}.
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+public class TCPClientServerTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TCPClientServerTest.class);
+
+    private final String REQUEST = "REQUEST";
+    private final String ANSWER = "ANSWER";
+
+    private final int SERVER_PORT = 12001;
+    private final int TIMEOUT = 10000;
+
+    @Test
+    public void testClientAndServer() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        MutableObject<String> actualRequest = new MutableObject<String>();
+        Future<Object> server = executor.submit(createServer(actualRequest));
+        MutableObject<String> actualAnswer = new MutableObject<String>();
+        Future<Object> client = executor.submit(createClient(actualAnswer));
+
+        MoreExecutors.shutdownAndAwaitTermination(executor, 10, MINUTES);
+
+        server.get();
+        client.get();
+        assertThat(actualRequest.getValue()).as("request").isEqualTo(REQUEST);
+        assertThat(actualAnswer.getValue()).as("answer").isEqualTo(ANSWER);
+    }
+
+    @Test
+    public void testSendAndReceive_bigMessage() throws Exception {
+        // prepare
+        char[] chars = new char[5 * 1024 * 1024];
+        Arrays.fill(chars, '\u00e9');
+        String systemOut = new String(chars);
+        final TestResult result = new TestResult("framework", "test");
+        result.setFailure("failureType", "failureContent", "failureMessage", false);
+        result.setSystemOut(systemOut);
+        final TCPTransport serverTransport = new TCPTransport(SERVER_PORT);
+        TCPTransport clientTransport = new TCPTransport(InetAddress.getLocalHost(), SERVER_PORT, TIMEOUT);
+        final TransportHelper helper = new TransportHelper();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            // test
+            clientTransport.setCorrelationId(3);
+            clientTransport.send("string");
+            clientTransport.send(null);
+            clientTransport.flush();
+            String actualString1 = serverTransport.receive();
+            String actualString2 = serverTransport.receive();
+            int actualStringsCorrelationId = serverTransport.getReceivedCorrelationId();
+            // the result is bigger than the socket buffers : it must be received while it's sent
+            Future<Object> sent = executor.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    helper.send(serverTransport, result, 4);
+                    return null;
+                }
+            });
+            Message actualResult = helper.receive(clientTransport);
+            sent.get();
+            int actualResultCorrelationId = clientTransport.getReceivedCorrelationId();
+
+            // verify
+            assertThat(actualString1).as("string1").isEqualTo("string");
+            assertThat(actualString2).as("string2").isNull();
+            assertThat(actualStringsCorrelationId).as("strings correlation id").isEqualTo(3);
+            assertThat(((TestResult) actualResult).getSystemOut()).as("systemOut").isEqualTo(systemOut);
+            assertThat(actualResultCorrelationId).as("result correlation id").isEqualTo(4);
+        } finally {
+            executor.shutdownNow();
+            clientTransport.close();
+            serverTransport.close();
+        }
+    }
+
+    @Test
+    public void testReceive_clientReconnects() throws Exception {
+        // prepare
+        TCPTransport serverTransport = new TCPTransport(SERVER_PORT);
+        try {
+            TCPTransport clientTransport = new TCPTransport(InetAddress.getLocalHost(), SERVER_PORT, TIMEOUT);
+            clientTransport.sendFrame(ByteBuffer.wrap(new byte[]{1}));
+            clientTransport.close();
+            clientTransport = new TCPTransport(InetAddress.getLocalHost(), SERVER_PORT, TIMEOUT);
+            clientTransport.sendFrame(ByteBuffer.wrap(new byte[]{2}));
+
+            // test
+            ByteBuffer frame1 = serverTransport.receiveFrame();
+            byte actualContent1 = frame1.get();
+            ByteBuffer frame2 = serverTransport.receiveFrame();
+            byte actualContent2 = frame2.get();
+            clientTransport.close();
+
+            // verify
+            assertThat(actualContent1).as("content1").isEqualTo((byte) 1);
+            assertThat(actualContent2).as("content2").isEqualTo((byte) 2);
+        } finally {
+            serverTransport.close();
+        }
+    }
+
+    @Test
+    public void testSend_afterTheServerHasClosedTheConnection() throws Exception {
+        // prepare
+        TCPTransport clientTransport = new TCPTransport(InetAddress.getLocalHost(), SERVER_PORT, TIMEOUT);
+        try {
+            TCPTransport serverTransport = new TCPTransport(SERVER_PORT);
+            clientTransport.sendFrame(ByteBuffer.wrap(new byte[]{1}));
+            serverTransport.receiveFrame();
+            serverTransport.close();
+            try {
+                clientTransport.receiveFrame();
+                fail("TransportException expected");
+            } catch (TransportException e) {
+                // expected : the connection has been closed by the server
+            }
+            serverTransport = new TCPTransport(SERVER_PORT);
+
+            try {
+                // test
+                clientTransport.sendFrame(ByteBuffer.wrap(new byte[]{2}));
+                byte actualContent = serverTransport.receiveFrame().get();
+
+                // verify
+                assertThat(actualContent).as("content").isEqualTo((byte) 2);
+            } finally {
+                serverTransport.close();
+            }
+        } finally {
+            clientTransport.close();
+        }
+    }
+
+    @Test
+    public void testReceive_afterAClientHasResetTheConnection() throws Exception {
+        // prepare
+        TCPTransport serverTransport = new TCPTransport(SERVER_PORT);
+        try {
+            Socket resetClient = new Socket(InetAddress.getLocalHost(), SERVER_PORT);
+            resetClient.getOutputStream().write(new byte[]{1, 2});
+            resetClient.setSoLinger(true, 0); // the connection is reset when the socket is closed
+            resetClient.close();
+            TCPTransport clientTransport = new TCPTransport(InetAddress.getLocalHost(), SERVER_PORT, TIMEOUT);
+            try {
+                clientTransport.sendFrame(ByteBuffer.wrap(new byte[]{3}));
+
+                // test
+                byte actualContent = serverTransport.receiveFrame().get();
+
+                // verify
+                assertThat(actualContent).as("content").isEqualTo((byte) 3);
+            } finally {
+                clientTransport.close();
+            }
+        } finally {
+            serverTransport.close();
+        }
+    }
+
+    private Callable<Object> createServer(final MutableObject<String> actualRequest) {
+        return new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                LOGGER.info("SERVER: receiving request");
+                TCPTransport transport = new TCPTransport(SERVER_PORT);
+                try {
+                    String request = transport.receive();
+                    actualRequest.setValue(request);
+
+                    LOGGER.info("SERVER: sending answer");
+                    transport.send(ANSWER);
+                    transport.flush();
+                } finally {
+                    transport.close();
+                }
+
+                LOGGER.info("SERVER: finished");
+                return null;
+            }
+        };
+    }
+
+    private Callable<Object> createClient(final MutableObject<String> actualAnswer) {
+        return new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                LOGGER.info("CLIENT: sending request");
+                TCPTransport transport = new TCPTransport(InetAddress.getLocalHost(), SERVER_PORT, TIMEOUT);
+                try {
+                    sendWithRetry(transport, REQUEST);
+
+                    LOGGER.info("CLIENT: receiving answer");
+                    String answer = transport.receive();
+                    actualAnswer.setValue(answer);
+                } finally {
+                    transport.close();
+                }
+
+                LOGGER.info("CLIENT: finished");
+                return null;
+            }
+        };
+    }
+
+    private static void sendWithRetry(TCPTransport transport, String message) throws Exception {
+        transport.send(message);
+        for (int i = 0; ; i++) {
+            try {
+                transport.flush();
+                return;
+            } catch (TransportException e) {
+                // the server might not be listening yet
+                if (i >= 10) {
+                    throw e;
+                }
+                transport.send(message);
+                Thread.sleep(100);
+            }
+        }
+    }
+}
@@ -32,17 +32,29 @@ import org.junit.experimental.theories.Theories;
 import org.junit.experimental.theories.Theory;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InOrder;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.reflections.Reflections;
 
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.Collections.singleton;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.jtestplatform.common.transport.TransportHelper.FALSE;
 import static org.jtestplatform.common.transport.TransportHelper.TRUE;
+import static org.junit.Assert.fail;
 import static org.junit.Assume.assumeFalse;
 import static org.mockito.Mockito.*;
 
@@ -83,8 +95,7 @@ public class TransportHelperTest {
             }
 
             @Override
-            Message createMessage(Class<? extends Message> clazz)
-                throws InstantiationException, IllegalAccessException {
+            Message createMessage(Class<? extends Message> clazz) throws TransportException {
                 return answerMessage;
             }
         };
@@ -98,8 +109,232 @@ public class TransportHelperTest {
         assertThat(actualAnswerMessage).as("actual answer").isSameAs(answerMessage);
     }
 
+    @Test
+    public void testSendRequestAsync_repliesOutOfOrder() throws Exception {
+        // prepare
+        final BinaryMessageCodec codec = new BinaryMessageCodec();
+        final Message answer1 = new TestFrameworks(Arrays.asList("framework1"));
+        final Message answer2 = new TestFrameworks(Arrays.asList("framework2"));
+        final CountDownLatch requestsSent = new CountDownLatch(2);
+        final AtomicInteger receivedCorrelationId = new AtomicInteger();
+        FramedTransport transport = mock(FramedTransport.class);
+        when(transport.isFramed()).thenReturn(true);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                requestsSent.countDown();
+                return null;
+            }
+        }).when(transport).sendFrame(any(ByteBuffer.class));
+        when(transport.receiveFrame()).thenAnswer(new Answer<ByteBuffer>() {
+            private int nbCalls;
+
+            @Override
+            public ByteBuffer answer(InvocationOnMock invocation) throws Throwable {
+                requestsSent.await();
+                nbCalls++;
+                if (nbCalls > 2) {
+                    throw new TransportException("closed");
+                }
+                // the second request is answered first
+                receivedCorrelationId.set(3 - nbCalls);
+                return codec.encode((nbCalls == 1) ? answer2 : answer1, (Transport) invocation.getMock());
+            }
+        });
+        when(transport.getReceivedCorrelationId()).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) throws Throwable {
+                return receivedCorrelationId.get();
+            }
+        });
+        TransportHelper helper = new TransportHelper();
+
+        // test
+        Future<Message> reply1 = helper.sendRequestAsync(transport, GetTestFrameworks.INSTANCE);
+        Future<Message> reply2 = helper.sendRequestAsync(transport, GetTestFrameworks.INSTANCE);
+
+        // verify
+        assertThat(((TestFrameworks) reply1.get(1, TimeUnit.SECONDS)).getFrameworks()).as("reply1")
+            .containsExactly("framework1");
+        assertThat(((TestFrameworks) reply2.get(1, TimeUnit.SECONDS)).getFrameworks()).as("reply2")
+            .containsExactly("framework2");
+        InOrder inOrder = inOrder(transport);
+        inOrder.verify(transport).setCorrelationId(1);
+        inOrder.verify(transport).setCorrelationId(2);
+    }
+
+    @Test
+    public void testSendRequestAsync_socketTimeoutBeforeTheDeadline() throws Exception {
+        // prepare
+        final BinaryMessageCodec codec = new BinaryMessageCodec();
+        final CountDownLatch requestSent = new CountDownLatch(1);
+        FramedTransport transport = createTimingOutTransport(requestSent, 10000);
+        when(transport.receiveFrame()).thenAnswer(new Answer<ByteBuffer>() {
+            private int nbCalls;
+
+            @Override
+            public ByteBuffer answer(InvocationOnMock invocation) throws Throwable {
+                requestSent.await();
+                nbCalls++;
+                if (nbCalls == 1) {
+                    // the socket timeout of a receive started before the request was sent
+                    throw new TransportException("timeout in receive", new SocketTimeoutException());
+                }
+                if (nbCalls > 2) {
+                    throw new TransportException("closed");
+                }
+                return codec.encode(new TestFrameworks(Arrays.asList("framework1")), (Transport) invocation.getMock());
+            }
+        });
+        TransportHelper helper = new TransportHelper();
+
+        // test
+        Future<Message> reply = helper.sendRequestAsync(transport, GetTestFrameworks.INSTANCE);
+
+        // verify
+        assertThat(((TestFrameworks) reply.get(1, TimeUnit.SECONDS)).getFrameworks()).as("reply")
+            .containsExactly("framework1");
+    }
+
+    @Test
+    public void testSendRequestAsync_socketTimeoutAfterTheDeadline() throws Exception {
+        // prepare
+        final CountDownLatch requestSent = new CountDownLatch(1);
+        FramedTransport transport = createTimingOutTransport(requestSent, 10);
+        when(transport.receiveFrame()).thenAnswer(new Answer<ByteBuffer>() {
+            @Override
+            public ByteBuffer answer(InvocationOnMock invocation) throws Throwable {
+                requestSent.await();
+                Thread.sleep(20);
+                throw new TransportException("timeout in receive", new SocketTimeoutException());
+            }
+        });
+        TransportHelper helper = new TransportHelper();
+
+        // test
+        Future<Message> reply = helper.sendRequestAsync(transport, GetTestFrameworks.INSTANCE);
+
+        // verify
+        try {
+            reply.get(1, TimeUnit.SECONDS);
+            fail("the request should have expired");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(TransportException.class).hasMessage("timeout in receive");
+        }
+        helper.stop(transport);
+    }
+
+    @Test
+    public void testSendRequestAsync_duringASynchronousRequest() throws Exception {
+        // prepare
+        final BinaryMessageCodec codec = new BinaryMessageCodec();
+        final MessageData answerData = MessageData.TESTFRAMEWORKS;
+        final AtomicBoolean framed = new AtomicBoolean(false);
+        final AtomicInteger nbReceiving = new AtomicInteger();
+        final AtomicInteger maxReceiving = new AtomicInteger();
+        final CountDownLatch synchronousReceive = new CountDownLatch(1);
+        final CountDownLatch requestSent = new CountDownLatch(1);
+        final FramedTransport transport = mock(FramedTransport.class);
+        when(transport.isFramed()).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                return framed.get();
+            }
+        });
+        when(transport.getReceivedCorrelationId()).thenReturn(1);
+        when(transport.receive()).thenReturn(answerData.messageClass.getName(), answerData.expectedParts);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                requestSent.countDown();
+                return null;
+            }
+        }).when(transport).sendFrame(any(ByteBuffer.class));
+        when(transport.receiveFrame()).thenAnswer(new Answer<ByteBuffer>() {
+            private int nbCalls;
+
+            @Override
+            public ByteBuffer answer(InvocationOnMock invocation) throws Throwable {
+                maxReceiving.set(Math.max(maxReceiving.get(), nbReceiving.incrementAndGet()));
+                try {
+                    nbCalls++;
+                    if (nbCalls == 1) {
+                        // the peer enables framing while the synchronous request is waiting for its reply
+                        framed.set(true);
+                        synchronousReceive.countDown();
+                        Thread.sleep(100);
+                        return null;
+                    }
+                    requestSent.await();
+                    if (nbCalls > 2) {
+                        throw new TransportException("closed");
+                    }
+                    return codec.encode(new TestFrameworks(Arrays.asList("framework1")), transport);
+                } finally {
+                    nbReceiving.decrementAndGet();
+                }
+            }
+        });
+        final TransportHelper helper = new TransportHelper();
+        final MutableObject<Message> synchronousReply = new MutableObject<Message>();
+        Thread synchronousRequest = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    synchronousReply.setValue(helper.sendRequest(transport, GetTestFrameworks.INSTANCE));
+                } catch (TransportException e) {
+                    // the reply stays null
+                }
+            }
+        };
+        synchronousRequest.start();
+        synchronousReceive.await();
+
+        // test
+        Future<Message> reply = helper.sendRequestAsync(transport, GetTestFrameworks.INSTANCE);
+
+        // verify
+        assertThat(((TestFrameworks) reply.get(1, TimeUnit.SECONDS)).getFrameworks()).as("asynchronous reply")
+            .containsExactly("framework1");
+        synchronousRequest.join(1000);
+        answerData.verifyMessage(synchronousReply.getValue());
+        assertThat(maxReceiving.get()).as("maximum number of concurrent receives").isEqualTo(1);
+    }
+
+    private static FramedTransport createTimingOutTransport(final CountDownLatch requestSent, int timeout)
+        throws TransportException {
+        FramedTransport transport = mock(FramedTransport.class);
+        when(transport.isFramed()).thenReturn(true);
+        when(transport.getTimeout()).thenReturn(timeout);
+        when(transport.getReceivedCorrelationId()).thenReturn(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                requestSent.countDown();
+                return null;
+            }
+        }).when(transport).sendFrame(any(ByteBuffer.class));
+        return transport;
+    }
+
+    @Test
+    public void testSendRequestAsync_notFramed() throws Exception {
+        // prepare
+        MessageData answerData = MessageData.TESTFRAMEWORKS;
+        Transport transport = mock(Transport.class);
+        when(transport.receive()).thenReturn(answerData.messageClass.getName(), answerData.expectedParts);
+        TransportHelper helper = new TransportHelper();
+
+        // test
+        Future<Message> reply = helper.sendRequestAsync(transport, GetTestFrameworks.INSTANCE);
+
+        // verify
+        assertThat(reply.isDone()).as("done").isTrue();
+        answerData.verifyMessage(reply.get());
+    }
+
     @Theory
-    public void testSend(MessageData data) throws TransportException, InstantiationException, IllegalAccessException {
+    public void testSend(MessageData data) throws TransportException {
         // prepare
         Message message = spy(data.createMessage());
         Transport transport = mock(Transport.class);
@@ -126,6 +361,65 @@ public class TransportHelperTest {
         inOrder.verifyNoMoreInteractions();
     }
 
+    @Theory
+    public void testSend_framedTransport(MessageData data) throws TransportException {
+        // prepare
+        Message message = spy(data.createMessage());
+        FramedTransport transport = mock(FramedTransport.class);
+        TransportHelper helper = new TransportHelper();
+
+        // test
+        helper.send(transport, message);
+
+        // verify
+        InOrder inOrder = inOrder(transport, message);
+        inOrder.verify(transport, times(1)).isFramed();
+        inOrder.verify(transport, times(1)).send(eq(message.getClass().getName()));
+        inOrder.verify(message, times(1)).sendWith(eq(transport));
+        for (int i = 0; i < data.expectedParts.length; i++) {
+            inOrder.verify(transport, times(1)).send(eq(data.expectedParts[i]));
+        }
+        inOrder.verify(transport, times(1)).flush();
+        inOrder.verifyNoMoreInteractions();
+    }
+
+    @Theory
+    public void testSend_binaryFrame(MessageData data) throws TransportException {
+        // prepare
+        Message message = data.createMessage();
+        FramedTransport transport = mock(FramedTransport.class);
+        when(transport.isFramed()).thenReturn(true);
+        TransportHelper helper = new TransportHelper();
+
+        // test
+        helper.send(transport, message);
+
+        // verify
+        ArgumentCaptor<ByteBuffer> frame = ArgumentCaptor.forClass(ByteBuffer.class);
+        verify(transport, times(1)).isFramed();
+        verify(transport, times(1)).sendFrame(frame.capture());
+        verifyNoMoreInteractions(transport);
+        data.verifyMessage(new BinaryMessageCodec().decode(frame.getValue(), transport));
+    }
+
+    @Theory
+    public void testReceive_binaryFrame(MessageData data) throws TransportException {
+        // prepare
+        assumeFalse(ErrorMessage.class.isAssignableFrom(data.messageClass));
+        FramedTransport transport = mock(FramedTransport.class);
+        ByteBuffer frame = new BinaryMessageCodec().encode(data.createMessage(), transport);
+        when(transport.receiveFrame()).thenReturn(frame);
+        TransportHelper helper = new TransportHelper();
+
+        // test
+        Message actualMessage = helper.receive(transport);
+
+        // verify
+        verify(transport, times(1)).receiveFrame();
+        verifyNoMoreInteractions(transport);
+        data.verifyMessage(actualMessage);
+    }
+
     @Theory
     public void testCreateMessage(MessageData data) throws Exception {
         TransportHelper helper = new TransportHelper();
@@ -168,8 +462,7 @@ public class TransportHelperTest {
         when(transport.receive()).thenReturn(ErrorMessage.class.getName(), expectedErrorMessage);
         TransportHelper helper = new TransportHelper() {
             @Override
-            Message createMessage(Class<? extends Message> clazz)
-                throws InstantiationException, IllegalAccessException {
+            Message createMessage(Class<? extends Message> clazz) throws TransportException {
                 Message message = spy(super.createMessage(clazz));
                 messageWrapper.setValue(message);
                 return message;
@@ -180,6 +473,41 @@ public class TransportHelperTest {
         helper.receive(transport);
     }
 
+    @Test
+    public void testReceive_unknownMessageType() throws Exception {
+        // prepare
+        thrown.expect(TransportException.class);
+        thrown.expectMessage("unknown message type java.lang.String");
+        Transport transport = mock(Transport.class);
+        when(transport.receive()).thenReturn(String.class.getName());
+        TransportHelper helper = new TransportHelper();
+
+        // test
+        helper.receive(transport);
+    }
+
+    @Test
+    public void testReceive_registeredMessageType() throws Exception {
+        // prepare
+        final MockMessage expectedMessage = spy(new MockMessage());
+        Transport transport = mock(Transport.class);
+        when(transport.receive()).thenReturn(MockMessage.class.getName());
+        TransportHelper helper = new TransportHelper();
+        helper.getRegistry().register(MockMessage.class, new MessageFactory<MockMessage>() {
+            @Override
+            public MockMessage create() {
+                return expectedMessage;
+            }
+        });
+
+        // test
+        Message actualMessage = helper.receive(transport);
+
+        // verify
+        assertThat(actualMessage).isSameAs(expectedMessage);
+        verify(expectedMessage, times(1)).receiveFrom(eq(transport));
+    }
+
     @Theory
     public void testReceive(MessageData data) throws Exception {
         // prepare
@@ -422,6 +750,49 @@ public class TransportHelperTest {
                 return new FrameworkTests(Arrays.asList(expectedParts).subList(1, expectedParts.length));
             }
         },
+        GETFRAMEWORKTESTSPAGE(GetFrameworkTestsPage.class, "framework", "100", "50") {
+            @Override
+            Message createMessage() {
+                return new GetFrameworkTestsPage(expectedParts[0], Integer.parseInt(expectedParts[1]),
+                                                 Integer.parseInt(expectedParts[2]));
+            }
+        },
+        FRAMEWORKTESTSPAGE(FrameworkTestsPage.class, "2", "2", "test1", "test2") {
+            @Override
+            Message createMessage() {
+                return new FrameworkTestsPage(Arrays.asList(expectedParts).subList(2, expectedParts.length),
+                                              Integer.parseInt(expectedParts[0]));
+            }
+        },
+        FRAMEWORKTESTSPAGE_LAST(FrameworkTestsPage.class, true, "-1", "1", "test1") {
+            @Override
+            Message createMessage() {
+                return new FrameworkTestsPage(Arrays.asList(expectedParts).subList(2, expectedParts.length),
+                                              Integer.parseInt(expectedParts[0]));
+            }
+        },
+        RUNTESTS(RunTests.class, "framework", "2", "test1", "test2") {
+            @Override
+            Message createMessage() {
+                return new RunTests(expectedParts[0], Arrays.asList(expectedParts).subList(2, expectedParts.length));
+            }
+        },
+        TESTRESULTS(TestResults.class, "1", "5", "framework", "test", FALSE, null) { // failureType=null
+            @Override
+            Message createMessage() {
+                TestResult testResult = new TestResult(expectedParts[2], expectedParts[3]);
+                return new TestResults(Arrays.asList(testResult), Arrays.asList(Integer.parseInt(expectedParts[1])));
+            }
+
+            @Override
+            void verifyMessage(Message actualMessage) {
+                TestResults expected = (TestResults) createMessage();
+                TestResults actual = (TestResults) actualMessage;
+                assertThat(actual.getDurations()).as("durations").isEqualTo(expected.getDurations());
+                assertThat(actual.getResults()).as("results").hasSize(1);
+                assertThat(actual.getResults().get(0)).isEqualToComparingFieldByField(expected.getResults().get(0));
+            }
+        },
         ERRORMESSAGE(ErrorMessage.class, "errorMessage") {
             @Override
             Message createMessage() {
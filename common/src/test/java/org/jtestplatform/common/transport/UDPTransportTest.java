@@ -22,6 +22,7 @@
 package org.jtestplatform.common.transport;
 
 import org.junit.Rule;
+import org.junit.Test;
 import org.junit.experimental.theories.Theories;
 import org.junit.experimental.theories.Theory;
 import org.junit.rules.ExpectedException;
@@ -37,6 +38,7 @@ import java.net.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static java.lang.Math.min;
@@ -44,8 +46,7 @@ import static java.net.InetAddress.getLocalHost;
 import static java.nio.ByteOrder.BIG_ENDIAN;
 import static java.nio.ByteOrder.LITTLE_ENDIAN;
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.jtestplatform.common.transport.UDPTransport.BYTE_ORDER;
-import static org.jtestplatform.common.transport.UDPTransport.NULL_SIZE;
+import static org.jtestplatform.common.transport.UDPTransport.*;
 import static org.junit.Assume.assumeFalse;
 import static org.junit.Assume.assumeTrue;
 import static org.mockito.Mockito.*;
@@ -124,6 +125,110 @@ public class UDPTransportTest {
         new UDPTransportWithMockDatagramSocket(SERVER_PORT).receive();
     }
 
+    @Theory
+    public void testSend_framingNotNegotiated(StringMessage message) throws IOException, TransportException {
+        assumeFalse(message.corrupted);
+        // prepare
+        final List<DatagramPacket> packets = new ArrayList<DatagramPacket>();
+        doAnswer(captureSentPackets(packets)).when(datagramSocket).send(any(DatagramPacket.class));
+        UDPTransport transport = new UDPTransportWithMockDatagramSocket(getLocalHost(), SERVER_PORT, 0, true);
+
+        // test
+        transport.send(message.value);
+        transport.flush();
+
+        // verify
+        assertThat(transport.isFramed()).as("framed").isFalse();
+        verify(datagramSocket, times(message.getNbPackets())).send(any(DatagramPacket.class));
+        DatagramPacket sizePacket = packets.get(0);
+        assertThat(sizePacket.getLength()).as("sizePacket.length").isEqualTo(8);
+        ByteBuffer sizeBuffer = ByteBuffer.wrap(sizePacket.getData()).order(BYTE_ORDER);
+        assertThat(sizeBuffer.getInt()).as("size").isEqualTo(ByteBuffer.wrap(message.getSizeAsBytes())
+                                                                        .order(BYTE_ORDER).getInt());
+        assertThat(sizeBuffer.getInt()).as("magic").isEqualTo(FRAME_MAGIC);
+    }
+
+    @Test
+    public void testReceive_framingAnnounced() throws IOException, TransportException {
+        // prepare
+        byte[] sizeWithMagic = ByteBuffer.allocate(8).order(BYTE_ORDER).putInt(1).putInt(FRAME_MAGIC).array();
+        doAnswer(simulateReceive(sizeWithMagic, "A".getBytes())).when(datagramSocket)
+                                                                .receive(any(DatagramPacket.class));
+        UDPTransport transport = new UDPTransportWithMockDatagramSocket(SERVER_PORT, true);
+
+        // test
+        String receivedMessage = transport.receive();
+
+        // verify
+        assertThat(receivedMessage).isEqualTo("A");
+        assertThat(transport.isFramed()).as("framed").isTrue();
+        verify(datagramSocket, times(2)).receive(any(DatagramPacket.class));
+    }
+
+    @Test
+    public void testSendAndReceive_framed() throws IOException, TransportException {
+        testSendAndReceive_framed(1, "a value", null, "", "another value");
+    }
+
+    @Test
+    public void testSendAndReceive_framed_fragmented() throws IOException, TransportException {
+        char[] chars = new char[MAX_DATAGRAM_SIZE * 3];
+        Arrays.fill(chars, 'X');
+        testSendAndReceive_framed(4, "a value", new String(chars), null);
+    }
+
+    @Test
+    public void testSendAndReceive_framed_nonAscii() throws IOException, TransportException {
+        testSendAndReceive_framed(1, "\u00e9t\u00e9", "\u20ac", "\ud83d\ude00");
+    }
+
+    private void testSendAndReceive_framed(int expectedNbDatagrams, String... messages)
+        throws IOException, TransportException {
+        // prepare
+        final List<DatagramPacket> packets = new ArrayList<DatagramPacket>();
+        doAnswer(captureSentPackets(packets)).when(datagramSocket).send(any(DatagramPacket.class));
+        UDPTransport sender = createFramedTransport();
+
+        // test
+        for (String message : messages) {
+            sender.send(message);
+        }
+        sender.flush();
+
+        // verify (the 2 first datagrams are the legacy request sent before negotiation)
+        verify(datagramSocket, times(2 + expectedNbDatagrams)).send(any(DatagramPacket.class));
+        List<byte[]> datagrams = new ArrayList<byte[]>();
+        for (DatagramPacket packet : packets.subList(2, packets.size())) {
+            assertThat(packet.getLength()).as("datagram length").isLessThanOrEqualTo(MAX_DATAGRAM_SIZE);
+            datagrams.add(Arrays.copyOf(packet.getData(), packet.getLength()));
+        }
+
+        reset(datagramSocket);
+        doAnswer(simulateReceive(datagrams.toArray(new byte[datagrams.size()][]))).when(datagramSocket)
+                                                                                 .receive(any(DatagramPacket.class));
+        UDPTransport receiver = new UDPTransportWithMockDatagramSocket(SERVER_PORT, true);
+        for (String message : messages) {
+            assertThat(receiver.receive()).isEqualTo(message);
+        }
+        assertThat(receiver.isFramed()).as("framed").isTrue();
+        verify(datagramSocket, times(expectedNbDatagrams)).receive(any(DatagramPacket.class));
+    }
+
+    /**
+     * Creates a client transport that has negotiated framing with a (simulated) server.
+     */
+    private UDPTransport createFramedTransport() throws IOException, TransportException {
+        byte[] frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + 4).order(BYTE_ORDER).putInt(FRAME_MAGIC)
+                                 .put(FRAME_VERSION).put(LAST_FRAGMENT).putInt(0).putShort((short) 0)
+                                 .putInt(0).putInt(NULL_SIZE).array();
+        doAnswer(simulateReceive(frame)).when(datagramSocket).receive(any(DatagramPacket.class));
+        UDPTransport transport = new UDPTransportWithMockDatagramSocket(getLocalHost(), SERVER_PORT, 0, true);
+        transport.send("request");
+        assertThat(transport.receive()).isNull();
+        assertThat(transport.isFramed()).as("framed").isTrue();
+        return transport;
+    }
+
     private void verifyPackets(StringMessage message, InetSocketAddress socketAddress, int serverPort,
                                List<DatagramPacket> packets) {
         // first packet
@@ -149,7 +254,7 @@ public class UDPTransportTest {
             @Override
             public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
                 DatagramPacket packet = (DatagramPacket) invocationOnMock.getArguments()[0];
-                addClonedPacket(packets, packet);
+                addClonedPacket(packets, packet); // the transport reuses its buffers : the data must be copied
                 return null;
             }
         };
@@ -167,7 +272,8 @@ public class UDPTransportTest {
                 DatagramPacket packet = (DatagramPacket) invocationOnMock.getArguments()[0];
                 packet.setAddress(serverAddress);
                 packet.setPort(serverPort);
-                addClonedPacket(packets, packet);
+                assertThat(packet.getOffset()).as("packet.offset").isZero();
+                int requestedLength = packet.getLength();
 
                 byte[] data;
                 if (callNumber == 1) {
@@ -181,17 +287,44 @@ public class UDPTransportTest {
                     packet.setLength(min(data.length, packet.getData().length));
                     System.arraycopy(data, 0, packet.getData(), 0, packet.getLength());
                 }
+                addClonedPacket(packets, packet, requestedLength);
+                return null;
+            }
+        };
+    }
+
+    private Answer<Void> simulateReceive(final byte[]... datagrams) throws UnknownHostException {
+        final InetAddress serverAddress = getLocalHost();
+        return new Answer<Void>() {
+            int callNumber = 0;
+
+            @Override
+            public Void answer(InvocationOnMock invocationOnMock) throws Throwable {
+                DatagramPacket packet = (DatagramPacket) invocationOnMock.getArguments()[0];
+                packet.setAddress(serverAddress);
+                packet.setPort(SERVER_PORT);
+
+                byte[] data = datagrams[callNumber++];
+                System.arraycopy(data, 0, packet.getData(), 0, data.length);
+                packet.setLength(data.length);
                 return null;
             }
         };
     }
 
     private void addClonedPacket(List<DatagramPacket> packets, DatagramPacket packet) {
+        addClonedPacket(packets, packet, packet.getLength());
+    }
+
+    /**
+     * Adds a copy of the packet, whose data is a copy of the packet's data (from its offset and with the given length).
+     */
+    private void addClonedPacket(List<DatagramPacket> packets, DatagramPacket packet, int length) {
         if (packets != null) {
-            DatagramPacket clonedPacket = new DatagramPacket(packet.getData(), packet.getOffset());
+            byte[] data = Arrays.copyOfRange(packet.getData(), packet.getOffset(), packet.getOffset() + length);
+            DatagramPacket clonedPacket = new DatagramPacket(data, data.length);
             clonedPacket.setAddress(packet.getAddress());
             clonedPacket.setPort(packet.getPort());
-            clonedPacket.setLength(packet.getLength());
             packets.add(clonedPacket);
         }
     }
@@ -278,11 +411,22 @@ public class UDPTransportTest {
             server = false;
         }
 
+        public UDPTransportWithMockDatagramSocket(InetAddress serverAddress, int serverPort, int timeout,
+                                                  boolean framingEnabled) throws TransportException {
+            super(serverAddress, serverPort, timeout, framingEnabled);
+            server = false;
+        }
+
         public UDPTransportWithMockDatagramSocket(int serverPort) throws TransportException {
             super(serverPort);
             server = true;
         }
 
+        public UDPTransportWithMockDatagramSocket(int serverPort, boolean framingEnabled) throws TransportException {
+            super(serverPort, framingEnabled);
+            server = true;
+        }
+
         @Override
         DatagramSocket createDatagramSocket(int serverPort) throws SocketException {
             return datagramSocket;
@@ -22,6 +22,7 @@
 package org.jtestplatform.it;
 
 import com.google.code.tempusfugit.temporal.MovableClock;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.apache.commons.lang3.Validate;
 import org.jtestplatform.client.Request;
 import org.jtestplatform.client.RequestConsumer;
@@ -29,7 +30,7 @@ import org.jtestplatform.client.TestDriver;
 import org.jtestplatform.cloud.configuration.Connection;
 import org.jtestplatform.cloud.configuration.Platform;
 import org.jtestplatform.cloud.domain.*;
-import org.jtestplatform.common.message.TestResult;
+import org.jtestplatform.common.message.Message;
 import org.jtestplatform.common.transport.Transport;
 import org.jtestplatform.common.transport.TransportException;
 import org.jtestplatform.common.transport.TransportHelper;
@@ -38,11 +39,11 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.Reader;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.google.code.tempusfugit.temporal.Duration.millis;
@@ -70,11 +71,11 @@ public class InJVMTestDriver<T extends InJVMTransportChannel> extends TestDriver
     }
 
     @Override
-    protected RequestConsumer createRequestConsumer(BlockingQueue<Request> requests) {
-        return new RequestConsumer(requests, clock) {
+    protected RequestConsumer createRequestConsumer(BlockingQueue<Request> requests, DomainManager domainManager) {
+        return new RequestConsumer(requests, clock, 1, domainManager.getMaxNumberOfDomains()) {
             @Override
-            protected TestResult runTest(TransportHelper transportHelper, Request request, Transport transport)
-                throws TransportException {
+            protected ListenableFuture<Message> runTest(TransportHelper transportHelper, Request request,
+                                                        Transport transport) throws TransportException {
                 ((MovableClock) clock).incrementBy(millis(timeCounter.getAndIncrement()));
                 return super.runTest(transportHelper, request, transport);
             }
@@ -82,7 +83,7 @@ public class InJVMTestDriver<T extends InJVMTransportChannel> extends TestDriver
     }
 
     static class InJVMDomainManager<T extends InJVMTransportChannel> extends DefaultDomainManager {
-        private final List<InJVMDomain> domains = new ArrayList<InJVMDomain>();
+        private final List<InJVMDomain> domains = new CopyOnWriteArrayList<InJVMDomain>();
         private final InJVMTransportChannelFactory<T> channelFactory;
 
         public InJVMDomainManager(Reader configReader, InJVMTransportChannelFactory<T> channelFactory)
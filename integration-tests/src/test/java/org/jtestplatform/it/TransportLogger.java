@@ -21,18 +21,20 @@
  */
 package org.jtestplatform.it;
 
+import org.jtestplatform.common.transport.FramedTransport;
 import org.jtestplatform.common.transport.Transport;
 import org.jtestplatform.common.transport.TransportException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * An implementation of {@link org.jtestplatform.common.transport.Transport} that logging its messages.
  * @author Fabien DUMINY (fduminy at jnode dot org)
  */
-public class TransportLogger implements Transport {
+public class TransportLogger implements FramedTransport {
     private static final Logger LOGGER = LoggerFactory.getLogger(TransportLogger.class);
     static final String NULL_MESSAGE = "null";
 
@@ -59,6 +61,55 @@ public class TransportLogger implements Transport {
         wrapped.send(message);
     }
 
+    @Override
+    public void flush() throws TransportException {
+        if (wrapped instanceof FramedTransport) {
+            logMessage("FLUSH", null);
+            ((FramedTransport) wrapped).flush();
+        }
+    }
+
+    @Override
+    public boolean isFramed() {
+        return (wrapped instanceof FramedTransport) && ((FramedTransport) wrapped).isFramed();
+    }
+
+    @Override
+    public void sendFrame(ByteBuffer content) throws TransportException {
+        logMessage("SEND_FRAME", content.remaining() + " bytes");
+        ((FramedTransport) wrapped).sendFrame(content);
+    }
+
+    @Override
+    public ByteBuffer receiveFrame() throws TransportException {
+        if (!(wrapped instanceof FramedTransport)) {
+            return null;
+        }
+
+        ByteBuffer frame = ((FramedTransport) wrapped).receiveFrame();
+        if (frame != null) {
+            logMessage("RECEIVE_FRAME", frame.remaining() + " bytes");
+        }
+        return frame;
+    }
+
+    @Override
+    public void setCorrelationId(int correlationId) {
+        if (wrapped instanceof FramedTransport) {
+            ((FramedTransport) wrapped).setCorrelationId(correlationId);
+        }
+    }
+
+    @Override
+    public int getReceivedCorrelationId() {
+        return (wrapped instanceof FramedTransport) ? ((FramedTransport) wrapped).getReceivedCorrelationId() : 0;
+    }
+
+    @Override
+    public int getTimeout() {
+        return (wrapped instanceof FramedTransport) ? ((FramedTransport) wrapped).getTimeout() : 0;
+    }
+
     @Override
     public String receive() throws TransportException {
         String received = wrapped.receive();
@@ -42,13 +42,13 @@ public class UDPTransportChannel extends InJVMTransportChannel<UDPTransport> {
 
     @Override
     protected UDPTransport createServerTransport() throws TransportException {
-        return new UDPTransport(serverPort);
+        return new UDPTransport(serverPort, true);
     }
 
     @Override
     protected UDPTransport createClientTransport() throws TransportException {
         try {
-            return new UDPTransport(InetAddress.getLocalHost(), serverPort, 0);
+            return new UDPTransport(InetAddress.getLocalHost(), serverPort, 0, true);
         } catch (UnknownHostException e) {
             throw new TransportException(e.getMessage(), e);
         }
@@ -22,6 +22,7 @@
 package org.jtestplatform.junitxmlreport;
 
 import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import java.io.OutputStream;
 
@@ -29,6 +30,8 @@ import java.io.OutputStream;
  * @author Fabien DUMINY (fduminy at jnode dot org)
  */
 public class JUnitXMLReportWriter {
+    private static JAXBContext jaxbContext;
+
     /**
      * Writes a JUnit XML report.
      *
@@ -36,10 +39,20 @@ public class JUnitXMLReportWriter {
      * @param suites
      */
     public void write(OutputStream output, Testsuites suites) throws Exception {
-        JAXBContext jaxbContext = JAXBContext.newInstance(ObjectFactory.class.getPackage().getName());
-        Marshaller marshaller = jaxbContext.createMarshaller();
+        Marshaller marshaller = getJAXBContext().createMarshaller();
         marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
 
         marshaller.marshal(suites, output);
     }
+
+    /**
+     * @return The {@link JAXBContext} of the report, created on first use. It's thread safe and costly to create,
+     * unlike the {@link Marshaller}s created from it.
+     */
+    private static synchronized JAXBContext getJAXBContext() throws JAXBException {
+        if (jaxbContext == null) {
+            jaxbContext = JAXBContext.newInstance(ObjectFactory.class.getPackage().getName());
+        }
+        return jaxbContext;
+    }
 }
@@ -0,0 +1,264 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.junitxmlreport;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.*;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes a JUnit XML report without keeping the test cases in memory : the test cases are streamed to a temporary
+ * file per suite as soon as they are known and the report is assembled by {@link #write(OutputStream, Testsuites)}
+ * once the counters of the suites are final.
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+public class StreamingJUnitXMLReportWriter implements Closeable {
+    private static final String ENCODING = "UTF-8";
+    private static final String TEMP_FILE_PREFIX = "jtestplatform-";
+    private static final String TEMP_FILE_SUFFIX = ".xml";
+
+    private final XMLOutputFactory factory = XMLOutputFactory.newInstance();
+    private final Map<Testsuite, SuiteFragment> fragments = new ConcurrentHashMap<Testsuite, SuiteFragment>();
+    private final File tempDirectory;
+
+    /**
+     * @param tempDirectory The directory where the test cases are temporarily written. If null, the default temporary
+     *                      directory is used.
+     */
+    public StreamingJUnitXMLReportWriter(File tempDirectory) {
+        this.tempDirectory = tempDirectory;
+    }
+
+    /**
+     * Appends a test case to a suite. The test case can be discarded once this method has returned.
+     *
+     * @param suite The suite of the test case.
+     * @param testCase The test case to append.
+     */
+    public void write(Testsuite suite, Testcase testCase) throws IOException, XMLStreamException {
+        SuiteFragment fragment = getFragment(suite);
+        synchronized (fragment) {
+            writeTestcase(fragment.writer, testCase);
+        }
+    }
+
+    /**
+     * Writes the JUnit XML report. The test cases of each suite are the ones given to
+     * {@link #write(Testsuite, Testcase)} : those attached to the suites are ignored.
+     *
+     * @param output
+     * @param suites
+     */
+    public void write(OutputStream output, Testsuites suites) throws IOException, XMLStreamException {
+        XMLStreamWriter writer = factory.createXMLStreamWriter(output, ENCODING);
+        writer.writeStartDocument(ENCODING, "1.0");
+        writer.writeStartElement("testsuites");
+        writeAttribute(writer, "name", suites.getName());
+        writeAttribute(writer, "time", suites.getTime());
+        writeAttribute(writer, "tests", suites.getTests());
+        writeAttribute(writer, "failures", suites.getFailures());
+        writeAttribute(writer, "disabled", suites.getDisabled());
+        writeAttribute(writer, "errors", suites.getErrors());
+        for (Testsuite suite : suites.getTestsuite()) {
+            writeTestsuite(writer, output, suite);
+        }
+        writer.writeEndElement();
+        writer.writeEndDocument();
+        writer.close();
+        output.flush();
+    }
+
+    /**
+     * Deletes the temporary files.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        for (SuiteFragment fragment : fragments.values()) {
+            try {
+                fragment.close();
+            } catch (IOException e) {
+                exception = e;
+            }
+            if (!fragment.file.delete() && fragment.file.exists()) {
+                exception = new IOException("unable to delete " + fragment.file.getAbsolutePath());
+            }
+        }
+        fragments.clear();
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private SuiteFragment getFragment(Testsuite suite) throws IOException, XMLStreamException {
+        SuiteFragment fragment = fragments.get(suite);
+        if (fragment == null) {
+            synchronized (fragments) {
+                fragment = fragments.get(suite);
+                if (fragment == null) {
+                    fragment = new SuiteFragment(File.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX,
+                                                                     tempDirectory));
+                    fragments.put(suite, fragment);
+                }
+            }
+        }
+        return fragment;
+    }
+
+    private void writeTestsuite(XMLStreamWriter writer, OutputStream output, Testsuite suite)
+        throws IOException, XMLStreamException {
+        writer.writeStartElement("testsuite");
+        writeAttribute(writer, "name", suite.getName());
+        writeAttribute(writer, "tests", suite.getTests());
+        writeAttribute(writer, "disabled", suite.getDisabled());
+        writeAttribute(writer, "errors", suite.getErrors());
+        writeAttribute(writer, "failures", suite.getFailures());
+        writeAttribute(writer, "hostname", suite.getHostname());
+        writeAttribute(writer, "id", suite.getId());
+        writeAttribute(writer, "package", suite.getPackage());
+        writeAttribute(writer, "skipped", suite.getSkipped());
+        writeAttribute(writer, "time", suite.getTime());
+        writeAttribute(writer, "timestamp", suite.getTimestamp());
+
+        if (suite.getProperties() != null) {
+            writer.writeStartElement("properties");
+            for (Property property : suite.getProperties().getProperty()) {
+                writer.writeEmptyElement("property");
+                writeAttribute(writer, "name", property.getName());
+                writeAttribute(writer, "value", property.getValue());
+            }
+            writer.writeEndElement();
+        }
+
+        SuiteFragment fragment = fragments.get(suite);
+        if (fragment != null) {
+            // closes the pending start tag, if any, before copying the test cases as is
+            writer.writeCharacters("\n");
+            writer.flush();
+            synchronized (fragment) {
+                fragment.close();
+                copy(fragment.file, output);
+            }
+        }
+
+        writeElement(writer, "system-out", suite.getSystemOut());
+        writeElement(writer, "system-err", suite.getSystemErr());
+        writer.writeEndElement();
+    }
+
+    private static void writeTestcase(XMLStreamWriter writer, Testcase testCase) throws XMLStreamException {
+        writer.writeStartElement("testcase");
+        writeAttribute(writer, "name", testCase.getName());
+        writeAttribute(writer, "assertions", testCase.getAssertions());
+        writeAttribute(writer, "time", testCase.getTime());
+        writeAttribute(writer, "classname", testCase.getClassname());
+        writeAttribute(writer, "status", testCase.getStatus());
+        writeElement(writer, "skipped", testCase.getSkipped());
+        for (Error error : testCase.getError()) {
+            writeProblem(writer, "error", error.getMessage(), error.getType(), error.getContent());
+        }
+        for (Failure failure : testCase.getFailure()) {
+            writeProblem(writer, "failure", failure.getMessage(), failure.getType(), failure.getContent());
+        }
+        writeElements(writer, "system-out", testCase.getSystemOut());
+        writeElements(writer, "system-err", testCase.getSystemErr());
+        writer.writeEndElement();
+        writer.writeCharacters("\n");
+    }
+
+    private static void writeProblem(XMLStreamWriter writer, String name, String message, String type,
+                                     String content) throws XMLStreamException {
+        writer.writeStartElement(name);
+        writeAttribute(writer, "message", message);
+        writeAttribute(writer, "type", type);
+        if (content != null) {
+            writer.writeCharacters(content);
+        }
+        writer.writeEndElement();
+    }
+
+    private static void writeElements(XMLStreamWriter writer, String name, List<String> values)
+        throws XMLStreamException {
+        for (String value : values) {
+            writeElement(writer, name, value);
+        }
+    }
+
+    private static void writeElement(XMLStreamWriter writer, String name, String value) throws XMLStreamException {
+        if (value != null) {
+            writer.writeStartElement(name);
+            writer.writeCharacters(value);
+            writer.writeEndElement();
+        }
+    }
+
+    private static void writeAttribute(XMLStreamWriter writer, String name, String value)
+        throws XMLStreamException {
+        if (value != null) {
+            writer.writeAttribute(name, value);
+        }
+    }
+
+    private static void copy(File file, OutputStream output) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int nbBytes;
+            while ((nbBytes = input.read(buffer)) >= 0) {
+                output.write(buffer, 0, nbBytes);
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    private class SuiteFragment {
+        private final File file;
+        private final OutputStream stream;
+        private final XMLStreamWriter writer;
+        private boolean closed;
+
+        private SuiteFragment(File file) throws IOException, XMLStreamException {
+            this.file = file;
+            stream = new BufferedOutputStream(new FileOutputStream(file));
+            writer = factory.createXMLStreamWriter(stream, ENCODING);
+        }
+
+        private void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                try {
+                    writer.close();
+                } catch (XMLStreamException e) {
+                    throw new IOException(e.getMessage(), e);
+                } finally {
+                    stream.close();
+                }
+            }
+        }
+    }
+}
@@ -77,7 +77,7 @@ public class JUnitXMLReportWriterTest {
         }
     }
 
-    private Testsuites buildReport() {
+    static Testsuites buildReport() {
         Testsuites suites = new Testsuites();
         suites.setDisabled("1");
         suites.setErrors("2");
@@ -114,7 +114,7 @@ public class JUnitXMLReportWriterTest {
         return suites;
     }
 
-    private Testcase createTestcase2(String name) {
+    private static Testcase createTestcase2(String name) {
         Testcase testCase = createTestcase(name, false);
         testCase.setAssertions("100");
         testCase.setClassname("101");
@@ -140,7 +140,7 @@ public class JUnitXMLReportWriterTest {
         return testCase;
     }
 
-    public Testcase createTestcase(String name, boolean skipped) {
+    public static Testcase createTestcase(String name, boolean skipped) {
         Testcase testCase = new Testcase();
         testCase.setName(name);
         if (skipped) {
@@ -149,7 +149,7 @@ public class JUnitXMLReportWriterTest {
         return testCase;
     }
 
-    private void addProperty(Testsuite suite, String name, String value) {
+    private static void addProperty(Testsuite suite, String name, String value) {
         Property property = new Property();
         property.setName(name);
         property.setValue(value);
@@ -0,0 +1,70 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.junitxmlreport;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+import static org.jtestplatform.junitxmlreport.JUnitXMLReportWriterTest.*;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+public class StreamingJUnitXMLReportWriterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWrite() throws Exception {
+        // prepare
+        String expectedXML = readResource("/testsuites-full.xml", false);
+        File tempDirectory = folder.newFolder("temp");
+        File actualFile = folder.newFile("actualFile");
+        Testsuites suites = buildReport();
+        StreamingJUnitXMLReportWriter writer = new StreamingJUnitXMLReportWriter(tempDirectory);
+
+        // test
+        for (Testsuite suite : suites.getTestsuite()) {
+            for (Testcase testCase : suite.getTestcase()) {
+                writer.write(suite, testCase);
+            }
+            suite.getTestcase().clear();
+        }
+        OutputStream output = new FileOutputStream(actualFile);
+        try {
+            writer.write(output, suites);
+        } finally {
+            output.close();
+        }
+        writer.close();
+
+        // verify
+        compareXML(expectedXML, readFile(actualFile.getAbsolutePath(), false));
+        assertEquals("number of temporary files", 0, tempDirectory.list().length);
+    }
+}
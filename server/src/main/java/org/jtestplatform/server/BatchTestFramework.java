@@ -0,0 +1,43 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.server;
+
+import org.jtestplatform.common.message.TestResult;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A {@link TestFramework} that runs several tests more efficiently at once than one by one.
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+public interface BatchTestFramework extends TestFramework {
+    /**
+     * Runs several tests and fills their results.
+     *
+     * @param testResults The results of the tests to run.
+     * @return The duration of each test, in milliseconds and in the iteration order of the results.
+     * @throws UnknownTestException if one of the tests is unknown (in this case, no test is run).
+     */
+    List<Integer> runTests(Collection<TestResult> testResults) throws UnknownTestException;
+}
@@ -0,0 +1,273 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Properties;
+
+import static org.jtestplatform.common.ConfigUtils.getBoolean;
+import static org.jtestplatform.common.ConfigUtils.getInt;
+
+/**
+ * A bounded buffer capturing the output of a test. When the output exceeds the maximum number of characters, only
+ * its head and its tail are kept in memory, separated by a truncation marker. The memory of the tail is only
+ * allocated when the output grows beyond the head.
+ * <p>
+ * The output can optionally be spilled to a temporary file, whose path is then given in the marker. The spill file
+ * is also bounded : beyond its maximum number of characters, the output isn't written anymore. Since the marker
+ * refers to it, the spill file isn't deleted by this buffer : it belongs to the server process and is deleted when
+ * the JVM exits.
+ * <p>
+ * The default limits are read from the system properties {@value #MAX_CHARS_PROPERTY} (default :
+ * {@value #DEFAULT_MAX_CHARS}), {@value #SPILL_PROPERTY} (default : false) and {@value #MAX_SPILL_CHARS_PROPERTY}
+ * (default : {@value #DEFAULT_MAX_SPILL_CHARS}).
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+public class CaptureBuffer implements Appendable, Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CaptureBuffer.class);
+
+    public static final String MAX_CHARS_PROPERTY = "jtestplatform.capture.maxChars";
+    public static final String SPILL_PROPERTY = "jtestplatform.capture.spill";
+    public static final String MAX_SPILL_CHARS_PROPERTY = "jtestplatform.capture.maxSpillChars";
+    public static final int DEFAULT_MAX_CHARS = 64 * 1024;
+    public static final int DEFAULT_MAX_SPILL_CHARS = 16 * 1024 * 1024;
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final int INITIAL_TAIL_SIZE = 1024;
+
+    private final boolean spill;
+    private final int maxSpillChars;
+    private final StringBuilder head;
+    private final int headSize;
+    private final int tailSize;
+    private char[] tail;
+    private int tailPosition;
+    private long nbChars;
+    private File spillFile;
+    private Writer spillWriter;
+    private long nbSpilledChars;
+
+    public CaptureBuffer() {
+        this(System.getProperties());
+    }
+
+    CaptureBuffer(Properties properties) {
+        this(getInt(properties, MAX_CHARS_PROPERTY, DEFAULT_MAX_CHARS), getBoolean(properties, SPILL_PROPERTY, false),
+             getInt(properties, MAX_SPILL_CHARS_PROPERTY, DEFAULT_MAX_SPILL_CHARS));
+    }
+
+    /**
+     * @param maxChars The maximum number of characters kept in memory.
+     * @param spill true to write the whole output to a temporary file when it exceeds <code>maxChars</code>.
+     */
+    public CaptureBuffer(int maxChars, boolean spill) {
+        this(maxChars, spill, DEFAULT_MAX_SPILL_CHARS);
+    }
+
+    /**
+     * @param maxChars The maximum number of characters kept in memory.
+     * @param spill true to write the output to a temporary file when it exceeds <code>maxChars</code>.
+     * @param maxSpillChars The maximum number of characters written to the temporary file (at least
+     *                      <code>maxChars</code>).
+     */
+    public CaptureBuffer(int maxChars, boolean spill, int maxSpillChars) {
+        if (maxChars < 1) {
+            throw new IllegalArgumentException("maxChars must be > 0");
+        }
+
+        this.spill = spill;
+        // the spill file contains at least what was kept in memory
+        this.maxSpillChars = Math.max(maxChars, maxSpillChars);
+        headSize = maxChars / 2;
+        head = new StringBuilder(Math.min(headSize, INITIAL_TAIL_SIZE));
+        tailSize = maxChars - headSize;
+    }
+
+    @Override
+    public CaptureBuffer append(CharSequence csq) {
+        return (csq == null) ? append("null") : append(csq, 0, csq.length());
+    }
+
+    @Override
+    public CaptureBuffer append(CharSequence csq, int start, int end) {
+        if (csq == null) {
+            return append("null", start, end);
+        }
+        for (int i = start; i < end; i++) {
+            append(csq.charAt(i));
+        }
+        return this;
+    }
+
+    @Override
+    public CaptureBuffer append(char c) {
+        if (head.length() < headSize) {
+            head.append(c);
+        } else {
+            if (spill && (spillWriter == null) && (nbChars == headSize + tailSize)) {
+                startSpill();
+            }
+            if ((tail == null) || (tailPosition == tail.length)) {
+                growTail();
+            }
+            tail[tailPosition] = c;
+            tailPosition = (tailPosition + 1) % tailSize;
+        }
+        if (spillWriter != null) {
+            writeToSpill(c);
+        }
+        nbChars++;
+        return this;
+    }
+
+    /**
+     * @return The number of characters appended since the creation of this buffer or the last call to
+     * {@link #clear()}.
+     */
+    public long getNbChars() {
+        return nbChars;
+    }
+
+    public boolean isTruncated() {
+        return nbChars > (headSize + tailSize);
+    }
+
+    /**
+     * @return The spill file, or null if the output hasn't been spilled.
+     */
+    public File getSpillFile() {
+        return spillFile;
+    }
+
+    /**
+     * Discards the captured output (a spill file is kept since it might be referenced by a previous output).
+     */
+    public void clear() {
+        close();
+        head.setLength(0);
+        tailPosition = 0;
+        nbChars = 0;
+        spillFile = null;
+        nbSpilledChars = 0;
+    }
+
+    @Override
+    public void close() {
+        if (spillWriter != null) {
+            try {
+                spillWriter.close();
+            } catch (IOException e) {
+                LOGGER.error("can't close spill file " + spillFile, e);
+            }
+            spillWriter = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        int tailLength = (int) Math.min(tailSize, nbChars - head.length());
+        StringBuilder result = new StringBuilder(head.length() + tailLength + 100);
+        result.append(head);
+        if (isTruncated()) {
+            result.append("\n[... ").append(nbChars - head.length() - tailLength).append(" characters truncated");
+            if (spillWriter != null) {
+                flushSpill();
+            }
+            if (spillFile != null) {
+                if (nbSpilledChars < nbChars) {
+                    result.append(", first ").append(nbSpilledChars).append(" characters");
+                } else {
+                    result.append(", full output");
+                }
+                result.append(" in ").append(spillFile.getAbsolutePath());
+            }
+            result.append(" ...]\n");
+        }
+        if (tailLength == tailSize) {
+            result.append(tail, tailPosition, tailSize - tailPosition).append(tail, 0, tailPosition);
+        } else if (tailLength > 0) {
+            result.append(tail, 0, tailLength);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Allocates the tail or doubles its size, up to its maximum size. It's only called before the tail is full, when
+     * its characters are not yet stored as a ring.
+     */
+    private void growTail() {
+        if (tail == null) {
+            tail = new char[Math.min(tailSize, INITIAL_TAIL_SIZE)];
+        } else {
+            tail = Arrays.copyOf(tail, (int) Math.min(tailSize, 2L * tail.length));
+        }
+    }
+
+    private void startSpill() {
+        try {
+            spillFile = File.createTempFile("jtestplatform-", ".out");
+            spillFile.deleteOnExit();
+            spillWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spillFile), CHARSET));
+            spillWriter.append(head);
+            spillWriter.write(tail, tailPosition, tailSize - tailPosition);
+            spillWriter.write(tail, 0, tailPosition);
+            nbSpilledChars = head.length() + tailSize;
+        } catch (IOException e) {
+            stopSpill(e);
+        }
+    }
+
+    private void writeToSpill(char c) {
+        if (nbSpilledChars >= maxSpillChars) {
+            // the spill file is full : the remaining output is only kept in the tail
+            close();
+            return;
+        }
+
+        try {
+            spillWriter.write(c);
+            nbSpilledChars++;
+        } catch (IOException e) {
+            stopSpill(e);
+        }
+    }
+
+    private void flushSpill() {
+        try {
+            spillWriter.flush();
+        } catch (IOException e) {
+            stopSpill(e);
+        }
+    }
+
+    private void stopSpill(IOException e) {
+        LOGGER.error("can't spill output to " + spillFile + ", the output will only be truncated", e);
+        close();
+        spillFile = null;
+    }
+}
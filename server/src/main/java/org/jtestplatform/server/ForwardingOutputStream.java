@@ -23,19 +23,29 @@ package org.jtestplatform.server;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.lang.ref.WeakReference;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * This is a stream that dispatch its output to another one specified by calling {@link #forward(Thread, java.io.OutputStream)}
  * or the default one given to the constructor.
+ * <p>
+ * The stream of a thread is kept in a {@link ThreadLocal}, so that writing doesn't need any lock.
  *
  * @author Fabien DUMINY (fduminy at jnode dot org)
  */
 public class ForwardingOutputStream extends OutputStream {
     private final OutputStream defaultOutput;
-    private final Map<WeakReference<Thread>, OutputStream> streams = new HashMap<WeakReference<Thread>, OutputStream>();
+    private final ThreadLocal<OutputStream> threadOutput = new ThreadLocal<OutputStream>();
+
+    /**
+     * All the forwarded streams, only used to flush and close them. The threads that died without removing their
+     * stream are purged when a task ends, on the next call to {@link #forward(Thread, OutputStream)} with a null
+     * stream.
+     */
+    private final ConcurrentMap<Thread, OutputStream> streams = new ConcurrentHashMap<Thread, OutputStream>();
 
     public ForwardingOutputStream(OutputStream defaultOutput) {
         if (defaultOutput == null) {
@@ -75,38 +85,36 @@ public class ForwardingOutputStream extends OutputStream {
         }
     }
 
+    /**
+     * @param thread The thread to forward, which must be the current thread.
+     * @param threadOutputStream The stream where the output of the thread is forwarded, or null to forward it
+     *                           again to the default stream.
+     */
     public void forward(Thread thread, OutputStream threadOutputStream) {
-        WeakReference<Thread> key = new WeakReference<Thread>(thread);
-        synchronized (streams) {
-            if (threadOutputStream == null) {
-                Map.Entry<WeakReference<Thread>, OutputStream> entry = getOutputStreamEntry(thread);
-                if (entry != null) {
-                    streams.remove(entry.getKey());
-                }
-            } else {
-                streams.put(key, threadOutputStream);
-            }
+        if (thread != Thread.currentThread()) {
+            throw new IllegalArgumentException("only the current thread can be forwarded");
         }
-    }
 
-    private OutputStream getOutputStream() {
-        Thread thread = Thread.currentThread();
-        OutputStream stream;
-
-        synchronized (streams) {
-            Map.Entry<WeakReference<Thread>, OutputStream> entry = getOutputStreamEntry(thread);
-            stream = (entry == null) ? null : entry.getValue();
+        if (threadOutputStream == null) {
+            threadOutput.remove();
+            streams.remove(thread);
+            purgeDeadThreads();
+        } else {
+            threadOutput.set(threadOutputStream);
+            streams.put(thread, threadOutputStream);
         }
-
-        return (stream == null) ? defaultOutput : stream;
     }
 
-    private Map.Entry<WeakReference<Thread>, OutputStream> getOutputStreamEntry(Thread thread) {
-        for (Map.Entry<WeakReference<Thread>, OutputStream> entry : streams.entrySet()) {
-            if (thread.equals(entry.getKey().get())) {
-                return entry;
+    private void purgeDeadThreads() {
+        for (Iterator<Map.Entry<Thread, OutputStream>> it = streams.entrySet().iterator(); it.hasNext(); ) {
+            if (!it.next().getKey().isAlive()) {
+                it.remove();
             }
         }
-        return null;
+    }
+
+    private OutputStream getOutputStream() {
+        OutputStream stream = threadOutput.get();
+        return (stream == null) ? defaultOutput : stream;
     }
 }
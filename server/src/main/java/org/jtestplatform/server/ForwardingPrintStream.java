@@ -0,0 +1,233 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.server;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * A {@link PrintStream} that dispatches its output to the stream of the current thread, specified by calling
+ * {@link #forward(Thread, OutputStream)}, or to the default one given to the constructor.
+ * <p>
+ * Each thread prints through its own {@link PrintStream}, so that the threads don't contend for the lock taken by
+ * {@link PrintStream} on each write.
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+public class ForwardingPrintStream extends PrintStream {
+    private final PrintStream defaultStream;
+    private final ForwardingOutputStream forwardingOutput;
+    private final ThreadLocal<PrintStream> threadStream = new ThreadLocal<PrintStream>();
+
+    public ForwardingPrintStream(PrintStream defaultStream) {
+        this(defaultStream, new ForwardingOutputStream(defaultStream));
+    }
+
+    private ForwardingPrintStream(PrintStream defaultStream, ForwardingOutputStream forwardingOutput) {
+        super(forwardingOutput);
+        this.defaultStream = defaultStream;
+        this.forwardingOutput = forwardingOutput;
+    }
+
+    /**
+     * @param thread The thread to forward, which must be the current thread.
+     * @param threadOutputStream The stream where the output of the thread is forwarded, or null to forward it
+     *                           again to the default stream.
+     * @see ForwardingOutputStream#forward(Thread, OutputStream)
+     */
+    public void forward(Thread thread, OutputStream threadOutputStream) {
+        forwardingOutput.forward(thread, threadOutputStream);
+        if (threadOutputStream == null) {
+            threadStream.remove();
+        } else {
+            threadStream.set(new PrintStream(threadOutputStream));
+        }
+    }
+
+    private PrintStream getPrintStream() {
+        PrintStream stream = threadStream.get();
+        return (stream == null) ? defaultStream : stream;
+    }
+
+    @Override
+    public void flush() {
+        getPrintStream().flush();
+    }
+
+    @Override
+    public void close() {
+        getPrintStream().close();
+    }
+
+    @Override
+    public boolean checkError() {
+        return getPrintStream().checkError();
+    }
+
+    @Override
+    public void write(int b) {
+        getPrintStream().write(b);
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len) {
+        getPrintStream().write(buf, off, len);
+    }
+
+    @Override
+    public void print(boolean b) {
+        getPrintStream().print(b);
+    }
+
+    @Override
+    public void print(char c) {
+        getPrintStream().print(c);
+    }
+
+    @Override
+    public void print(int i) {
+        getPrintStream().print(i);
+    }
+
+    @Override
+    public void print(long l) {
+        getPrintStream().print(l);
+    }
+
+    @Override
+    public void print(float f) {
+        getPrintStream().print(f);
+    }
+
+    @Override
+    public void print(double d) {
+        getPrintStream().print(d);
+    }
+
+    @Override
+    public void print(char[] s) {
+        getPrintStream().print(s);
+    }
+
+    @Override
+    public void print(String s) {
+        getPrintStream().print(s);
+    }
+
+    @Override
+    public void print(Object obj) {
+        getPrintStream().print(obj);
+    }
+
+    @Override
+    public void println() {
+        getPrintStream().println();
+    }
+
+    @Override
+    public void println(boolean x) {
+        getPrintStream().println(x);
+    }
+
+    @Override
+    public void println(char x) {
+        getPrintStream().println(x);
+    }
+
+    @Override
+    public void println(int x) {
+        getPrintStream().println(x);
+    }
+
+    @Override
+    public void println(long x) {
+        getPrintStream().println(x);
+    }
+
+    @Override
+    public void println(float x) {
+        getPrintStream().println(x);
+    }
+
+    @Override
+    public void println(double x) {
+        getPrintStream().println(x);
+    }
+
+    @Override
+    public void println(char[] x) {
+        getPrintStream().println(x);
+    }
+
+    @Override
+    public void println(String x) {
+        getPrintStream().println(x);
+    }
+
+    @Override
+    public void println(Object x) {
+        getPrintStream().println(x);
+    }
+
+    @Override
+    public PrintStream printf(String format, Object... args) {
+        getPrintStream().printf(format, args);
+        return this;
+    }
+
+    @Override
+    public PrintStream printf(Locale l, String format, Object... args) {
+        getPrintStream().printf(l, format, args);
+        return this;
+    }
+
+    @Override
+    public PrintStream format(String format, Object... args) {
+        getPrintStream().format(format, args);
+        return this;
+    }
+
+    @Override
+    public PrintStream format(Locale l, String format, Object... args) {
+        getPrintStream().format(l, format, args);
+        return this;
+    }
+
+    @Override
+    public PrintStream append(CharSequence csq) {
+        getPrintStream().append(csq);
+        return this;
+    }
+
+    @Override
+    public PrintStream append(CharSequence csq, int start, int end) {
+        getPrintStream().append(csq, start, end);
+        return this;
+    }
+
+    @Override
+    public PrintStream append(char c) {
+        getPrintStream().append(c);
+        return this;
+    }
+}
@@ -27,17 +27,20 @@ import java.util.concurrent.Callable;
 /**
  * An helper class used to redirect {@link java.lang.System#out} and {@link java.lang.System#err}
  * and restore them at the end of a task.
+ * <p>
+ * Tasks can run concurrently : the system streams are replaced while at least one task is running and each thread
+ * is forwarded to its own streams.
  *
  * @author Fabien DUMINY (fduminy at jnode dot org)
  */
 public class ForwardingSystemOutputStreams {
-    private final ForwardingOutputStream output;
-    private final ForwardingOutputStream error;
+    private static final Object LOCK = new Object();
 
-    public ForwardingSystemOutputStreams() {
-        output = new ForwardingOutputStream(System.out);
-        error = new ForwardingOutputStream(System.err);
-    }
+    private static int nbRunningTasks;
+    private static PrintStream oldOut;
+    private static PrintStream oldErr;
+    private static ForwardingPrintStream output;
+    private static ForwardingPrintStream error;
 
     /**
      * Run the given task and redirect its error and output streams.
@@ -48,17 +51,41 @@ public class ForwardingSystemOutputStreams {
      * @return of the task.
      */
     public <T> T forwardOutputStreams(Callable<T> callable, Appendable out, Appendable err) throws Exception {
-        output.forward(Thread.currentThread(), new StringOutputStream(out));
-        error.forward(Thread.currentThread(), new StringOutputStream(err));
-        PrintStream oldOut = System.out;
-        PrintStream oldErr = System.err;
-        System.setOut(new PrintStream(output));
-        System.setErr(new PrintStream(error));
+        Thread thread = Thread.currentThread();
+        ForwardingPrintStream taskOutput;
+        ForwardingPrintStream taskError;
+        synchronized (LOCK) {
+            if (nbRunningTasks == 0) {
+                oldOut = System.out;
+                oldErr = System.err;
+                output = new ForwardingPrintStream(oldOut);
+                error = new ForwardingPrintStream(oldErr);
+                System.setOut(output);
+                System.setErr(error);
+            }
+            nbRunningTasks++;
+            taskOutput = output;
+            taskError = error;
+        }
+
+        taskOutput.forward(thread, new StringOutputStream(out));
+        taskError.forward(thread, new StringOutputStream(err));
         try {
             return callable.call();
         } finally {
-            System.setOut(oldOut);
-            System.setErr(oldErr);
+            taskOutput.forward(thread, null);
+            taskError.forward(thread, null);
+            synchronized (LOCK) {
+                nbRunningTasks--;
+                if (nbRunningTasks == 0) {
+                    System.setOut(oldOut);
+                    System.setErr(oldErr);
+                    oldOut = null;
+                    oldErr = null;
+                    output = null;
+                    error = null;
+                }
+            }
         }
     }
 }
@@ -33,11 +33,16 @@ import org.junit.runner.JUnitCore;
 import org.junit.runner.Request;
 import org.junit.runner.Result;
 import org.junit.runner.manipulation.Filter;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
 import org.junit.runners.model.FrameworkMethod;
 
 import java.lang.reflect.Method;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import static org.jtestplatform.server.ServerUtils.printStackTrace;
 
@@ -45,8 +50,9 @@ import static org.jtestplatform.server.ServerUtils.printStackTrace;
  * @author Fabien DUMINY (fduminy at jnode dot org)
  *
  */
-public class JUnitTestFramework implements TestFramework {
+public class JUnitTestFramework implements BatchTestFramework {
     private final Map<String, TestData> tests = new HashMap<String, TestData>();
+    private final ConcurrentMap<Class<?>, Description> descriptions = new ConcurrentHashMap<Class<?>, Description>();
 
     /**
      * {@inheritDoc}
@@ -87,68 +93,242 @@ public class JUnitTestFramework implements TestFramework {
      */
     @Override
     public void runTest(TestResult testResult) throws UnknownTestException {
-        if (!getTests().contains(testResult.getTest())) { // will also find the tests
-            throw new UnknownTestException(testResult.getTest());
+        runTests(Collections.singletonList(testResult));
+    }
+
+    /**
+     * {@inheritDoc}
+     * The selected methods of a class are run in a single {@link JUnitCore} invocation and each given
+     * {@link TestResult} is filled with the result of its method.
+     */
+    @Override
+    public List<Integer> runTests(Collection<TestResult> testResults) throws UnknownTestException {
+        Map<Class<?>, Map<String, TestResult>> resultsByClass = new LinkedHashMap<Class<?>, Map<String, TestResult>>();
+        for (TestResult testResult : testResults) {
+            TestData t = tests.get(testResult.getTest());
+            if (t == null) {
+                throw new UnknownTestException(testResult.getTest());
+            }
+
+            Map<String, TestResult> classResults = resultsByClass.get(t.getTestClass());
+            if (classResults == null) {
+                classResults = new HashMap<String, TestResult>();
+                resultsByClass.put(t.getTestClass(), classResults);
+            }
+            classResults.put(t.getTestMethod(), testResult);
         }
 
-        final TestData t = tests.get(testResult.getTest());
+        Map<TestResult, Integer> durations = new IdentityHashMap<TestResult, Integer>();
+        for (Map.Entry<Class<?>, Map<String, TestResult>> entry : resultsByClass.entrySet()) {
+            runTests(entry.getKey(), entry.getValue(), durations);
+        }
+
+        List<Integer> orderedDurations = new ArrayList<Integer>(testResults.size());
+        for (TestResult testResult : testResults) {
+            Integer duration = durations.get(testResult);
+            orderedDurations.add((duration == null) ? 0 : duration);
+        }
+        return orderedDurations;
+    }
+
+    private void runTests(Class<?> testClass, Map<String, TestResult> results, Map<TestResult, Integer> durations) {
+        // a runner can't be reused since filtering it removes its other children : only its description is cached
+        final Request request = Request.aClass(testClass).filterWith(
+            new MethodsFilter(getDescription(testClass), results.keySet()));
         final JUnitCore core = new JUnitCore();
 
-        final Request request = Request.aClass(t.getTestClass()).filterWith(new Filter() {
-            @Override
-            public boolean shouldRun(Description description) {
-                String wantedClass = t.getTestClass().getName();
-                String wantedMethod = t.getTestMethod();
-
-                boolean match = description.getClassName().equals(wantedClass)
-                                && extractRealMethodName(description).equals(wantedMethod);
-
-                for (Description d : description.getChildren()) {
-                    match |= d.getClassName().equals(wantedClass)
-                             && extractRealMethodName(d).equals(wantedMethod);
-                    if (match) {
-                        break;
-                    }
+        ForwardingSystemOutputStreams streams = new ForwardingSystemOutputStreams();
+        CaptureBuffer out = new CaptureBuffer();
+        CaptureBuffer err = new CaptureBuffer();
+        MethodsListener listener = new MethodsListener(results.keySet(), out, err);
+        core.addListener(listener);
+        try {
+            streams.forwardOutputStreams(new Callable<Result>() {
+                @Override
+                public Result call() {
+                    return core.run(request);
                 }
+            }, out, err);
+
+            for (Map.Entry<String, TestResult> entry : results.entrySet()) {
+                MethodResult result = listener.getResult(entry.getKey());
+                result.fill(entry.getValue(), listener.classFailure);
+                durations.put(entry.getValue(), (int) TimeUnit.NANOSECONDS.toMillis(result.duration));
+            }
+        } catch (Exception e) {
+            for (TestResult testResult : results.values()) {
+                testResult.setFailure(e.getClass().getName(), printStackTrace(e, testResult), e.getMessage(), true);
+            }
+        } finally {
+            out.close();
+            err.close();
+        }
+    }
+
+    private Description getDescription(Class<?> testClass) {
+        Description description = descriptions.get(testClass);
+        if (description == null) {
+            description = Request.aClass(testClass).getRunner().getDescription();
+            descriptions.putIfAbsent(testClass, description);
+        }
+        return description;
+    }
+
+    private static String extractRealMethodName(Description d) {
+        String methodName = d.getMethodName();
+        if (methodName != null) {
+            int idx = methodName.lastIndexOf('[');
+            if (idx >= 0) {
+                methodName = methodName.substring(0, idx);
+            }
+        }
+        return methodName;
+    }
+
+    /**
+     * Selects the given methods of a class, found in the cached description of the class.
+     */
+    private static class MethodsFilter extends Filter {
+        private final Set<String> methods;
+        private final Set<Description> selected = new HashSet<Description>();
+
+        MethodsFilter(Description classDescription, Set<String> methods) {
+            this.methods = methods;
+            select(classDescription);
+        }
 
-                return match;
+        private boolean select(Description description) {
+            boolean match = description.isTest() && methods.contains(extractRealMethodName(description));
+            for (Description child : description.getChildren()) {
+                match |= select(child);
+            }
+            if (match) {
+                selected.add(description);
             }
+            return match;
+        }
+
+        @Override
+        public boolean shouldRun(Description description) {
+            return selected.contains(description);
+        }
 
-            @Override
-            public String describe() {
-                return TestName.toString(t.getTestClass(), t.getTestMethod());
+        @Override
+        public String describe() {
+            return "methods " + methods;
+        }
+    }
+
+    /**
+     * Collects the results of each method, including what it has written to the system streams. What is written
+     * before the first method (by a <code>@BeforeClass</code> method for example) is given to the first method, or
+     * to all the methods when none has been run.
+     */
+    private static class MethodsListener extends RunListener {
+        private final Set<String> methods;
+        private final CaptureBuffer out;
+        private final CaptureBuffer err;
+        private final Map<String, MethodResult> results = new HashMap<String, MethodResult>();
+        private Throwable classFailure;
+        private long startTime;
+        private boolean started;
+        private String classOut;
+        private String classErr;
+
+        MethodsListener(Set<String> methods, CaptureBuffer out, CaptureBuffer err) {
+            this.methods = methods;
+            this.out = out;
+            this.err = err;
+        }
+
+        @Override
+        public void testStarted(Description description) throws Exception {
+            if (!started) {
+                started = true;
+                classOut = (out.getNbChars() > 0) ? out.toString() : null;
+                classErr = (err.getNbChars() > 0) ? err.toString() : null;
             }
 
-            private String extractRealMethodName(Description d) {
-                String methodName = d.getMethodName();
-                if (methodName != null) {
-                    int idx = methodName.lastIndexOf('[');
-                    if (idx >= 0) {
-                        methodName = methodName.substring(0, idx);
-                    }
+            // each method has its own bounded output
+            out.clear();
+            err.clear();
+            startTime = System.nanoTime();
+        }
+
+        @Override
+        public void testFinished(Description description) throws Exception {
+            MethodResult result = getResult(extractRealMethodName(description));
+            result.duration += System.nanoTime() - startTime;
+            if (classOut != null) {
+                result.out.append(classOut);
+                classOut = null;
+            }
+            if (classErr != null) {
+                result.err.append(classErr);
+                classErr = null;
+            }
+            result.out.append(out.toString());
+            result.err.append(err.toString());
+            out.clear();
+            err.clear();
+        }
+
+        @Override
+        public void testRunFinished(Result result) throws Exception {
+            if (!started) {
+                // no method has been run (because of a failure in a @BeforeClass method for example)
+                for (String method : methods) {
+                    getResult(method).out.append(out.toString());
+                    getResult(method).err.append(err.toString());
                 }
-                return methodName;
             }
-        });
+        }
 
-        ForwardingSystemOutputStreams streams = new ForwardingSystemOutputStreams();
-        StringBuilder out = new StringBuilder();
-        StringBuilder err = new StringBuilder();
-        try {
-            Result result = streams.forwardOutputStreams(new Callable<Result>() {
-                @Override
-                public Result call() {
-                    return core.run(request);
+        @Override
+        public void testFailure(Failure failure) throws Exception {
+            String method = extractRealMethodName(failure.getDescription());
+            if (!methods.contains(method)) {
+                // failure of the class (in a @BeforeClass method or an initialization error for example)
+                if (classFailure == null) {
+                    classFailure = failure.getException();
                 }
-            }, out, err);
+            } else {
+                MethodResult result = getResult(method);
+                if (result.failure == null) {
+                    result.failure = failure.getException();
+                }
+            }
+        }
+
+        @Override
+        public void testIgnored(Description description) throws Exception {
+            getResult(extractRealMethodName(description)).ignored = true;
+        }
 
-            if (result.getIgnoreCount() > 0) {
+        MethodResult getResult(String method) {
+            MethodResult result = results.get(method);
+            if (result == null) {
+                result = new MethodResult();
+                results.put(method, result);
+            }
+            return result;
+        }
+    }
+
+    private static class MethodResult {
+        private final StringBuilder out = new StringBuilder();
+        private final StringBuilder err = new StringBuilder();
+        private Throwable failure;
+        private boolean ignored;
+        private long duration;
+
+        void fill(TestResult testResult, Throwable classFailure) {
+            Throwable t = (failure == null) ? classFailure : failure;
+            if (ignored) {
                 testResult.setIgnored();
-            } else if (result.getFailureCount() != 0) {
-                Throwable failure = result.getFailures().get(0).getException();
-                boolean error = !(failure instanceof AssertionError);
-                testResult.setFailure(failure.getClass().getName(), printStackTrace(failure, testResult),
-                                      failure.getMessage(), error);
+            } else if (t != null) {
+                boolean error = !(t instanceof AssertionError);
+                testResult.setFailure(t.getClass().getName(), printStackTrace(t, testResult), t.getMessage(), error);
                 if (out.length() > 0) {
                     testResult.setSystemOut(out.toString());
                 }
@@ -156,8 +336,6 @@ public class JUnitTestFramework implements TestFramework {
                     testResult.setSystemErr(err.toString());
                 }
             }
-        } catch (Exception e) {
-            testResult.setFailure(e.getClass().getName(), printStackTrace(e, testResult), e.getMessage(), true);
         }
     }
 
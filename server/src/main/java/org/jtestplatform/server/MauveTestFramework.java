@@ -37,6 +37,8 @@ import java.io.InputStream;
 import java.io.Reader;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static org.jtestplatform.server.ServerUtils.printStackTrace;
 
@@ -45,14 +47,29 @@ import static org.jtestplatform.server.ServerUtils.printStackTrace;
  *
  */
 public class MauveTestFramework implements TestFramework {
-    private final List<String> testList;
+    /**
+     * Testlets change the default locale, which is global to the JVM, and restore it afterwards, so they must not run
+     * concurrently : the Mauve tests are run one at a time, even when the server has several workers.
+     */
+    private static final Object TESTLET_LOCK = new Object();
+
+    /**
+     * The names of the tests, in insertion order, without duplicates.
+     */
+    private final Set<String> testList;
+
+    /**
+     * The classes of the tests that have already been resolved, by name.
+     */
+    private final ConcurrentMap<String, Class<? extends Testlet>> testletClasses;
 
     /**
      * @throws IOException
      *
      */
     public MauveTestFramework() {
-        testList = new ArrayList<String>();
+        testList = new LinkedHashSet<String>();
+        testletClasses = new ConcurrentHashMap<String, Class<? extends Testlet>>();
     }
 
     public void addDefaultTests() throws IOException {
@@ -71,9 +88,8 @@ public class MauveTestFramework implements TestFramework {
             throw new Exception("no test method in class " + testClass.getName());
         }
 
-        for (String test : tests) {
-            testList.add(testClass.getName());
-        }
+        testList.addAll(tests);
+        testletClasses.put(testClass.getName(), testClass.asSubclass(Testlet.class));
     }
 
     /**
@@ -88,7 +104,7 @@ public class MauveTestFramework implements TestFramework {
      * {@inheritDoc}
      */
     @Override
-    public List<String> getTests() {
+    public Collection<String> getTests() {
         return testList;
     }
 
@@ -104,13 +120,13 @@ public class MauveTestFramework implements TestFramework {
 
         final JTSMauve m = new JTSMauve();
         ForwardingSystemOutputStreams streams = new ForwardingSystemOutputStreams();
-        StringBuilder out = new StringBuilder();
-        StringBuilder err = new StringBuilder();
+        CaptureBuffer out = new CaptureBuffer();
+        CaptureBuffer err = new CaptureBuffer();
         try {
             streams.forwardOutputStreams(new Callable<Void>() {
                 @Override
                 public Void call() throws Exception {
-                    m.runTest(testResult.getTest());
+                    m.runTest(getTestletClass(testResult.getTest()));
                     return null;
                 }
             }, out, err);
@@ -124,24 +140,38 @@ public class MauveTestFramework implements TestFramework {
             testResult.setSystemOut(out.toString());
             testResult.setSystemErr(err.toString());
             testResult.setFailure(e.getClass().getName(), printStackTrace(e, testResult), e.getMessage(), true);
+        } finally {
+            out.close();
+            err.close();
+            m.debugLog.close();
+        }
+    }
+
+    private Class<? extends Testlet> getTestletClass(String testName) throws ClassNotFoundException {
+        Class<? extends Testlet> testletClass = testletClasses.get(testName);
+        if (testletClass == null) {
+            testletClass = Class.forName(testName).asSubclass(Testlet.class);
+            testletClasses.putIfAbsent(testName, testletClass);
         }
+        return testletClass;
     }
 
     private class JTSMauve extends TestHarness {
-        private final StringBuilder debugLog = new StringBuilder();
+        private final CaptureBuffer debugLog = new CaptureBuffer();
         private Boolean testPassed;
 
-        public void runTest(String testName) throws Exception {
-            // save the default locale, some tests change the default
-            Locale savedLocale = Locale.getDefault();
-
-            try {
-                Class<?> testClass = Class.forName(testName);
-                Testlet testlet = (Testlet) testClass.newInstance();
-                testlet.test(this);
-            } finally {
-                // restore the default locale
-                Locale.setDefault(savedLocale);
+        public void runTest(Class<? extends Testlet> testClass) throws Exception {
+            synchronized (TESTLET_LOCK) {
+                // save the default locale, some tests change the default
+                Locale savedLocale = Locale.getDefault();
+
+                try {
+                    Testlet testlet = testClass.newInstance();
+                    testlet.test(this);
+                } finally {
+                    // restore the default locale
+                    Locale.setDefault(savedLocale);
+                }
             }
         }
 
@@ -180,12 +210,12 @@ public class MauveTestFramework implements TestFramework {
 
         @Override
         public void debug(String s, boolean b) {
-            debugLog.append(s).append(' ').append(b);
+            debugLog.append(s).append(' ').append(String.valueOf(b));
         }
 
         @Override
         public void debug(Throwable throwable) {
-            debugLog.append(throwable);
+            debugLog.append(String.valueOf(throwable));
         }
 
         @Override
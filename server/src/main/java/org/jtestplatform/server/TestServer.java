@@ -25,15 +25,23 @@ import org.jtestplatform.common.message.*;
 import org.jtestplatform.common.message.Shutdown;
 import org.jtestplatform.common.transport.*;
 import org.jtestplatform.server.commands.GetFrameworkTestsCommand;
+import org.jtestplatform.server.commands.GetFrameworkTestsPageCommand;
 import org.jtestplatform.server.commands.GetTestFrameworksCommand;
 import org.jtestplatform.server.commands.RunTestCommand;
+import org.jtestplatform.server.commands.RunTestsCommand;
 import org.jtestplatform.server.commands.ShutdownCommand;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Fabien DUMINY (fduminy at jnode dot org)
@@ -43,7 +51,9 @@ public class TestServer {
 
     public static void main(String[] args) {
         try {
-            TestServer server = new TestServer();
+            int nbWorkers = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_NB_WORKERS;
+            String protocol = (args.length > 1) ? args[1] : UDPTransport.PROTOCOL;
+            TestServer server = new TestServer(createTransportFactory(protocol), nbWorkers);
             server.start();
         } catch (IOException e) {
             LOGGER.error("unable to read config", e);
@@ -55,8 +65,11 @@ public class TestServer {
     }
 
     private static final int SERVER_PORT = 10000;
+    private static final int DEFAULT_NB_WORKERS = Runtime.getRuntime().availableProcessors();
 
     private final Map<Class<? extends Message>, TestServerCommand<? extends Message, ? extends Message>> messageClassToCommand;
+    private final Set<Class<? extends Message>> concurrentMessageClasses;
+    private final ExecutorService workers;
     private final TransportHelper transportManager;
     private final TransportFactory transportFactory;
     private Transport transport;
@@ -66,29 +79,77 @@ public class TestServer {
     }
 
     public TestServer(TransportFactory transportFactory) throws Exception {
+        this(transportFactory, 1);
+    }
+
+    /**
+     * @param transportFactory The factory for the server transport. If null, a default one is used.
+     * @param nbWorkers The number of tests that can be run concurrently. Tests are only run concurrently for clients
+     *                  that can match the replies with their requests, other clients are served one request at a time.
+     * @throws Exception
+     */
+    public TestServer(TransportFactory transportFactory, int nbWorkers) throws Exception {
         messageClassToCommand = new HashMap<Class<? extends Message>, TestServerCommand<? extends Message, ? extends Message>>();
+        concurrentMessageClasses = new HashSet<Class<? extends Message>>();
 
-        addCommand(RunTest.class, new RunTestCommand());
+        addCommand(RunTest.class, new RunTestCommand(), true);
+        addCommand(RunTests.class, new RunTestsCommand(), true);
         addCommand(Shutdown.class, new ShutdownCommand(this));
         addCommand(GetTestFrameworks.class, new GetTestFrameworksCommand());
         addCommand(GetFrameworkTests.class, new GetFrameworkTestsCommand());
+        addCommand(GetFrameworkTestsPage.class, new GetFrameworkTestsPageCommand());
 
         if (transportFactory == null) {
             LOGGER.warn("no TransportFactory specified. Using default one (UDPTransport on port {})", SERVER_PORT);
-            this.transportFactory = new TransportFactory() {
+            this.transportFactory = createTransportFactory(UDPTransport.PROTOCOL);
+        } else {
+            this.transportFactory = transportFactory;
+        }
+        transportManager = new TransportHelper();
+        workers = (nbWorkers > 1) ? Executors.newFixedThreadPool(nbWorkers, new WorkerThreadFactory()) : null;
+    }
+
+    /**
+     * @param protocol The protocol of the server transport : {@link UDPTransport#PROTOCOL} or
+     * {@link TCPTransport#PROTOCOL}.
+     * @return A factory for the server transport.
+     */
+    static TransportFactory createTransportFactory(String protocol) {
+        if (TCPTransport.PROTOCOL.equals(protocol)) {
+            return new TransportFactory() {
                 @Override
                 public Transport create() throws TransportException {
-                    return new UDPTransport(SERVER_PORT);
+                    return new TCPTransport(SERVER_PORT);
                 }
             };
-        } else {
-            this.transportFactory = transportFactory;
         }
-        transportManager = new TransportHelper();
+        if (UDPTransport.PROTOCOL.equals(protocol)) {
+            return new TransportFactory() {
+                @Override
+                public Transport create() throws TransportException {
+                    return new UDPTransport(SERVER_PORT, true);
+                }
+            };
+        }
+        throw new IllegalArgumentException("unknown transport : " + protocol);
     }
 
     <TM extends Message> void addCommand(Class<TM> messageClass, TestServerCommand<TM, ? extends Message> command) {
+        addCommand(messageClass, command, false);
+    }
+
+    <TM extends Message> void addCommand(Class<TM> messageClass, TestServerCommand<TM, ? extends Message> command,
+                                         boolean concurrent) {
         messageClassToCommand.put(messageClass, command);
+        if (concurrent) {
+            concurrentMessageClasses.add(messageClass);
+        } else {
+            concurrentMessageClasses.remove(messageClass);
+        }
+    }
+
+    <TM extends Message> void registerMessage(Class<TM> messageClass, MessageFactory<TM> factory) {
+        transportManager.getRegistry().register(messageClass, factory);
     }
 
     public void start() throws Exception {
@@ -100,40 +161,66 @@ public class TestServer {
         }
     }
 
-    @SuppressWarnings("unchecked")
-    void processCommand(Transport transport) throws TransportException {
-        Message message = transportManager.receive(transport);
-        TestServerCommand command = messageClassToCommand.get(message.getClass());
+    void processCommand(final Transport transport) throws TransportException {
+        final Message message = transportManager.receive(transport);
+        final int correlationId = TransportHelper.getCorrelationId(transport);
+        final TestServerCommand command = messageClassToCommand.get(message.getClass());
 
+        if ((command != null) && (workers != null) && (correlationId != TransportHelper.NO_CORRELATION_ID)
+            && concurrentMessageClasses.contains(message.getClass())) {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        executeCommand(transport, correlationId, command, message);
+                    } catch (TransportException e) {
+                        LOGGER.error(e.getMessage(), e);
+                    }
+                }
+            });
+        } else {
+            executeCommand(transport, correlationId, command, message);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void executeCommand(Transport transport, int correlationId, TestServerCommand command, Message message)
+        throws TransportException {
         if (command != null) {
             Message result = null;
             try {
                 result = command.execute(message);
             } catch (Exception e) {
-                handleError(transport, "Error in " + command.getClass().getSimpleName() + " : " + e.getMessage(), e);
+                handleError(transport, correlationId,
+                            "Error in " + command.getClass().getSimpleName() + " : " + e.getMessage(), e);
             }
             if (result != null) {
                 try {
-                    transportManager.send(transport, result);
+                    transportManager.send(transport, result, correlationId);
                 } catch (TransportException e) {
                     LOGGER.error(e.getMessage(), e);
                 }
             }
         } else {
-            handleError(transport, "No command for message : " + message.getClass().getName(), null);
+            handleError(transport, correlationId, ErrorMessage.NO_COMMAND_FOR_MESSAGE + message.getClass().getName(),
+                        null);
         }
     }
 
-    private void handleError(Transport transport, String message, Exception e) throws TransportException {
+    private void handleError(Transport transport, int correlationId, String message, Exception e)
+        throws TransportException {
         if (e == null) {
             LOGGER.error(message);
         } else {
             LOGGER.error(message, e);
         }
-        transportManager.send(transport, new ErrorMessage(message));
+        transportManager.send(transport, new ErrorMessage(message), correlationId);
     }
 
     private void shutdown() {
+        if (workers != null) {
+            workers.shutdown();
+        }
         if (transport != null) {
             try {
                 transportManager.stop(transport);
@@ -148,4 +235,15 @@ public class TestServer {
         LOGGER.info("shutdown requested");
         shutdown();
     }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger nextId = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "test-worker-" + nextId.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
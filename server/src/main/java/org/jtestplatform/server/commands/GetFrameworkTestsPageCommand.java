@@ -0,0 +1,72 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.server.commands;
+
+import org.jtestplatform.common.message.FrameworkTestsPage;
+import org.jtestplatform.common.message.GetFrameworkTestsPage;
+import org.jtestplatform.server.TestFrameworkManager;
+import org.jtestplatform.server.TestServerCommand;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Paged variant of {@link GetFrameworkTestsCommand}. The tests of a framework are copied when its first page is
+ * asked, so that the next pages are consistent with it and are extracted without walking the previous tests. The copy
+ * is released after the last page.
+ *
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+public class GetFrameworkTestsPageCommand implements TestServerCommand<GetFrameworkTestsPage, FrameworkTestsPage> {
+    private final Map<String, List<String>> testsByFramework = new ConcurrentHashMap<String, List<String>>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public FrameworkTestsPage execute(GetFrameworkTestsPage message) throws Exception {
+        if (message.getCursor() < 0) {
+            throw new IllegalArgumentException("invalid cursor : " + message.getCursor());
+        }
+        if (message.getPageSize() <= 0) {
+            throw new IllegalArgumentException("invalid page size : " + message.getPageSize());
+        }
+
+        List<String> tests = testsByFramework.get(message.getFramework());
+        if ((tests == null) || (message.getCursor() == 0)) {
+            TestFrameworkManager manager = TestFrameworkManager.getInstance();
+            tests = new ArrayList<String>(manager.getTestFramework(message.getFramework()).getTests());
+            testsByFramework.put(message.getFramework(), tests);
+        }
+
+        int from = Math.min(message.getCursor(), tests.size());
+        int to = (int) Math.min((long) from + message.getPageSize(), tests.size());
+        int nextCursor = to;
+        if (to == tests.size()) {
+            nextCursor = FrameworkTestsPage.LAST_PAGE;
+            testsByFramework.remove(message.getFramework());
+        }
+        return new FrameworkTestsPage(new ArrayList<String>(tests.subList(from, to)), nextCursor);
+    }
+}
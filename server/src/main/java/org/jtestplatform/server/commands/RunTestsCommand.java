@@ -0,0 +1,91 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.server.commands;
+
+import org.jtestplatform.common.message.RunTests;
+import org.jtestplatform.common.message.TestResult;
+import org.jtestplatform.common.message.TestResults;
+import org.jtestplatform.server.BatchTestFramework;
+import org.jtestplatform.server.TestFramework;
+import org.jtestplatform.server.TestFrameworkManager;
+import org.jtestplatform.server.TestServerCommand;
+import org.jtestplatform.server.UnknownTestException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.jtestplatform.server.ServerUtils.printStackTrace;
+
+/**
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+public class RunTestsCommand implements TestServerCommand<RunTests, TestResults> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RunTestsCommand.class);
+
+    @Override
+    public TestResults execute(RunTests message) throws Exception {
+        LOGGER.debug("running {} tests on framework {}", message.getTests().size(), message.getFramework());
+
+        TestFrameworkManager manager = TestFrameworkManager.getInstance();
+        TestFramework testFramework = manager.getTestFramework(message.getFramework());
+        if (testFramework instanceof BatchTestFramework) {
+            List<TestResult> results = createTestResults(message);
+            try {
+                List<Integer> durations = ((BatchTestFramework) testFramework).runTests(results);
+                return new TestResults(results, durations);
+            } catch (UnknownTestException e) {
+                // no test has been run : run them one by one to report the unknown test and run the other ones
+                LOGGER.error("error while running a batch of tests : running them one by one", e);
+            }
+        }
+
+        return runTests(testFramework, message);
+    }
+
+    private TestResults runTests(TestFramework testFramework, RunTests message) {
+        List<TestResult> results = createTestResults(message);
+        List<Integer> durations = new ArrayList<Integer>(results.size());
+        for (TestResult testResult : results) {
+            long start = System.nanoTime();
+            try {
+                testFramework.runTest(testResult);
+            } catch (Exception e) {
+                // the error is reported as the result of this test and the other tests of the batch are still run
+                LOGGER.error("error while running test " + testResult.getTest(), e);
+                testResult.setFailure(e.getClass().getName(), printStackTrace(e, testResult), e.getMessage(), true);
+            }
+            durations.add((int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        return new TestResults(results, durations);
+    }
+
+    private static List<TestResult> createTestResults(RunTests message) {
+        List<TestResult> results = new ArrayList<TestResult>(message.getTests().size());
+        for (String test : message.getTests()) {
+            results.add(new TestResult(message.getFramework(), test));
+        }
+        return results;
+    }
+}
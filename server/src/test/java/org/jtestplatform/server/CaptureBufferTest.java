@@ -0,0 +1,129 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.server;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+public class CaptureBufferTest {
+    @Test
+    public void testAppend_notTruncated() {
+        CaptureBuffer buffer = new CaptureBuffer(10, false);
+
+        buffer.append("abcdefghij");
+
+        assertThat(buffer.toString()).isEqualTo("abcdefghij");
+        assertThat(buffer.isTruncated()).as("truncated").isFalse();
+        assertThat(buffer.getSpillFile()).as("spillFile").isNull();
+    }
+
+    @Test
+    public void testAppend_truncated() {
+        CaptureBuffer buffer = new CaptureBuffer(10, false);
+
+        buffer.append("abcdefghijklmnop");
+
+        assertThat(buffer.toString()).isEqualTo("abcde\n[... 6 characters truncated ...]\nlmnop");
+        assertThat(buffer.isTruncated()).as("truncated").isTrue();
+        assertThat(buffer.getNbChars()).as("nbChars").isEqualTo(16);
+        assertThat(buffer.getSpillFile()).as("spillFile").isNull();
+    }
+
+    @Test
+    public void testAppend_spilled() throws Exception {
+        CaptureBuffer buffer = new CaptureBuffer(4, true);
+
+        buffer.append("0123456789");
+        buffer.close();
+
+        assertThat(buffer.getSpillFile()).as("spillFile").isNotNull();
+        try {
+            assertThat(buffer.toString()).isEqualTo("01\n[... 6 characters truncated, full output in "
+                                                    + buffer.getSpillFile().getAbsolutePath() + " ...]\n89");
+            assertThat(FileUtils.readFileToString(buffer.getSpillFile(), Charset.forName("UTF-8"))).isEqualTo("0123456789");
+        } finally {
+            buffer.getSpillFile().delete();
+        }
+    }
+
+    @Test
+    public void testAppend_spillFileFull() throws Exception {
+        CaptureBuffer buffer = new CaptureBuffer(4, true, 6);
+
+        buffer.append("0123456789");
+        buffer.close();
+
+        assertThat(buffer.getSpillFile()).as("spillFile").isNotNull();
+        try {
+            assertThat(buffer.toString()).isEqualTo("01\n[... 6 characters truncated, first 6 characters in "
+                                                    + buffer.getSpillFile().getAbsolutePath() + " ...]\n89");
+            assertThat(FileUtils.readFileToString(buffer.getSpillFile(), Charset.forName("UTF-8"))).isEqualTo("012345");
+        } finally {
+            buffer.getSpillFile().delete();
+        }
+    }
+
+    @Test
+    public void testAppend_tailGrowing() {
+        char[] chars = new char[5000];
+        Arrays.fill(chars, 'a');
+        String output = new String(chars);
+        CaptureBuffer buffer = new CaptureBuffer(20000, false);
+
+        buffer.append(output);
+
+        assertThat(buffer.toString()).isEqualTo(output);
+        assertThat(buffer.isTruncated()).as("truncated").isFalse();
+    }
+
+    @Test
+    public void testClear() {
+        CaptureBuffer buffer = new CaptureBuffer(4, false);
+        buffer.append("0123456789");
+
+        buffer.clear();
+        buffer.append("ab");
+
+        assertThat(buffer.toString()).isEqualTo("ab");
+        assertThat(buffer.isTruncated()).as("truncated").isFalse();
+    }
+
+    @Test
+    public void testConstructor_properties() {
+        Properties properties = new Properties();
+        properties.setProperty(CaptureBuffer.MAX_CHARS_PROPERTY, "2");
+        CaptureBuffer buffer = new CaptureBuffer(properties);
+
+        buffer.append("abc");
+
+        assertThat(buffer.toString()).isEqualTo("a\n[... 1 characters truncated ...]\nc");
+    }
+}
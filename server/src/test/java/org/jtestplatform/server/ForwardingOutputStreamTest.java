@@ -21,7 +21,9 @@
  */
 package org.jtestplatform.server;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 import org.mockito.Mockito;
 
 import java.io.IOException;
@@ -39,6 +41,9 @@ import static org.mockito.Mockito.*;
  * @author Fabien DUMINY (fduminy at jnode dot org)
  */
 public class ForwardingOutputStreamTest extends OutputStreamTest<ForwardingOutputStream> {
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
     @Test
     public void testWrite_int_specificThread() throws Exception {
         new StreamWriteTestInThread(WRITE_INT, 0, 1).test();
@@ -54,6 +59,14 @@ public class ForwardingOutputStreamTest extends OutputStreamTest<ForwardingOutpu
         new StreamWriteTestInThread(WRITE_BYTE_ARRAY, 0, BYTES.length).test();
     }
 
+    @Test
+    public void testForward_otherThread() throws Exception {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("only the current thread can be forwarded");
+
+        createOutputStream(mock(OutputStream.class)).forward(new Thread(), mock(OutputStream.class));
+    }
+
     @Test
     public void testClose_forward() throws IOException {
         testStreamAction(CLOSE, true, false);
@@ -0,0 +1,96 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.server;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+public class ForwardingPrintStreamTest {
+    @Test
+    public void testPrintln_defaultStream() throws Exception {
+        // prepare
+        ByteArrayOutputStream defaultOutput = new ByteArrayOutputStream();
+        ForwardingPrintStream stream = new ForwardingPrintStream(new PrintStream(defaultOutput));
+
+        // test
+        stream.println("default");
+
+        // verify
+        assertThat(defaultOutput.toString()).isEqualTo("default" + System.getProperty("line.separator"));
+    }
+
+    @Test
+    public void testPrintln_forwardedThread() throws Exception {
+        // prepare
+        ByteArrayOutputStream defaultOutput = new ByteArrayOutputStream();
+        ForwardingPrintStream stream = new ForwardingPrintStream(new PrintStream(defaultOutput));
+        StringBuilder threadOutput = new StringBuilder();
+        stream.forward(Thread.currentThread(), new StringOutputStream(threadOutput));
+
+        // test
+        stream.print("thread");
+        stream.printf(" %d", 1);
+        stream.forward(Thread.currentThread(), null);
+        stream.print("default");
+
+        // verify
+        assertThat(threadOutput.toString()).as("thread output").isEqualTo("thread 1");
+        assertThat(defaultOutput.toString()).as("default output").isEqualTo("default");
+    }
+
+    @Test
+    public void testPrintln_forwardedThreadDoesNotTakeTheSharedLock() throws Exception {
+        // prepare
+        final ForwardingPrintStream stream = new ForwardingPrintStream(new PrintStream(new ByteArrayOutputStream()));
+        final StringBuilder threadOutput = new StringBuilder();
+        final CountDownLatch printed = new CountDownLatch(1);
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                stream.forward(Thread.currentThread(), new StringOutputStream(threadOutput));
+                stream.print("thread");
+                stream.forward(Thread.currentThread(), null);
+                printed.countDown();
+            }
+        };
+
+        // test
+        boolean threadPrinted;
+        synchronized (stream) {
+            thread.start();
+            threadPrinted = printed.await(10, TimeUnit.SECONDS);
+        }
+
+        // verify
+        assertThat(threadPrinted).as("printed while the shared stream is locked").isTrue();
+        assertThat(threadOutput.toString()).as("thread output").isEqualTo("thread");
+    }
+}
@@ -22,6 +22,9 @@
 package org.jtestplatform.server;
 
 import junit.framework.TestCase;
+import org.jtestplatform.common.TestName;
+import org.jtestplatform.common.message.TestResult;
+import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -29,7 +32,9 @@ import org.junit.runners.Parameterized;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.jtestplatform.common.transport.TransportHelperTest.SYSTEM_ERR;
 import static org.jtestplatform.common.transport.TransportHelperTest.SYSTEM_OUT;
 import static org.jtestplatform.server.ServerUtils.printStackTrace;
@@ -62,6 +67,55 @@ public class JUnitTestFrameworkTest extends TestFrameworkTest<JUnitTestFramework
         addFailingTest(testClass, method, FAILURE.getClass().getName(), stackTrace, FAILURE.getMessage());
     }
 
+    @Test
+    public void testRunTests_severalMethodsOfAClass() throws Exception {
+        JUnitTestFramework testFramework = new JUnitTestFramework();
+        addTestsTo(testFramework);
+        TestResult passing = testResult(TestClass.class, "aPassingTest");
+        TestResult failing = testResult(TestClass.class, "aFailingTest");
+        TestResult ignored = testResult(TestClass.class, "anIgnoredTest");
+        TestResult junit3 = testResult(JUnit3TestClassTest.class, "testThatPasses");
+
+        List<Integer> durations = testFramework.runTests(Arrays.asList(passing, failing, ignored, junit3));
+
+        assertThat(durations).as("durations").hasSize(4);
+        assertThat(passing.isSuccess()).as("passing: success").isTrue();
+        assertThat(passing.getSystemOut()).as("passing: systemOut").isNull();
+        assertThat(failing.isSuccess()).as("failing: success").isFalse();
+        assertThat(failing.isError()).as("failing: error").isFalse();
+        assertThat(failing.getFailureType()).as("failing: failureType").isEqualTo(FAILURE.getClass().getName());
+        assertThat(failing.getSystemOut()).as("failing: systemOut").isEqualTo(SYSTEM_OUT + '\n');
+        assertThat(failing.getSystemErr()).as("failing: systemErr").isEqualTo(SYSTEM_ERR + '\n');
+        assertThat(ignored.isIgnored()).as("ignored: ignored").isTrue();
+        assertThat(junit3.isSuccess()).as("junit3: success").isTrue();
+    }
+
+    @Test
+    public void testRunTests_beforeClassOutput() throws Exception {
+        JUnitTestFramework testFramework = new JUnitTestFramework();
+        testFramework.addTestClass(BeforeClassTestClass.class);
+        TestResult failing = testResult(BeforeClassTestClass.class, "aFailingTest");
+
+        testFramework.runTests(Arrays.asList(failing));
+
+        assertThat(failing.isSuccess()).as("failing: success").isFalse();
+        assertThat(failing.getSystemOut()).as("failing: systemOut")
+                                          .isEqualTo(BeforeClassTestClass.BEFORE_CLASS_OUT + '\n' + SYSTEM_OUT + '\n');
+    }
+
+    @Test(expected = UnknownTestException.class)
+    public void testRunTests_unknownTest() throws Exception {
+        JUnitTestFramework testFramework = new JUnitTestFramework();
+        addTestsTo(testFramework);
+        TestResult passing = testResult(TestClass.class, "aPassingTest");
+
+        testFramework.runTests(Arrays.asList(passing, new TestResult("junit", "AnUnknownTest")));
+    }
+
+    private static TestResult testResult(Class<?> testClass, String method) {
+        return new TestResult("junit", TestName.toString(testClass, method));
+    }
+
     public static void addTestsTo(JUnitTestFramework testFramework) throws Exception {
         testFramework.addTestClass(ParameterizedTestClass.class);
         testFramework.addTestClass(TestClass.class);
@@ -126,6 +180,21 @@ public class JUnitTestFrameworkTest extends TestFrameworkTest<JUnitTestFramework
         }
     }
 
+    public static class BeforeClassTestClass {
+        static final String BEFORE_CLASS_OUT = "output of beforeClass";
+
+        @BeforeClass
+        public static void beforeClass() {
+            System.out.println(BEFORE_CLASS_OUT);
+        }
+
+        @Test
+        public void aFailingTest() {
+            System.out.println(SYSTEM_OUT);
+            throw FAILURE;
+        }
+    }
+
     public static class JUnit3TestClassTest extends TestCase {
         public void testThatPasses() {
         }
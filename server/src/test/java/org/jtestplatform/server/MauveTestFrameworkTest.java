@@ -23,7 +23,9 @@ package org.jtestplatform.server;
 
 import gnu.testlet.TestHarness;
 import gnu.testlet.Testlet;
+import org.junit.Test;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.jtestplatform.common.transport.TransportHelperTest.SYSTEM_ERR;
 import static org.jtestplatform.common.transport.TransportHelperTest.SYSTEM_OUT;
 
@@ -40,6 +42,16 @@ public class MauveTestFrameworkTest extends TestFrameworkTest<MauveTestFramework
         addTestWithError(MauveTestClassWithError.class, null);
     }
 
+    @Test
+    public void testAddTestClass_twice() throws Exception {
+        MauveTestFramework testFramework = new MauveTestFramework();
+
+        testFramework.addTestClass(MauveTestClass.class);
+        testFramework.addTestClass(MauveTestClass.class);
+
+        assertThat(testFramework.getTests()).containsExactly(MauveTestClass.class.getName());
+    }
+
     public static void addTestsTo(MauveTestFramework testFramework) throws Exception {
         testFramework.addTestClass(MauveTestClass.class);
         testFramework.addTestClass(MauveFailingTestClass.class);
@@ -23,15 +23,22 @@ package org.jtestplatform.server;
 
 import org.jtestplatform.common.message.ErrorMessage;
 import org.jtestplatform.common.message.Message;
+import org.jtestplatform.common.transport.FramedTransport;
+import org.jtestplatform.common.transport.MessageFactory;
 import org.jtestplatform.common.transport.Transport;
 import org.jtestplatform.common.transport.TransportException;
 import org.jtestplatform.common.transport.TransportFactory;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.theories.Theories;
 import org.junit.experimental.theories.Theory;
+import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
 
@@ -40,12 +47,15 @@ import static org.mockito.Mockito.*;
  */
 @RunWith(Theories.class)
 public class TestServerTest {
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
     @Test
     public void testProcessCommand_noCommandForMessage() throws Exception {
         // prepare
         Transport transport = mock(Transport.class);
         when(transport.receive()).thenReturn(MockMessage.class.getName());
-        TestServer testServer = new TestServer(mock(TransportFactory.class));
+        TestServer testServer = createTestServer();
 
         // test
         testServer.processCommand(transport);
@@ -60,7 +70,7 @@ public class TestServerTest {
         Transport transport = mock(Transport.class);
         when(transport.receive()).thenReturn(MockMessage.class.getName());
         doThrow(new TransportException("error")).when(transport).send(any(String.class));
-        TestServer testServer = new TestServer(mock(TransportFactory.class));
+        TestServer testServer = createTestServer();
         MockCommand command = new MockCommand(null, new MockMessage("message"));
         testServer.addCommand(MockMessage.class, command);
 
@@ -79,7 +89,7 @@ public class TestServerTest {
         Transport transport = mock(Transport.class);
         when(transport.receive()).thenReturn(MockMessage.class.getName());
 
-        TestServer testServer = new TestServer(mock(TransportFactory.class));
+        TestServer testServer = createTestServer();
         MockCommand command = new MockCommand("Something wrong happened in the command", null);
         testServer.addCommand(MockMessage.class, command);
 
@@ -91,6 +101,65 @@ public class TestServerTest {
                                "Error in " + command.getClass().getSimpleName() + " : " + command.expectedError);
     }
 
+    @Test
+    public void testProcessCommand_unknownMessageType() throws Exception {
+        // prepare
+        thrown.expect(TransportException.class);
+        thrown.expectMessage("unknown message type " + MockMessage.class.getName());
+        Transport transport = mock(Transport.class);
+        when(transport.receive()).thenReturn(MockMessage.class.getName());
+        TestServer testServer = new TestServer(mock(TransportFactory.class));
+
+        // test
+        testServer.processCommand(transport);
+    }
+
+    @Test
+    public void testProcessCommand_concurrentCommands() throws Exception {
+        // prepare
+        final int correlationId = 5;
+        FramedTransport transport = mock(FramedTransport.class);
+        when(transport.receive()).thenReturn(MockMessage.class.getName());
+        when(transport.getReceivedCorrelationId()).thenReturn(correlationId);
+        TestServer testServer = createTestServer(2);
+        final CountDownLatch runningCommands = new CountDownLatch(2);
+        MockCommand command = new MockCommand(null, new MockMessage("message")) {
+            @Override
+            public MockMessage execute(MockMessage message) throws Exception {
+                runningCommands.countDown();
+                if (!runningCommands.await(1, TimeUnit.SECONDS)) {
+                    throw new Exception("commands not executed concurrently");
+                }
+                return super.execute(message);
+            }
+        };
+        testServer.addCommand(MockMessage.class, command, true);
+
+        // test
+        testServer.processCommand(transport);
+        testServer.processCommand(transport);
+
+        // verify
+        verify(transport, timeout(2000).times(2)).send(eq("message"));
+        verify(transport, times(2)).setCorrelationId(correlationId);
+        verify(transport, never()).send(eq(ErrorMessage.class.getName()));
+    }
+
+    private TestServer createTestServer() throws Exception {
+        return createTestServer(1);
+    }
+
+    private TestServer createTestServer(int nbWorkers) throws Exception {
+        TestServer testServer = new TestServer(mock(TransportFactory.class), nbWorkers);
+        testServer.registerMessage(MockMessage.class, new MessageFactory<MockMessage>() {
+            @Override
+            public MockMessage create() {
+                return new MockMessage();
+            }
+        });
+        return testServer;
+    }
+
     private void verifySentErrorMessage(Transport transport, String errorMessage) throws TransportException {
         verify(transport, times(1)).receive();
         ArgumentCaptor<String> sentMessages = ArgumentCaptor.forClass(String.class);
@@ -105,7 +174,7 @@ public class TestServerTest {
         Transport transport = mock(Transport.class);
         when(transport.receive()).thenReturn(MockMessage.class.getName());
 
-        TestServer testServer = new TestServer(mock(TransportFactory.class));
+        TestServer testServer = createTestServer();
         String expectedMessage = "expectedMessage";
         MockMessage expectedAnswer = nullResult ? null : spy(new MockMessage(expectedMessage));
         MockCommand command = spy(new MockCommand(null, expectedAnswer));
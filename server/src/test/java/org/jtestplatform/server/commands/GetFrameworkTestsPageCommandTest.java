@@ -0,0 +1,91 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.server.commands;
+
+import org.jtestplatform.common.message.FrameworkTestsPage;
+import org.jtestplatform.common.message.GetFrameworkTestsPage;
+import org.jtestplatform.server.TestFramework;
+import org.jtestplatform.server.TestFrameworkManager;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+public class GetFrameworkTestsPageCommandTest {
+    private static final String FRAMEWORK = "pagedFramework";
+    private static final List<String> TESTS = Arrays.asList("test1", "test2", "test3", "test4", "test5");
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    @BeforeClass
+    public static void addTestFramework() {
+        TestFramework framework = mock(TestFramework.class);
+        when(framework.getName()).thenReturn(FRAMEWORK);
+        when(framework.getTests()).thenReturn(TESTS);
+        TestFrameworkManager.getInstance().addTestFramework(framework);
+    }
+
+    @Test
+    public void testExecute_allPages() throws Exception {
+        GetFrameworkTestsPageCommand command = new GetFrameworkTestsPageCommand();
+
+        FrameworkTestsPage page1 = command.execute(new GetFrameworkTestsPage(FRAMEWORK, 0, 2));
+        FrameworkTestsPage page2 = command.execute(new GetFrameworkTestsPage(FRAMEWORK, page1.getNextCursor(), 2));
+        FrameworkTestsPage page3 = command.execute(new GetFrameworkTestsPage(FRAMEWORK, page2.getNextCursor(), 2));
+
+        assertThat(page1.getTests()).containsExactly("test1", "test2");
+        assertThat(page1.isLastPage()).as("page1 is last").isFalse();
+        assertThat(page2.getTests()).containsExactly("test3", "test4");
+        assertThat(page2.isLastPage()).as("page2 is last").isFalse();
+        assertThat(page3.getTests()).containsExactly("test5");
+        assertThat(page3.isLastPage()).as("page3 is last").isTrue();
+    }
+
+    @Test
+    public void testExecute_singlePage() throws Exception {
+        GetFrameworkTestsPageCommand command = new GetFrameworkTestsPageCommand();
+
+        FrameworkTestsPage page = command.execute(new GetFrameworkTestsPage(FRAMEWORK, 0, TESTS.size()));
+
+        assertThat(page.getTests()).containsExactlyElementsOf(TESTS);
+        assertThat(page.getNextCursor()).isEqualTo(FrameworkTestsPage.LAST_PAGE);
+    }
+
+    @Test
+    public void testExecute_invalidPageSize() throws Exception {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("invalid page size : 0");
+
+        new GetFrameworkTestsPageCommand().execute(new GetFrameworkTestsPage(FRAMEWORK, 0, 0));
+    }
+}
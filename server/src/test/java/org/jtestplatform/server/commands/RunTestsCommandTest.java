@@ -0,0 +1,152 @@
+/**
+ * JTestPlatform is a client/server framework for testing any JVM
+ * implementation.
+ *
+ * Copyright (C) 2008-2016  Fabien DUMINY (fduminy at jnode dot org)
+ *
+ * JTestPlatform is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * JTestPlatform is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package org.jtestplatform.server.commands;
+
+import org.jtestplatform.common.message.RunTests;
+import org.jtestplatform.common.message.TestResult;
+import org.jtestplatform.common.message.TestResults;
+import org.jtestplatform.server.BatchTestFramework;
+import org.jtestplatform.server.TestFramework;
+import org.jtestplatform.server.TestFrameworkManager;
+import org.jtestplatform.server.UnknownTestException;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Fabien DUMINY (fduminy at jnode dot org)
+ */
+public class RunTestsCommandTest {
+    private static final String FRAMEWORK = "batchFramework";
+    private static final String BATCH_FRAMEWORK = "batchedFramework";
+    private static final String FAILING_TEST = "failingTest";
+
+    private static final Answer<Void> FAIL_ON_FAILING_TEST = new Answer<Void>() {
+        @Override
+        public Void answer(InvocationOnMock invocation) throws Throwable {
+            TestResult testResult = (TestResult) invocation.getArguments()[0];
+            if (FAILING_TEST.equals(testResult.getTest())) {
+                throw new UnknownTestException(FAILING_TEST);
+            }
+            return null;
+        }
+    };
+
+    private static BatchTestFramework batchFramework;
+
+    @BeforeClass
+    public static void addTestFrameworks() throws Exception {
+        TestFramework framework = mock(TestFramework.class);
+        when(framework.getName()).thenReturn(FRAMEWORK);
+        doAnswer(FAIL_ON_FAILING_TEST).when(framework).runTest(any(TestResult.class));
+        TestFrameworkManager.getInstance().addTestFramework(framework);
+
+        batchFramework = mock(BatchTestFramework.class);
+        when(batchFramework.getName()).thenReturn(BATCH_FRAMEWORK);
+        TestFrameworkManager.getInstance().addTestFramework(batchFramework);
+    }
+
+    @Before
+    public void resetBatchFramework() {
+        reset(batchFramework);
+        when(batchFramework.getName()).thenReturn(BATCH_FRAMEWORK);
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        RunTestsCommand command = new RunTestsCommand();
+
+        TestResults results = command.execute(new RunTests(FRAMEWORK, Arrays.asList("test1", "test2")));
+
+        assertThat(results.getResults()).hasSize(2);
+        assertThat(results.getDurations()).hasSize(2);
+        assertThat(results.getResults().get(0).getTest()).isEqualTo("test1");
+        assertThat(results.getResults().get(0).isSuccess()).as("test1 succeeded").isTrue();
+        assertThat(results.getResults().get(1).getTest()).isEqualTo("test2");
+        assertThat(results.getResults().get(1).isSuccess()).as("test2 succeeded").isTrue();
+    }
+
+    @Test
+    public void testExecute_errorInATest() throws Exception {
+        RunTestsCommand command = new RunTestsCommand();
+
+        TestResults results = command.execute(new RunTests(FRAMEWORK, Arrays.asList("test1", FAILING_TEST, "test2")));
+
+        List<TestResult> testResults = results.getResults();
+        assertThat(testResults).hasSize(3);
+        assertThat(results.getDurations()).hasSize(3);
+        assertThat(testResults.get(0).isSuccess()).as("test1 succeeded").isTrue();
+        assertThat(testResults.get(1).getTest()).isEqualTo(FAILING_TEST);
+        assertThat(testResults.get(1).isSuccess()).as("failingTest succeeded").isFalse();
+        assertThat(testResults.get(1).isError()).as("failingTest error").isTrue();
+        assertThat(testResults.get(1).getFailureType()).isEqualTo(UnknownTestException.class.getName());
+        assertThat(testResults.get(2).getTest()).isEqualTo("test2");
+        assertThat(testResults.get(2).isSuccess()).as("test2 succeeded").isTrue();
+    }
+
+    @Test
+    public void testExecute_batchTestFramework() throws Exception {
+        // prepare
+        List<Integer> durations = Arrays.asList(3, 4);
+        when(batchFramework.runTests(anyCollectionOf(TestResult.class))).thenReturn(durations);
+        RunTestsCommand command = new RunTestsCommand();
+
+        // test
+        TestResults results = command.execute(new RunTests(BATCH_FRAMEWORK, Arrays.asList("test1", "test2")));
+
+        // verify
+        ArgumentCaptor<Collection> batch = ArgumentCaptor.forClass(Collection.class);
+        verify(batchFramework, times(1)).runTests(batch.capture());
+        verify(batchFramework, never()).runTest(any(TestResult.class));
+        assertThat(batch.getValue()).containsExactlyElementsOf(results.getResults());
+        assertThat(results.getResults()).hasSize(2);
+        assertThat(results.getDurations()).isEqualTo(durations);
+    }
+
+    @Test
+    public void testExecute_batchTestFramework_unknownTest() throws Exception {
+        // prepare
+        when(batchFramework.runTests(anyCollectionOf(TestResult.class)))
+            .thenThrow(new UnknownTestException(FAILING_TEST));
+        doAnswer(FAIL_ON_FAILING_TEST).when(batchFramework).runTest(any(TestResult.class));
+        RunTestsCommand command = new RunTestsCommand();
+
+        // test
+        TestResults results = command.execute(new RunTests(BATCH_FRAMEWORK, Arrays.asList("test1", FAILING_TEST)));
+
+        // verify
+        verify(batchFramework, times(2)).runTest(any(TestResult.class));
+        assertThat(results.getResults()).hasSize(2);
+        assertThat(results.getResults().get(0).isSuccess()).as("test1 succeeded").isTrue();
+        assertThat(results.getResults().get(1).isError()).as("failingTest error").isTrue();
+    }
+}